@@ -0,0 +1,438 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.store.odf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import org.datanucleus.util.NucleusLogger;
+import org.odftoolkit.odfdom.doc.OdfDocument;
+import org.odftoolkit.odfdom.doc.OdfSpreadsheetDocument;
+import org.odftoolkit.odfdom.doc.table.OdfTable;
+import org.odftoolkit.odfdom.dom.style.OdfStyleFamily;
+import org.odftoolkit.odfdom.dom.style.props.OdfTableCellProperties;
+import org.odftoolkit.odfdom.incubator.doc.office.OdfOfficeAutomaticStyles;
+import org.odftoolkit.odfdom.incubator.doc.style.OdfStyle;
+import org.odftoolkit.odfdom.pkg.OdfFileDom;
+
+/**
+ * Representation of an ODF document held in the {@link DocumentCache}, shared by all connections to the same file.
+ * Keeps the modification time and size of the file as of the last load/save so that we can detect when the file
+ * has been changed outside of this process.
+ * When persisting indexes, the indexes of the worksheets are read from the {@link IndexFile} of the document when
+ * loaded (if up to date), and written to it when the document is closed.
+ * <p>
+ * Since neither ODFDOM nor the DOM beneath it is thread-safe (even reading a cell can split repeated cells and fill
+ * wrapper caches), all use of the document must be done holding its lock (see {@link #lock()}). The lock is exclusive
+ * and reentrant, so a thread can hold it for several connections at once. It is not owned by the thread though, so a
+ * connection can be closed (and its hold released) by a thread other than the one that opened it, as happens when a
+ * transaction ends on another thread. While held by one thread, any other thread using the document waits until
+ * every hold has been released.
+ */
+public class CachedDocument
+{
+    /** The (canonical) ODF file. */
+    final File file;
+
+    /** The loaded document, or null when not loaded. */
+    OdfDocument document;
+
+    /** Last-modified time of the file when we last loaded/saved it. */
+    long lastModified;
+
+    /** Size of the file when we last loaded/saved it. */
+    long length;
+
+    /** Permit of the lock serialising the use of the document by connections, lazy query results and saves. */
+    private final Semaphore lockPermit = new Semaphore(1);
+
+    /** Monitor guarding the owner and hold count of the lock (never held while waiting for the permit). */
+    private final Object lockMonitor = new Object();
+
+    /** Thread that acquired the lock, or null when not held. */
+    private Thread lockOwner;
+
+    /** Number of holds of the lock not yet released. */
+    private int lockHoldCount = 0;
+
+    /** Number of connections currently using this document. */
+    int referenceCount = 0;
+
+    /** Counter of modifications made to the document. */
+    long modificationCount = 0;
+
+    /** Value of the modification counter when the document was last saved. */
+    long savedModificationCount = 0;
+
+    /** Whether a deferred save of this document is currently scheduled. */
+    boolean saveScheduled = false;
+
+    /** State (e.g indexes) for the worksheets of the loaded document, keyed by the sheet name. */
+    final Map<String, SheetState> sheetStates = new HashMap<>();
+
+    /** Whether the indexes of the worksheets are persisted to an index file. */
+    final boolean persistIndexes;
+
+    /** Index data read from the index file for worksheets not yet used, keyed by the sheet name. */
+    final Map<String, byte[]> persistedIndexes = new HashMap<>();
+
+    CachedDocument(File file)
+    {
+        this(file, false);
+    }
+
+    CachedDocument(File file, boolean persistIndexes)
+    {
+        this.file = file;
+        this.persistIndexes = persistIndexes;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public OdfDocument getDocument()
+    {
+        return document;
+    }
+
+    /**
+     * Method to acquire the lock of the document, waiting until no other thread holds it.
+     * Each call to this method should be paired with a call to {@link #unlock()}.
+     */
+    public void lock()
+    {
+        Thread thread = Thread.currentThread();
+        synchronized (lockMonitor)
+        {
+            if (lockOwner == thread)
+            {
+                lockHoldCount++;
+                return;
+            }
+        }
+
+        lockPermit.acquireUninterruptibly();
+        synchronized (lockMonitor)
+        {
+            lockOwner = thread;
+            lockHoldCount = 1;
+        }
+    }
+
+    /**
+     * Method to release a hold of the lock of the document, from any thread. The lock is released once all holds are.
+     */
+    public void unlock()
+    {
+        synchronized (lockMonitor)
+        {
+            if (lockHoldCount == 0)
+            {
+                throw new IllegalStateException("Lock of ODF file=" + file + " is not held");
+            }
+            if (--lockHoldCount > 0)
+            {
+                return;
+            }
+            lockOwner = null;
+        }
+        lockPermit.release();
+    }
+
+    public synchronized int getReferenceCount()
+    {
+        return referenceCount;
+    }
+
+    /**
+     * Method to register that the document has been modified, so needs saving.
+     */
+    public synchronized void markModified()
+    {
+        modificationCount++;
+    }
+
+    /**
+     * Accessor for whether the document has been modified since it was last saved.
+     * @return Whether there are unsaved modifications
+     */
+    public synchronized boolean isDirty()
+    {
+        return modificationCount != savedModificationCount;
+    }
+
+    /**
+     * Accessor for the number of modifications made to the document since it was last saved.
+     * @return The number of unsaved modifications
+     */
+    public synchronized long getUnsavedModificationCount()
+    {
+        return modificationCount - savedModificationCount;
+    }
+
+    /**
+     * Accessor for the modification counter of the document.
+     * @return The modification count
+     */
+    public synchronized long getModificationCount()
+    {
+        return modificationCount;
+    }
+
+    /**
+     * Accessor for the state of the specified worksheet, creating it if not yet present.
+     * @param sheetName Name of the worksheet
+     * @return The sheet state
+     */
+    public synchronized SheetState getSheetState(String sheetName)
+    {
+        SheetState state = sheetStates.get(sheetName);
+        if (state == null)
+        {
+            state = new SheetState(sheetName);
+            sheetStates.put(sheetName, state);
+
+            byte[] indexData = persistedIndexes.remove(sheetName);
+            OdfTable worksheet = (indexData != null && document instanceof OdfSpreadsheetDocument) ? ((OdfSpreadsheetDocument)document).getTableByName(sheetName) : null;
+            if (worksheet != null)
+            {
+                long startTime = System.currentTimeMillis();
+                if (IndexFile.restore(state, worksheet, indexData))
+                {
+                    NucleusLogger.CONNECTION.debug("Restored indexes for worksheet " + sheetName + " in " + (System.currentTimeMillis() - startTime) + " ms");
+                }
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Method to discard the state of the specified worksheet, for use when the worksheet is created or deleted.
+     * @param sheetName Name of the worksheet
+     */
+    public synchronized void removeSheetState(String sheetName)
+    {
+        sheetStates.remove(sheetName);
+        persistedIndexes.remove(sheetName);
+    }
+
+    /**
+     * Method to write the indexes of the worksheets to the index file, so they can be restored when next loaded.
+     * Does nothing when not persisting indexes, or the document has unsaved changes (since the rows of the indexes
+     * wouldn't match the file).
+     */
+    void saveIndexes()
+    {
+        lock();
+        try
+        {
+            saveIndexesLocked();
+        }
+        finally
+        {
+            unlock();
+        }
+    }
+
+    private synchronized void saveIndexesLocked()
+    {
+        if (!persistIndexes || document == null || isDirty())
+        {
+            return;
+        }
+
+        Map<String, byte[]> dataBySheet = new HashMap<>(persistedIndexes);
+        for (SheetState state : sheetStates.values())
+        {
+            OdfTable worksheet = (document instanceof OdfSpreadsheetDocument) ? ((OdfSpreadsheetDocument)document).getTableByName(state.getSheetName()) : null;
+            if (worksheet != null)
+            {
+                try
+                {
+                    byte[] indexData = IndexFile.encode(state, worksheet);
+                    if (indexData != null)
+                    {
+                        dataBySheet.put(state.getSheetName(), indexData);
+                    }
+                }
+                catch (IOException ioe)
+                {
+                    NucleusLogger.CONNECTION.debug("Unable to persist indexes of worksheet " + state.getSheetName() + " : " + ioe.getMessage());
+                }
+            }
+        }
+        IndexFile.write(file, dataBySheet);
+    }
+
+    /**
+     * Accessor for whether the file has been changed (or removed) since we last loaded/saved it.
+     * @return Whether the file was modified outside of this cache
+     */
+    boolean isModifiedExternally()
+    {
+        return !file.exists() || file.lastModified() != lastModified || file.length() != length;
+    }
+
+    /**
+     * Method to load the document from the file, creating the file if it doesn't yet exist.
+     * @throws Exception if an error occurs loading or creating the file
+     */
+    void load() throws Exception
+    {
+        if (!file.exists())
+        {
+            createDocument();
+        }
+
+        NucleusLogger.CONNECTION.debug("Loading ODF document from file=" + file);
+        document = OdfDocument.loadDocument(file);
+        synchronized (this)
+        {
+            sheetStates.clear();
+            persistedIndexes.clear();
+            if (persistIndexes)
+            {
+                Map<String, byte[]> indexData = IndexFile.read(file);
+                if (indexData != null)
+                {
+                    persistedIndexes.putAll(indexData);
+                }
+            }
+        }
+        savedModificationCount = modificationCount;
+        recordFileStamp();
+    }
+
+    /**
+     * Method to save the document to its file, holding the lock of the document so that it isn't saved part way
+     * through an operation of another thread.
+     * @throws Exception if an error occurs writing the file
+     */
+    public void save() throws Exception
+    {
+        lock();
+        try
+        {
+            document.save(file);
+            synchronized (this)
+            {
+                savedModificationCount = modificationCount;
+                recordFileStamp();
+            }
+        }
+        finally
+        {
+            unlock();
+        }
+    }
+
+    /**
+     * Method to close the document, releasing its resources. Does not save it.
+     */
+    void close()
+    {
+        lock();
+        try
+        {
+            if (document != null)
+            {
+                document.close();
+                document = null;
+            }
+        }
+        finally
+        {
+            unlock();
+        }
+    }
+
+    private void recordFileStamp()
+    {
+        lastModified = file.lastModified();
+        length = file.length();
+    }
+
+    /**
+     * Method to create a new (empty) spreadsheet file, with the styles that we require.
+     * @throws Exception if an error occurs creating the file
+     */
+    private void createDocument() throws Exception
+    {
+        // ODF spreadsheet doesn't exist, so create
+        OdfSpreadsheetDocument doc = OdfSpreadsheetDocument.newSpreadsheetDocument();
+
+        // Remove the default table(s) added in construction
+        List<OdfTable> tables = doc.getTableList();
+        if (tables != null && !tables.isEmpty())
+        {
+            Iterator<OdfTable> tblIter = tables.iterator();
+            while (tblIter.hasNext())
+            {
+                OdfTable tbl = tblIter.next();
+                tbl.remove();
+            }
+        }
+
+        // Make sure we have all required styles
+        OdfFileDom contentDoc = doc.getContentDom();
+        OdfOfficeAutomaticStyles styles = contentDoc.getOrCreateAutomaticStyles();
+
+        // ColumnHeader colouring
+        OdfStyle style = styles.getStyle("DN_Headers", OdfStyleFamily.TableRow);
+        if (style == null)
+        {
+            style = new OdfStyle(contentDoc);
+            style.setStyleNameAttribute("DN_Headers");
+            style.setStyleFamilyAttribute(OdfStyleFamily.TableCell.getName());
+            style.setProperty(OdfTableCellProperties.BackgroundColor, "#74a3db");
+            styles.appendChild(style);
+        }
+
+        // Primary-Key colouring
+        style = styles.getStyle("DN_PK", OdfStyleFamily.TableCell);
+        if (style == null)
+        {
+            style = new OdfStyle(contentDoc);
+            style.setStyleNameAttribute("DN_PK");
+            style.setStyleFamilyAttribute(OdfStyleFamily.TableCell.getName());
+            style.setProperty(OdfTableCellProperties.BackgroundColor, "#c2d9e0");
+            styles.appendChild(style);
+        }
+
+        // Relation colouring
+        style = styles.getStyle("DN_Relation", OdfStyleFamily.TableCell);
+        if (style == null)
+        {
+            style = new OdfStyle(contentDoc);
+            style.setStyleNameAttribute("DN_Relation");
+            style.setStyleFamilyAttribute(OdfStyleFamily.TableCell.getName());
+            style.setProperty(OdfTableCellProperties.BackgroundColor, "#DDDDDD");
+            styles.appendChild(style);
+        }
+
+        doc.save(file);
+        doc.close();
+    }
+}
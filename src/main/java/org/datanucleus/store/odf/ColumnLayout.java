@@ -0,0 +1,147 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.store.odf;
+
+import org.datanucleus.ClassLoaderResolver;
+import org.datanucleus.metadata.AbstractClassMetaData;
+import org.datanucleus.metadata.AbstractMemberMetaData;
+import org.datanucleus.metadata.MetaDataManager;
+import org.datanucleus.metadata.MetaDataUtils;
+import org.datanucleus.metadata.RelationType;
+import org.datanucleus.store.schema.table.MemberColumnMapping;
+import org.datanucleus.store.schema.table.Table;
+
+/**
+ * Layout of the columns of the worksheet of a class, indexed by the absolute field number of the members of the class,
+ * so that the field managers can find the column(s) of a member without metadata/mapping lookups on each field.
+ * Computed once per class (see {@link ODFStoreManager#getColumnLayout(AbstractClassMetaData, Table, ClassLoaderResolver)})
+ * and immutable thereafter.
+ * Only applies to the (non-embedded) members of the class itself; members of embedded objects are looked up via the
+ * table as before.
+ */
+public class ColumnLayout
+{
+    /** The table that this is the layout for. */
+    final Table table;
+
+    /** Column mapping of each member, or null if the member has no column(s). */
+    final MemberColumnMapping[] mappings;
+
+    /** Position of the (first) column of each member, or -1 if the member has no column. */
+    final int[] positions;
+
+    /** Relation type of each member. */
+    final RelationType[] relationTypes;
+
+    /** Whether each member is an embedded relation. */
+    final boolean[] embedded;
+
+    /**
+     * Constructor, computing the layout for the members of the class.
+     * @param cmd Metadata for the class
+     * @param table Table for the class
+     * @param clr ClassLoader resolver
+     * @param mmgr MetaData manager
+     */
+    public ColumnLayout(AbstractClassMetaData cmd, Table table, ClassLoaderResolver clr, MetaDataManager mmgr)
+    {
+        this.table = table;
+
+        int[] memberPositions = cmd.getAllMemberPositions();
+        int numFields = 0;
+        for (int memberPosition : memberPositions)
+        {
+            numFields = Math.max(numFields, memberPosition + 1);
+        }
+
+        mappings = new MemberColumnMapping[numFields];
+        positions = new int[numFields];
+        relationTypes = new RelationType[numFields];
+        embedded = new boolean[numFields];
+        for (int i=0;i<numFields;i++)
+        {
+            positions[i] = -1;
+            relationTypes[i] = RelationType.NONE;
+        }
+
+        for (int memberPosition : memberPositions)
+        {
+            AbstractMemberMetaData mmd = cmd.getMetaDataForManagedMemberAtAbsolutePosition(memberPosition);
+            if (mmd == null)
+            {
+                continue;
+            }
+
+            RelationType relationType = mmd.getRelationType(clr);
+            relationTypes[memberPosition] = relationType;
+            embedded[memberPosition] = (relationType != RelationType.NONE && MetaDataUtils.getInstance().isMemberEmbedded(mmgr, clr, mmd, relationType, null));
+
+            MemberColumnMapping mapping = table.getMemberColumnMappingForMember(mmd);
+            mappings[memberPosition] = mapping;
+            if (mapping != null && mapping.getNumberOfColumns() > 0)
+            {
+                positions[memberPosition] = mapping.getColumn(0).getPosition();
+            }
+        }
+    }
+
+    public Table getTable()
+    {
+        return table;
+    }
+
+    /**
+     * Accessor for the column mapping of the specified member.
+     * @param fieldNumber Absolute field number of the member
+     * @return The mapping, or null if the member has no column(s)
+     */
+    public MemberColumnMapping getColumnMapping(int fieldNumber)
+    {
+        return fieldNumber < mappings.length ? mappings[fieldNumber] : null;
+    }
+
+    /**
+     * Accessor for the position of the (first) column of the specified member.
+     * @param fieldNumber Absolute field number of the member
+     * @return The position, or -1 if the member has no column
+     */
+    public int getColumnPosition(int fieldNumber)
+    {
+        return fieldNumber < positions.length ? positions[fieldNumber] : -1;
+    }
+
+    /**
+     * Accessor for the relation type of the specified member.
+     * @param fieldNumber Absolute field number of the member
+     * @return The relation type
+     */
+    public RelationType getRelationType(int fieldNumber)
+    {
+        return fieldNumber < relationTypes.length ? relationTypes[fieldNumber] : RelationType.NONE;
+    }
+
+    /**
+     * Accessor for whether the specified member is an embedded relation.
+     * @param fieldNumber Absolute field number of the member
+     * @return Whether it is embedded
+     */
+    public boolean isEmbedded(int fieldNumber)
+    {
+        return fieldNumber < embedded.length && embedded[fieldNumber];
+    }
+}
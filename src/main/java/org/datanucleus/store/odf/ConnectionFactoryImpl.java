@@ -17,9 +17,6 @@ Contributors:
 **********************************************************************/
 package org.datanucleus.store.odf;
 
-import java.io.File;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 
 import javax.transaction.xa.XAResource;
@@ -32,14 +29,6 @@ import org.datanucleus.store.connection.AbstractConnectionFactory;
 import org.datanucleus.store.connection.AbstractManagedConnection;
 import org.datanucleus.store.connection.ManagedConnection;
 import org.datanucleus.util.NucleusLogger;
-import org.odftoolkit.odfdom.doc.OdfDocument;
-import org.odftoolkit.odfdom.pkg.OdfFileDom;
-import org.odftoolkit.odfdom.doc.OdfSpreadsheetDocument;
-import org.odftoolkit.odfdom.doc.table.OdfTable;
-import org.odftoolkit.odfdom.incubator.doc.office.OdfOfficeAutomaticStyles;
-import org.odftoolkit.odfdom.incubator.doc.style.OdfStyle;
-import org.odftoolkit.odfdom.dom.style.OdfStyleFamily;
-import org.odftoolkit.odfdom.dom.style.props.OdfTableCellProperties;
 
 /**
  * Implementation of a ConnectionFactory for ODF.
@@ -82,10 +71,30 @@ public class ConnectionFactoryImpl extends AbstractConnectionFactory
         return new ManagedConnectionImpl();
     }
 
+    /**
+     * Accessor for the cache of loaded documents, shared by all connection factories of the StoreManager.
+     * @return The document cache
+     */
+    protected DocumentCache getDocumentCache()
+    {
+        return ((ODFStoreManager)storeMgr).getDocumentCache();
+    }
+
+    /**
+     * Connection to the (cached) ODF document. Holds the lock of the document from when the connection is first used
+     * until it is closed, so that the document is used by one connection (thread) at a time. So a transaction holds the
+     * document until it ends, and a non-transactional operation until its connection is released.
+     * The connection can be closed on a thread other than the one that opened it (e.g when a transaction ends on another
+     * thread), but while open the document can only be used by the thread that opened it, since other threads wait for
+     * the lock.
+     */
     public class ManagedConnectionImpl extends AbstractManagedConnection
     {
-        /** The ODF file. */
-        File file;
+        /** The cached ODF document being used by this connection. */
+        CachedDocument cachedDoc;
+
+        /** Modification count of the document when this connection last left its save to the background thread, or -1. */
+        long deferredModificationCount = -1;
 
         public ManagedConnectionImpl()
         {
@@ -95,99 +104,44 @@ public class ConnectionFactoryImpl extends AbstractConnectionFactory
         {
             if (conn == null)
             {
-                try
-                {
-                    file = new File(filename);
-                    if (!file.exists())
-                    {
-                        // ODF spreadsheet doesn't exist, so create
-                        OdfSpreadsheetDocument doc = OdfSpreadsheetDocument.newSpreadsheetDocument();
-
-                        // Remove the default table(s) added in construction
-                        List<OdfTable> tables = doc.getTableList();
-                        if (tables != null && !tables.isEmpty())
-                        {
-                            Iterator<OdfTable> tblIter = tables.iterator();
-                            while (tblIter.hasNext())
-                            {
-                                OdfTable tbl = tblIter.next();
-                                tbl.remove();
-                            }
-                        }
-
-                        // Make sure we have all required styles
-                        OdfFileDom contentDoc = doc.getContentDom();
-                        OdfOfficeAutomaticStyles styles = contentDoc.getOrCreateAutomaticStyles();
-
-                        // ColumnHeader colouring
-                        OdfStyle style = styles.getStyle("DN_Headers", OdfStyleFamily.TableRow);
-                        if (style == null)
-                        {
-                            style = new OdfStyle(contentDoc);
-                            style.setStyleNameAttribute("DN_Headers");
-                            style.setStyleFamilyAttribute(OdfStyleFamily.TableCell.getName());
-                            style.setProperty(OdfTableCellProperties.BackgroundColor, "#74a3db");
-                            styles.appendChild(style);
-                        }
-
-                        // Primary-Key colouring
-                        style = styles.getStyle("DN_PK", OdfStyleFamily.TableCell);
-                        if (style == null)
-                        {
-                            style = new OdfStyle(contentDoc);
-                            style.setStyleNameAttribute("DN_PK");
-                            style.setStyleFamilyAttribute(OdfStyleFamily.TableCell.getName());
-                            style.setProperty(OdfTableCellProperties.BackgroundColor, "#c2d9e0");
-                            styles.appendChild(style);
-                        }
-
-                        // Relation colouring
-                        style = styles.getStyle("DN_Relation", OdfStyleFamily.TableCell);
-                        if (style == null)
-                        {
-                            style = new OdfStyle(contentDoc);
-                            style.setStyleNameAttribute("DN_Relation");
-                            style.setStyleFamilyAttribute(OdfStyleFamily.TableCell.getName());
-                            style.setProperty(OdfTableCellProperties.BackgroundColor, "#DDDDDD");
-                            styles.appendChild(style);
-                        }
-
-                        doc.save(file);
-                        conn = doc;
-                    }
-
-                    NucleusLogger.CONNECTION.debug("ManagedConnection " + this.toString() + " is starting for file=" + file);
-                    conn = OdfDocument.loadDocument(file);
-                }
-                catch (Exception e)
-                {
-                    throw new NucleusException(e.getMessage(), e);
-                }
+                // Obtain the document from the cache, loading it (or creating the file) when required
+                CachedDocument doc = getDocumentCache().acquire(filename);
+                doc.lock();
+                cachedDoc = doc;
+                NucleusLogger.CONNECTION.debug("ManagedConnection " + this.toString() + " is starting for file=" + cachedDoc.getFile());
+                conn = cachedDoc.getDocument();
             }
             return conn;
         }
 
         public void release()
         {
-            if (commitOnRelease)
+            if (commitOnRelease && cachedDoc.isDirty())
             {
-                // Non-transactional operation end : Write to file and close connection
+                // Non-transactional operation end with changes : Write to file
                 NucleusLogger.CONNECTION.debug("ManagedConnection " + this.toString() + " is committing");
 
                 // Note that if we have one operation which does a get() then that calls another method to do a get() and then release() this will close the connection before
                 // the second release comes in.
-                try
+                DocumentCache docCache = getDocumentCache();
+                if (docCache.isDeferredSave())
                 {
-                    ((OdfDocument)conn).save(file);
-//                    ((OdfDocument)conn).close();
-//                    file = null;
-//                    conn = null;
+                    // Leave the save to the background thread, coalescing with other changes
+                    deferredModificationCount = cachedDoc.getModificationCount();
+                    docCache.scheduleSave(cachedDoc);
                 }
-                catch (Exception e)
+                else
                 {
-                    throw new NucleusException(e.getMessage(),e);
+                    try
+                    {
+                        cachedDoc.save();
+                    }
+                    catch (Exception e)
+                    {
+                        throw new NucleusException(e.getMessage(),e);
+                    }
+                    NucleusLogger.CONNECTION.debug("ManagedConnection " + this.toString() + " committed connection");
                 }
-                NucleusLogger.CONNECTION.debug("ManagedConnection " + this.toString() + " committed connection");
             }
             super.release();
         }
@@ -206,12 +160,13 @@ public class ConnectionFactoryImpl extends AbstractConnectionFactory
                     listeners.get(i).managedConnectionPreClose();
                 }
 
-                NucleusLogger.CONNECTION.debug("ManagedConnection " + this.toString() + " is committing");
-                ((OdfDocument)conn).save(file);
-                ((OdfDocument)conn).close();
-                NucleusLogger.CONNECTION.debug("ManagedConnection " + this.toString() + " committed connection");
-                file = null;
-                conn = null;
+                // Write any changes (e.g of a transaction) now, unless just left to the background thread by release()
+                if (cachedDoc.isDirty() && cachedDoc.getModificationCount() != deferredModificationCount)
+                {
+                    NucleusLogger.CONNECTION.debug("ManagedConnection " + this.toString() + " is committing");
+                    cachedDoc.save();
+                    NucleusLogger.CONNECTION.debug("ManagedConnection " + this.toString() + " committed connection");
+                }
             }
             catch (Exception e)
             {
@@ -219,6 +174,15 @@ public class ConnectionFactoryImpl extends AbstractConnectionFactory
             }
             finally
             {
+                // Release our use (and the lock) of the document, leaving it in the cache for other connections.
+                // The lock isn't owned by the thread, so this may be a different thread from the one that opened us
+                CachedDocument doc = cachedDoc;
+                cachedDoc = null;
+                conn = null;
+                deferredModificationCount = -1;
+                getDocumentCache().release(doc);
+                doc.unlock();
+
                 for (int i=0; i<listeners.size(); i++)
                 {
                     listeners.get(i).managedConnectionPostClose();
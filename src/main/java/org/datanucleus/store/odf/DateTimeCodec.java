@@ -0,0 +1,556 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.store.odf;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Calendar;
+import java.util.Date;
+
+import org.datanucleus.store.schema.table.MemberColumnMapping;
+import org.datanucleus.store.types.TypeManager;
+import org.datanucleus.store.types.converters.TypeConverter;
+import org.datanucleus.util.NucleusLogger;
+import org.odftoolkit.odfdom.doc.table.OdfTableCell;
+import org.odftoolkit.odfdom.dom.OdfDocumentNamespace;
+import org.odftoolkit.odfdom.dom.attribute.office.OfficeValueTypeAttribute;
+import org.odftoolkit.odfdom.dom.element.table.TableTableCellElementBase;
+
+/**
+ * Codec for the values of date and time cells, reading and writing the ISO "office:date-value" (e.g.
+ * "2026-10-16T13:45:00") and "office:time-value" (e.g. "PT13H45M00S") attributes of the cell directly, to and from
+ * java.time values, rather than via the Calendar-based accessors of ODFDOM. Date-times are held in the cell as local
+ * date-times of the default time zone of the JVM, as they were when written via ODFDOM.
+ * <p>
+ * Supports java.util.Date (and its java.sql subclasses), Calendar, LocalDate, LocalDateTime, LocalTime and Instant,
+ * where java.sql.Time and LocalTime are stored as times, and all others as dates. Note that Instant members are not
+ * stored natively (see {@link #isStoredNatively(TypeManager, MemberColumnMapping, Class)}), since a local date-time can't
+ * represent every instant (those in the hour repeated when daylight saving ends) and changes meaning with the time zone.
+ */
+public class DateTimeCodec
+{
+    /** Date used when representing a time as a date, as ODFDOM does. */
+    private static final LocalDate TIME_BASE_DATE = LocalDate.of(1970, 1, 1);
+
+    private DateTimeCodec()
+    {
+    }
+
+    /**
+     * Accessor for whether the specified type is a date/time type supported by this codec.
+     * @param type The type
+     * @return Whether it is supported
+     */
+    public static boolean isTemporalType(Class type)
+    {
+        return Date.class.isAssignableFrom(type) || Calendar.class.isAssignableFrom(type) || isJavaTimeType(type);
+    }
+
+    /**
+     * Accessor for whether the specified type is a java.time type supported by this codec.
+     * @param type The type
+     * @return Whether it is a supported java.time type
+     */
+    public static boolean isJavaTimeType(Class type)
+    {
+        return type == LocalDate.class || type == LocalDateTime.class || type == LocalTime.class || type == Instant.class;
+    }
+
+    /**
+     * Accessor for whether the specified type is stored as a time (rather than a date).
+     * @param type The type
+     * @return Whether it is a time type
+     */
+    public static boolean isTimeType(Class type)
+    {
+        return java.sql.Time.class.isAssignableFrom(type) || type == LocalTime.class;
+    }
+
+    /**
+     * Accessor for whether a member of the specified type with the specified column mapping is stored natively
+     * as a date/time cell by this codec. This applies to members of java.time types that use a single column, with no
+     * converter other than the default converter for the type. Instant members are left to their converter (storing the
+     * zone-free ISO form as a String), since a local date-time cell would lose instants and depend on the time zone.
+     * @param typeMgr Type manager
+     * @param mapping Column mapping for the member
+     * @param type The member type
+     * @return Whether the member is stored natively
+     */
+    public static boolean isStoredNatively(TypeManager typeMgr, MemberColumnMapping mapping, Class type)
+    {
+        if (!isJavaTimeType(type) || type == Instant.class || mapping == null || mapping.getNumberOfColumns() != 1)
+        {
+            return false;
+        }
+        TypeConverter conv = mapping.getTypeConverter();
+        return conv == null || conv == typeMgr.getDefaultTypeConverterForType(type);
+    }
+
+    /**
+     * Method to return the date-time value of the specified (date) cell.
+     * @param cell The cell
+     * @return The date-time, or null if not set
+     */
+    public static LocalDateTime getDateTime(OdfTableCell cell)
+    {
+        return decodeDateTime(cell.getOdfElement().getOfficeDateValueAttribute());
+    }
+
+    /**
+     * Method to return the time value of the specified (time) cell.
+     * @param cell The cell
+     * @return The time, or null if not set
+     */
+    public static LocalTime getTime(OdfTableCell cell)
+    {
+        return decodeTime(cell.getOdfElement().getOfficeTimeValueAttribute());
+    }
+
+    /**
+     * Method to return the value of the specified cell as the specified type, reading the time value for time
+     * types, and the date value for all others.
+     * @param cell The cell
+     * @param type The required type
+     * @return The value, or null if not set
+     */
+    public static Object getValue(OdfTableCell cell, Class type)
+    {
+        if (isTimeType(type))
+        {
+            LocalTime time = getTime(cell);
+            return time != null ? toTimeType(time, type) : null;
+        }
+
+        LocalDateTime dateTime = getDateTime(cell);
+        return dateTime != null ? toDateType(dateTime, type) : null;
+    }
+
+    /**
+     * Method to set the specified date/time value in the cell, setting the value type of the cell accordingly.
+     * @param cell The cell
+     * @param value The value (of a type supported by this codec)
+     */
+    public static void setValue(OdfTableCell cell, Object value)
+    {
+        if (value instanceof LocalTime)
+        {
+            setTime(cell, (LocalTime)value);
+        }
+        else if (value instanceof java.sql.Time)
+        {
+            setTime(cell, toLocalDateTime(value).toLocalTime().withNano(0));
+        }
+        else
+        {
+            setDateTime(cell, toLocalDateTime(value));
+        }
+    }
+
+    /**
+     * Method to set the cell to a null value of the specified date/time type.
+     * @param cell The cell
+     * @param type The type
+     */
+    public static void setNull(OdfTableCell cell, Class type)
+    {
+        TableTableCellElementBase cellElement = cell.getOdfElement();
+        if (isTimeType(type))
+        {
+            cell.setValueType(OfficeValueTypeAttribute.Value.TIME.toString());
+            cellElement.removeAttributeNS(OdfDocumentNamespace.OFFICE.getUri(), "time-value");
+        }
+        else
+        {
+            cell.setValueType(OfficeValueTypeAttribute.Value.DATE.toString());
+            cellElement.removeAttributeNS(OdfDocumentNamespace.OFFICE.getUri(), "date-value");
+        }
+        cell.setDisplayText("");
+    }
+
+    /**
+     * Method to set the specified date-time in the cell, as a date cell.
+     * @param cell The cell
+     * @param dateTime The date-time
+     */
+    public static void setDateTime(OdfTableCell cell, LocalDateTime dateTime)
+    {
+        String str = encodeDateTime(dateTime);
+        cell.setValueType(OfficeValueTypeAttribute.Value.DATE.toString());
+        cell.getOdfElement().setOfficeDateValueAttribute(str);
+        cell.setDisplayText(str);
+    }
+
+    /**
+     * Method to set the specified time in the cell, as a time cell.
+     * @param cell The cell
+     * @param time The time
+     */
+    public static void setTime(OdfTableCell cell, LocalTime time)
+    {
+        String str = encodeTime(time);
+        cell.setValueType(OfficeValueTypeAttribute.Value.TIME.toString());
+        cell.getOdfElement().setOfficeTimeValueAttribute(str);
+        cell.setDisplayText(time.toString());
+    }
+
+    /**
+     * Method to convert the specified date/time value to a local date-time (in the default time zone).
+     * A time is taken to be on 1970-01-01.
+     * @param value The value (of a type supported by this codec)
+     * @return The date-time
+     */
+    public static LocalDateTime toLocalDateTime(Object value)
+    {
+        if (value instanceof LocalDateTime)
+        {
+            return (LocalDateTime)value;
+        }
+        else if (value instanceof LocalDate)
+        {
+            return ((LocalDate)value).atStartOfDay();
+        }
+        else if (value instanceof LocalTime)
+        {
+            return TIME_BASE_DATE.atTime((LocalTime)value);
+        }
+        else if (value instanceof Instant)
+        {
+            return LocalDateTime.ofInstant((Instant)value, ZoneId.systemDefault());
+        }
+        else if (value instanceof java.sql.Timestamp)
+        {
+            return ((java.sql.Timestamp)value).toLocalDateTime();
+        }
+        else if (value instanceof Calendar)
+        {
+            return toLocalDateTime(((Calendar)value).getTimeInMillis());
+        }
+        return toLocalDateTime(((Date)value).getTime());
+    }
+
+    private static LocalDateTime toLocalDateTime(long millis)
+    {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    /**
+     * Method to convert the specified local date-time (in the default time zone) to the specified type.
+     * @param dateTime The date-time
+     * @param type The required type (where not a supported type, a java.util.Date is returned)
+     * @return The value
+     */
+    public static Object toDateType(LocalDateTime dateTime, Class type)
+    {
+        if (type == LocalDateTime.class)
+        {
+            return dateTime;
+        }
+        else if (type == LocalDate.class)
+        {
+            return dateTime.toLocalDate();
+        }
+        else if (type == LocalTime.class)
+        {
+            return dateTime.toLocalTime();
+        }
+        else if (type == java.sql.Timestamp.class)
+        {
+            return java.sql.Timestamp.valueOf(dateTime);
+        }
+
+        Instant instant = dateTime.atZone(ZoneId.systemDefault()).toInstant();
+        if (type == Instant.class)
+        {
+            return instant;
+        }
+
+        long millis = instant.toEpochMilli();
+        if (Calendar.class.isAssignableFrom(type))
+        {
+            Calendar cal = Calendar.getInstance();
+            cal.setTimeInMillis(millis);
+            return cal;
+        }
+        else if (type == java.sql.Date.class)
+        {
+            return new java.sql.Date(millis);
+        }
+        else if (type == java.sql.Time.class)
+        {
+            return new java.sql.Time(millis);
+        }
+        return new Date(millis);
+    }
+
+    /**
+     * Method to convert the specified time to the specified type. Where the type is not a time type, the time
+     * is taken to be on 1970-01-01.
+     * @param time The time
+     * @param type The required type
+     * @return The value
+     */
+    public static Object toTimeType(LocalTime time, Class type)
+    {
+        if (type == LocalTime.class)
+        {
+            return time;
+        }
+        else if (type == java.sql.Time.class)
+        {
+            return java.sql.Time.valueOf(time);
+        }
+        return toDateType(TIME_BASE_DATE.atTime(time), type);
+    }
+
+    /**
+     * Method to decode a date value attribute, of the form "yyyy-MM-dd" or "yyyy-MM-ddTHH:mm:ss[.fffffffff]".
+     * Any other ISO form (e.g. with a zone offset) is parsed using the general ISO formatter.
+     * @param str The attribute value
+     * @return The date-time, or null if not set or not parseable
+     */
+    public static LocalDateTime decodeDateTime(String str)
+    {
+        if (str == null || str.length() == 0)
+        {
+            return null;
+        }
+
+        try
+        {
+            int len = str.length();
+            if (len >= 10 && str.charAt(4) == '-' && str.charAt(7) == '-')
+            {
+                int year = parseDigits(str, 0, 4);
+                int month = parseDigits(str, 5, 7);
+                int day = parseDigits(str, 8, 10);
+                if (year >= 0 && month >= 0 && day >= 0)
+                {
+                    if (len == 10)
+                    {
+                        return LocalDateTime.of(year, month, day, 0, 0);
+                    }
+                    else if (len >= 19 && str.charAt(10) == 'T' && str.charAt(13) == ':' && str.charAt(16) == ':')
+                    {
+                        int hour = parseDigits(str, 11, 13);
+                        int minute = parseDigits(str, 14, 16);
+                        int second = parseDigits(str, 17, 19);
+                        int pos = 19;
+                        int nano = 0;
+                        if (pos < len && str.charAt(pos) == '.')
+                        {
+                            pos++;
+                            int scale = 100000000;
+                            while (pos < len && str.charAt(pos) >= '0' && str.charAt(pos) <= '9')
+                            {
+                                nano += (str.charAt(pos++) - '0') * scale;
+                                scale /= 10;
+                            }
+                        }
+                        if (pos == len && hour >= 0 && minute >= 0 && second >= 0)
+                        {
+                            return LocalDateTime.of(year, month, day, hour, minute, second, nano);
+                        }
+                    }
+                }
+            }
+
+            // Not in the expected form, so use the general ISO parser
+            if (str.indexOf('T') < 0)
+            {
+                return LocalDate.parse(str, DateTimeFormatter.ISO_DATE).atStartOfDay();
+            }
+            TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parse(str);
+            if (parsed.isSupported(ChronoField.OFFSET_SECONDS))
+            {
+                return OffsetDateTime.from(parsed).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+            }
+            return LocalDateTime.from(parsed);
+        }
+        catch (DateTimeException dte)
+        {
+            NucleusLogger.DATASTORE_RETRIEVE.warn("Unable to parse date value \"" + str + "\" : " + dte.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Method to decode a time value attribute, of the (ISO duration) form "PTnnHnnMnn[.fff]S".
+     * Any day component is ignored, as are hours beyond a day.
+     * @param str The attribute value
+     * @return The time, or null if not set or not parseable
+     */
+    public static LocalTime decodeTime(String str)
+    {
+        if (str == null || str.length() == 0)
+        {
+            return null;
+        }
+
+        int tPos = str.indexOf('T');
+        if (str.charAt(0) != 'P' || tPos < 0)
+        {
+            NucleusLogger.DATASTORE_RETRIEVE.warn("Unable to parse time value \"" + str + "\"");
+            return null;
+        }
+
+        long hours = 0;
+        long minutes = 0;
+        long seconds = 0;
+        int nano = 0;
+        long num = 0;
+        boolean fraction = false;
+        for (int i=tPos+1;i<str.length();i++)
+        {
+            char c = str.charAt(i);
+            if (c >= '0' && c <= '9')
+            {
+                num = num * 10 + (c - '0');
+            }
+            else if (c == 'H')
+            {
+                hours = num;
+                num = 0;
+            }
+            else if (c == 'M')
+            {
+                minutes = num;
+                num = 0;
+            }
+            else if (c == '.' || c == ',')
+            {
+                seconds = num;
+                num = 0;
+                fraction = true;
+                int scale = 100000000;
+                while (i+1 < str.length() && str.charAt(i+1) >= '0' && str.charAt(i+1) <= '9')
+                {
+                    nano += (str.charAt(++i) - '0') * scale;
+                    scale /= 10;
+                }
+            }
+            else if (c == 'S')
+            {
+                if (!fraction)
+                {
+                    seconds = num;
+                }
+                num = 0;
+            }
+            else
+            {
+                NucleusLogger.DATASTORE_RETRIEVE.warn("Unable to parse time value \"" + str + "\"");
+                return null;
+            }
+        }
+        return LocalTime.ofSecondOfDay((hours * 3600 + minutes * 60 + seconds) % 86400).withNano(nano);
+    }
+
+    /**
+     * Method to encode a date-time as a date value attribute, of the form "yyyy-MM-ddTHH:mm:ss[.fffffffff]".
+     * @param dateTime The date-time
+     * @return The attribute value
+     */
+    public static String encodeDateTime(LocalDateTime dateTime)
+    {
+        int year = dateTime.getYear();
+        if (year < 0 || year > 9999)
+        {
+            return DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(dateTime);
+        }
+
+        StringBuilder str = new StringBuilder(29);
+        appendDigits(str, year, 4).append('-');
+        appendDigits(str, dateTime.getMonthValue(), 2).append('-');
+        appendDigits(str, dateTime.getDayOfMonth(), 2).append('T');
+        appendDigits(str, dateTime.getHour(), 2).append(':');
+        appendDigits(str, dateTime.getMinute(), 2).append(':');
+        appendDigits(str, dateTime.getSecond(), 2);
+        appendFraction(str, dateTime.getNano());
+        return str.toString();
+    }
+
+    /**
+     * Method to encode a time as a time value attribute, of the form "PTnnHnnMnn[.fffffffff]S".
+     * @param time The time
+     * @return The attribute value
+     */
+    public static String encodeTime(LocalTime time)
+    {
+        StringBuilder str = new StringBuilder(24);
+        str.append("PT");
+        appendDigits(str, time.getHour(), 2).append('H');
+        appendDigits(str, time.getMinute(), 2).append('M');
+        appendDigits(str, time.getSecond(), 2);
+        appendFraction(str, time.getNano());
+        str.append('S');
+        return str.toString();
+    }
+
+    private static int parseDigits(String str, int start, int end)
+    {
+        int value = 0;
+        for (int i=start;i<end;i++)
+        {
+            char c = str.charAt(i);
+            if (c < '0' || c > '9')
+            {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static StringBuilder appendDigits(StringBuilder str, int value, int width)
+    {
+        for (int limit = 1, i = 1; i < width; i++)
+        {
+            limit *= 10;
+            if (value < limit)
+            {
+                str.append('0');
+            }
+        }
+        return str.append(value);
+    }
+
+    private static void appendFraction(StringBuilder str, int nano)
+    {
+        if (nano == 0)
+        {
+            return;
+        }
+
+        int width = 9;
+        while (nano % 10 == 0)
+        {
+            nano /= 10;
+            width--;
+        }
+        str.append('.');
+        appendDigits(str, nano, width);
+    }
+}
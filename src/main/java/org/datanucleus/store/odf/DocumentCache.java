@@ -0,0 +1,415 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.store.odf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.datanucleus.exceptions.NucleusException;
+import org.datanucleus.util.NucleusLogger;
+import org.odftoolkit.odfdom.doc.OdfDocument;
+
+/**
+ * Cache of loaded ODF documents, keyed by the canonical path of the file.
+ * A document is loaded (unzipped and parsed) once and then shared by all connections to that file, with a count of
+ * the connections currently using it. The document is reloaded only when the file has been changed outside of this
+ * process (modification time or size differs from when we last loaded/saved it), and no connection (nor lazily loaded
+ * query result, see {@link #retain(CachedDocument)}) is using it.
+ * <p>
+ * Since the document is shared and ODFDOM is not thread-safe, each connection holds the lock of the document (see
+ * {@link CachedDocument#lock()}) while open, so the document is used by one thread at a time, and a transaction holds
+ * it until it ends. So transactions on the same document are serialised, and other threads never see (nor save) the
+ * uncommitted changes of a transaction. Connections of the same thread share the lock, so do see each others changes.
+ * <p>
+ * When using deferred saving, non-transactional changes are not written to the file at the end of each operation.
+ * Instead a background thread saves the document at most once per "maxDelay" milliseconds, coalescing all changes made
+ * in that interval, or the save happens immediately once "maxDirtyOperations" unsaved changes have accumulated.
+ * Any unsaved changes are written when the cache is closed. A save holds the lock of the document, so never writes the
+ * document part way through an operation or transaction.
+ * <p>
+ * When persisting indexes, the indexes of each document are written to its {@link IndexFile} when the cache is closed,
+ * and read back when the document is next loaded, so that they needn't be rebuilt from the worksheets.
+ */
+public class DocumentCache
+{
+    /** Whether non-transactional saves are deferred to a background thread. */
+    private final boolean deferredSave;
+
+    /** Maximum delay (millisecs) before a deferred save is performed. */
+    private final long saveMaxDelay;
+
+    /** Maximum number of unsaved modifications before a save is performed immediately. */
+    private final long saveMaxDirtyOperations;
+
+    /** Whether the indexes of the documents are persisted to an index file next to each document. */
+    private final boolean persistIndexes;
+
+    /** Executor for deferred saves (created when first needed). */
+    private ScheduledExecutorService saveExecutor;
+
+    /** Cached documents, keyed by the canonical file path. */
+    private final Map<String, CachedDocument> documentsByPath = new HashMap<>();
+
+    /** Cached documents, keyed by the (loaded) ODF document. Replaced (never updated) when a document is (re)loaded. */
+    private volatile Map<OdfDocument, CachedDocument> documentsByDocument = new IdentityHashMap<>();
+
+    /**
+     * Constructor for a cache that saves documents immediately.
+     */
+    public DocumentCache()
+    {
+        this(false, 0, 0);
+    }
+
+    /**
+     * Constructor.
+     * @param deferredSave Whether non-transactional saves are deferred to a background thread
+     * @param saveMaxDelay Maximum delay (millisecs) before a deferred save is performed
+     * @param saveMaxDirtyOperations Maximum number of unsaved modifications before a save is performed immediately
+     */
+    public DocumentCache(boolean deferredSave, long saveMaxDelay, long saveMaxDirtyOperations)
+    {
+        this(deferredSave, saveMaxDelay, saveMaxDirtyOperations, false);
+    }
+
+    /**
+     * Constructor.
+     * @param deferredSave Whether non-transactional saves are deferred to a background thread
+     * @param saveMaxDelay Maximum delay (millisecs) before a deferred save is performed
+     * @param saveMaxDirtyOperations Maximum number of unsaved modifications before a save is performed immediately
+     * @param persistIndexes Whether the indexes of the documents are persisted to an index file next to each document
+     */
+    public DocumentCache(boolean deferredSave, long saveMaxDelay, long saveMaxDirtyOperations, boolean persistIndexes)
+    {
+        this.deferredSave = deferredSave;
+        this.saveMaxDelay = saveMaxDelay;
+        this.saveMaxDirtyOperations = saveMaxDirtyOperations;
+        this.persistIndexes = persistIndexes;
+    }
+
+    /**
+     * Accessor for whether non-transactional saves are deferred to a background thread.
+     * @return Whether saves are deferred
+     */
+    public boolean isDeferredSave()
+    {
+        return deferredSave;
+    }
+
+    /**
+     * Method to obtain the document for the specified file, loading it if not yet loaded, or if the file has been
+     * modified externally and nothing else is using it. Increments the reference count of the document.
+     * Each call to this method should be paired with a call to {@link #release(CachedDocument)}.
+     * The document is (re)loaded holding its lock but not the monitor of this cache, since a thread holding the lock
+     * of the document may need the monitor.
+     * @param filename Name of the ODF file
+     * @return The cached document
+     */
+    public CachedDocument acquire(String filename)
+    {
+        File file = new File(filename);
+        String path = null;
+        try
+        {
+            path = file.getCanonicalPath();
+        }
+        catch (IOException ioe)
+        {
+            path = file.getAbsolutePath();
+        }
+
+        CachedDocument cachedDoc = null;
+        boolean load = false;
+        synchronized (this)
+        {
+            cachedDoc = documentsByPath.get(path);
+            if (cachedDoc == null)
+            {
+                cachedDoc = new CachedDocument(new File(path), persistIndexes);
+                documentsByPath.put(path, cachedDoc);
+            }
+
+            if (cachedDoc.document == null)
+            {
+                load = true;
+            }
+            else if (cachedDoc.referenceCount == 0 && cachedDoc.isModifiedExternally())
+            {
+                if (cachedDoc.isDirty())
+                {
+                    // Don't throw away our unsaved changes, they will overwrite the external changes when saved
+                    NucleusLogger.CONNECTION.warn("ODF file=" + path + " has been modified externally but we have unsaved changes so will not reload it");
+                }
+                else
+                {
+                    load = true;
+                }
+            }
+
+            // Take our reference before loading, so no other thread decides to reload the document meanwhile
+            cachedDoc.referenceCount++;
+        }
+
+        if (load)
+        {
+            try
+            {
+                load(cachedDoc);
+            }
+            catch (RuntimeException e)
+            {
+                release(cachedDoc);
+                throw e;
+            }
+        }
+        return cachedDoc;
+    }
+
+    /**
+     * Method to load the document, or reload it where the file has been modified externally (and we have no unsaved
+     * changes), unless already done by another thread while we waited for the lock.
+     * @param cachedDoc The cached document
+     */
+    private void load(CachedDocument cachedDoc)
+    {
+        cachedDoc.lock();
+        try
+        {
+            OdfDocument oldDoc = cachedDoc.document;
+            if (oldDoc != null)
+            {
+                if (!cachedDoc.isModifiedExternally() || cachedDoc.isDirty())
+                {
+                    return;
+                }
+
+                // File changed outside of this process, so reload it
+                NucleusLogger.CONNECTION.debug("ODF file=" + cachedDoc.getFile() + " has been modified externally so reloading it");
+                cachedDoc.close();
+            }
+            try
+            {
+                cachedDoc.load();
+            }
+            catch (Exception e)
+            {
+                throw new NucleusException(e.getMessage(), e);
+            }
+            finally
+            {
+                updateDocument(oldDoc, cachedDoc);
+            }
+        }
+        finally
+        {
+            cachedDoc.unlock();
+        }
+    }
+
+    /**
+     * Method to replace the (closed) ODF document of the cached document by the one now loaded.
+     * The map is replaced rather than updated, so that it can be read without holding the monitor of this cache.
+     * @param oldDoc The ODF document previously loaded, or null
+     * @param cachedDoc The cached document
+     */
+    private synchronized void updateDocument(OdfDocument oldDoc, CachedDocument cachedDoc)
+    {
+        Map<OdfDocument, CachedDocument> docs = new IdentityHashMap<>(documentsByDocument);
+        if (oldDoc != null)
+        {
+            docs.remove(oldDoc);
+        }
+        if (cachedDoc.document != null)
+        {
+            docs.put(cachedDoc.document, cachedDoc);
+        }
+        documentsByDocument = docs;
+    }
+
+    /**
+     * Method to take a further reference to a document already acquired, for something that continues to use the
+     * document after its connection is released (such as a lazily loaded query result), so that the document is not
+     * reloaded while it is still in use. Each call to this method should be paired with a call to
+     * {@link #release(CachedDocument)}.
+     * @param cachedDoc The cached document
+     */
+    public synchronized void retain(CachedDocument cachedDoc)
+    {
+        cachedDoc.referenceCount++;
+    }
+
+    /**
+     * Method to release a reference to the document. The document remains cached for future use.
+     * @param cachedDoc The cached document
+     */
+    public synchronized void release(CachedDocument cachedDoc)
+    {
+        if (cachedDoc.referenceCount > 0)
+        {
+            cachedDoc.referenceCount--;
+        }
+    }
+
+    /**
+     * Accessor for the cached document that holds the specified (loaded) ODF document.
+     * Doesn't need the monitor of this cache, since it is used for every operation on the cells of the document.
+     * @param doc The ODF document
+     * @return The cached document, or null if this document is not from this cache
+     */
+    public CachedDocument getCachedDocument(OdfDocument doc)
+    {
+        return documentsByDocument.get(doc);
+    }
+
+    /**
+     * Method to register that the document has unsaved changes at the end of a non-transactional operation.
+     * When the number of unsaved changes has reached the limit the document is saved now, otherwise a save is
+     * scheduled (if not already scheduled) to happen after the maximum delay.
+     * @param cachedDoc The cached document
+     */
+    public void scheduleSave(CachedDocument cachedDoc)
+    {
+        if (cachedDoc.getUnsavedModificationCount() >= saveMaxDirtyOperations)
+        {
+            flush(cachedDoc);
+            return;
+        }
+
+        boolean schedule = false;
+        synchronized (cachedDoc)
+        {
+            if (!cachedDoc.saveScheduled)
+            {
+                cachedDoc.saveScheduled = true;
+                schedule = true;
+            }
+        }
+
+        if (schedule)
+        {
+            getSaveExecutor().schedule(() ->
+            {
+                try
+                {
+                    flush(cachedDoc);
+                }
+                catch (Exception e)
+                {
+                    NucleusLogger.CONNECTION.error("Exception thrown saving ODF file=" + cachedDoc.getFile(), e);
+                }
+            }, saveMaxDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Method to save the document now if it has unsaved changes, waiting for any connection using it to finish.
+     * @param cachedDoc The cached document
+     */
+    public void flush(CachedDocument cachedDoc)
+    {
+        cachedDoc.lock();
+        try
+        {
+            synchronized (cachedDoc)
+            {
+                cachedDoc.saveScheduled = false;
+            }
+            if (cachedDoc.document != null && cachedDoc.isDirty())
+            {
+                NucleusLogger.CONNECTION.debug("Saving ODF file=" + cachedDoc.getFile() + " with " + cachedDoc.getUnsavedModificationCount() + " unsaved change(s)");
+                try
+                {
+                    cachedDoc.save();
+                }
+                catch (Exception e)
+                {
+                    throw new NucleusException(e.getMessage(), e);
+                }
+            }
+        }
+        finally
+        {
+            cachedDoc.unlock();
+        }
+    }
+
+    private synchronized ScheduledExecutorService getSaveExecutor()
+    {
+        if (saveExecutor == null)
+        {
+            saveExecutor = Executors.newSingleThreadScheduledExecutor(r ->
+            {
+                Thread thread = new Thread(r, "DataNucleus-ODF-Save");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return saveExecutor;
+    }
+
+    /**
+     * Method to close all cached documents, saving any unsaved changes and releasing their resources.
+     * The documents are saved without holding the monitor of this cache, since a connection holding the lock of a
+     * document may need it.
+     */
+    public void close()
+    {
+        List<CachedDocument> cachedDocs = null;
+        synchronized (this)
+        {
+            if (saveExecutor != null)
+            {
+                saveExecutor.shutdownNow();
+                saveExecutor = null;
+            }
+            cachedDocs = new ArrayList<>(documentsByPath.values());
+        }
+
+        for (CachedDocument cachedDoc : cachedDocs)
+        {
+            try
+            {
+                flush(cachedDoc);
+            }
+            catch (Exception e)
+            {
+                NucleusLogger.CONNECTION.error("Exception thrown saving ODF file=" + cachedDoc.getFile(), e);
+            }
+            cachedDoc.saveIndexes();
+            if (cachedDoc.referenceCount > 0)
+            {
+                NucleusLogger.CONNECTION.debug("ODF file=" + cachedDoc.getFile() + " is being closed yet still has " + cachedDoc.referenceCount + " connection(s) using it");
+            }
+            cachedDoc.close();
+        }
+
+        synchronized (this)
+        {
+            documentsByPath.clear();
+            documentsByDocument = new IdentityHashMap<>();
+        }
+    }
+}
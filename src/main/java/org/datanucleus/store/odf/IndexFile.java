@@ -0,0 +1,429 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.store.odf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.datanucleus.store.odf.index.MemberIndex;
+import org.datanucleus.store.odf.index.RowIndex;
+import org.datanucleus.util.NucleusLogger;
+import org.odftoolkit.odfdom.doc.table.OdfTable;
+import org.odftoolkit.odfdom.doc.table.OdfTableRow;
+
+/**
+ * Side-car file holding the indexes of the worksheets of an ODF document, so that they needn't be rebuilt (reading
+ * every row of every worksheet) when the document is next loaded. The file is written next to the ODF file, with the
+ * same name plus the suffix ".dnindex", and is stamped with the CRC and size of the "content.xml" part of the ODF file
+ * as it was when the indexes were written. When the stamp doesn't match the ODF file (e.g the file was saved after
+ * the indexes were written, or was changed by another application) the index file is ignored, and the indexes are
+ * rebuilt when first needed.
+ * <p>
+ * The indexes refer to rows by their position in the worksheet. The data for each worksheet is held undecoded when the
+ * file is read, and is only restored onto the rows of the worksheet when the worksheet is first used.
+ */
+public class IndexFile
+{
+    /** Suffix added to the name of the ODF file for its index file. */
+    public static final String FILE_SUFFIX = ".dnindex";
+
+    private static final int MAGIC = 0x444E4958;
+
+    private static final int VERSION = 1;
+
+    private static final byte KEY_NULL = 0;
+    private static final byte KEY_LONG = 1;
+    private static final byte KEY_STRING = 2;
+    private static final byte KEY_DATE = 3;
+    private static final byte KEY_COMPOSITE = 4;
+
+    private IndexFile()
+    {
+    }
+
+    /**
+     * Accessor for the index file for the specified ODF file.
+     * @param odfFile The ODF file
+     * @return The index file
+     */
+    public static File getIndexFile(File odfFile)
+    {
+        return new File(odfFile.getPath() + FILE_SUFFIX);
+    }
+
+    /**
+     * Method to return the stamp of the content of the ODF file, being the CRC and size of its "content.xml" part.
+     * These are read from the directory of the (zip) file, so the content itself is not read.
+     * @param odfFile The ODF file
+     * @return The stamp, or null if it couldn't be read
+     */
+    static long[] getContentStamp(File odfFile)
+    {
+        try (ZipFile zipFile = new ZipFile(odfFile))
+        {
+            ZipEntry entry = zipFile.getEntry("content.xml");
+            if (entry == null || entry.getCrc() < 0 || entry.getSize() < 0)
+            {
+                return null;
+            }
+            return new long[] {entry.getCrc(), entry.getSize()};
+        }
+        catch (IOException ioe)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Method to read the index file for the specified ODF file, when its stamp matches the ODF file.
+     * @param odfFile The ODF file
+     * @return The (undecoded) index data, keyed by the worksheet name, or null if no index file is present, or it is
+     *     out of date or can't be read
+     */
+    static Map<String, byte[]> read(File odfFile)
+    {
+        File indexFile = getIndexFile(odfFile);
+        if (!indexFile.exists())
+        {
+            return null;
+        }
+
+        long[] stamp = getContentStamp(odfFile);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile))))
+        {
+            if (stamp == null || in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != stamp[0] || in.readLong() != stamp[1])
+            {
+                NucleusLogger.CONNECTION.debug("Index file " + indexFile + " is out of date for ODF file=" + odfFile + " so ignoring it");
+                return null;
+            }
+
+            Map<String, byte[]> dataBySheet = new HashMap<>();
+            int numSheets = in.readInt();
+            for (int i=0;i<numSheets;i++)
+            {
+                String sheetName = in.readUTF();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                dataBySheet.put(sheetName, data);
+            }
+            NucleusLogger.CONNECTION.debug("Read indexes for " + numSheets + " worksheet(s) of ODF file=" + odfFile + " from " + indexFile);
+            return dataBySheet;
+        }
+        catch (IOException ioe)
+        {
+            NucleusLogger.CONNECTION.debug("Exception reading index file " + indexFile + " so ignoring it : " + ioe.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Method to write the index file for the specified ODF file. The ODF file must be saved with the current state of
+     * the document before calling this.
+     * @param odfFile The ODF file
+     * @param dataBySheet The (encoded) index data, keyed by the worksheet name
+     */
+    static void write(File odfFile, Map<String, byte[]> dataBySheet)
+    {
+        File indexFile = getIndexFile(odfFile);
+        long[] stamp = getContentStamp(odfFile);
+        if (stamp == null || dataBySheet.isEmpty())
+        {
+            indexFile.delete();
+            return;
+        }
+
+        // Write to a temporary file and then replace, so a partially written file is never read
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(stamp[0]);
+                out.writeLong(stamp[1]);
+                out.writeInt(dataBySheet.size());
+                for (Map.Entry<String, byte[]> entry : dataBySheet.entrySet())
+                {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+            }
+            indexFile.delete();
+            if (!tmpFile.renameTo(indexFile))
+            {
+                throw new IOException("Unable to rename " + tmpFile + " to " + indexFile);
+            }
+            NucleusLogger.CONNECTION.debug("Wrote indexes for " + dataBySheet.size() + " worksheet(s) of ODF file=" + odfFile + " to " + indexFile);
+        }
+        catch (IOException ioe)
+        {
+            NucleusLogger.CONNECTION.warn("Exception writing index file " + indexFile + " : " + ioe.getMessage());
+            tmpFile.delete();
+            indexFile.delete();
+        }
+    }
+
+    /**
+     * Method to encode the built indexes of a worksheet.
+     * @param sheetState State of the worksheet
+     * @param worksheet The worksheet
+     * @return The encoded indexes, or null if the worksheet has no built indexes
+     * @throws IOException if an error occurs encoding the indexes
+     */
+    static byte[] encode(SheetState sheetState, OdfTable worksheet) throws IOException
+    {
+        RowIndex pkIndex = sheetState.getPrimaryKeyIndex();
+        List<MemberIndex> memberIndexes = sheetState.getMemberIndexes();
+        if (pkIndex == null && (memberIndexes == null || memberIndexes.isEmpty()))
+        {
+            return null;
+        }
+
+        List<OdfTableRow> rows = worksheet.getRowList();
+        Map<Object, Integer> positionByRowElement = new IdentityHashMap<>();
+        for (int i=0;i<rows.size();i++)
+        {
+            positionByRowElement.put(rows.get(i).getOdfElement(), Integer.valueOf(i));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(rows.size());
+
+        out.writeBoolean(pkIndex != null);
+        if (pkIndex != null)
+        {
+            int[] cols = pkIndex.getColumnPositions();
+            out.writeInt(cols.length);
+            for (int col : cols)
+            {
+                out.writeInt(col);
+            }
+            List<Object[]> entries = new ArrayList<>();
+            pkIndex.forEachRow((key, row) -> entries.add(new Object[] {key, positionByRowElement.get(row.getOdfElement())}));
+            writeEntries(out, entries);
+        }
+
+        int numMemberIndexes = (memberIndexes != null ? memberIndexes.size() : 0);
+        out.writeInt(numMemberIndexes);
+        for (int i=0;i<numMemberIndexes;i++)
+        {
+            MemberIndex memberIndex = memberIndexes.get(i);
+            out.writeUTF(memberIndex.getMemberName());
+            out.writeInt(memberIndex.getColumnPosition());
+            out.writeBoolean(memberIndex.isUnique());
+            out.writeUTF(memberIndex.getKeyType().getName());
+            List<Object[]> entries = new ArrayList<>();
+            memberIndex.forEachRowElement((key, rowElement) -> entries.add(new Object[] {key, positionByRowElement.get(rowElement)}));
+            writeEntries(out, entries);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeEntries(DataOutputStream out, List<Object[]> entries) throws IOException
+    {
+        out.writeInt(entries.size());
+        for (Object[] entry : entries)
+        {
+            if (entry[1] == null)
+            {
+                throw new IOException("Index holds a row that is not in the worksheet");
+            }
+            out.writeInt((Integer)entry[1]);
+            writeKey(out, entry[0]);
+        }
+    }
+
+    /**
+     * Method to restore the indexes of a worksheet from their encoded form onto the rows of the worksheet.
+     * The primary-key index is set on the sheet state, and the member indexes set as restored, to be checked against
+     * the metadata of the class when first used.
+     * @param sheetState State of the worksheet
+     * @param worksheet The worksheet
+     * @param data The encoded indexes
+     * @return Whether the indexes were restored (otherwise the data doesn't match the worksheet)
+     */
+    static boolean restore(SheetState sheetState, OdfTable worksheet, byte[] data)
+    {
+        try
+        {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            List<OdfTableRow> rows = worksheet.getRowList();
+            if (in.readInt() != rows.size())
+            {
+                return false;
+            }
+
+            RowIndex pkIndex = null;
+            if (in.readBoolean())
+            {
+                int[] cols = new int[in.readInt()];
+                for (int i=0;i<cols.length;i++)
+                {
+                    cols[i] = in.readInt();
+                }
+                pkIndex = new RowIndex(cols);
+                int numEntries = in.readInt();
+                for (int i=0;i<numEntries;i++)
+                {
+                    OdfTableRow row = rows.get(in.readInt());
+                    pkIndex.restoreRow(readKey(in), row);
+                }
+            }
+
+            List<MemberIndex> memberIndexes = new ArrayList<>();
+            int numMemberIndexes = in.readInt();
+            for (int i=0;i<numMemberIndexes;i++)
+            {
+                String memberName = in.readUTF();
+                int col = in.readInt();
+                boolean unique = in.readBoolean();
+                Class keyType = getKeyType(in.readUTF());
+                MemberIndex memberIndex = new MemberIndex(memberName, keyType, col, unique);
+                int numEntries = in.readInt();
+                for (int j=0;j<numEntries;j++)
+                {
+                    int position = in.readInt();
+                    memberIndex.restoreRow(rows.get(position), position, readKey(in));
+                }
+                memberIndexes.add(memberIndex);
+            }
+
+            synchronized (sheetState)
+            {
+                sheetState.setPrimaryKeyIndex(pkIndex);
+                if (!memberIndexes.isEmpty())
+                {
+                    sheetState.setMemberIndexes(memberIndexes);
+                    sheetState.setMemberIndexesRestored(true);
+                }
+            }
+            return true;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            NucleusLogger.CONNECTION.debug("Exception restoring indexes of worksheet " + sheetState.getSheetName() + " so ignoring them : " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static Class getKeyType(String name) throws IOException
+    {
+        if (Long.class.getName().equals(name))
+        {
+            return Long.class;
+        }
+        else if (String.class.getName().equals(name))
+        {
+            return String.class;
+        }
+        else if (Date.class.getName().equals(name))
+        {
+            return Date.class;
+        }
+        throw new IOException("Unsupported key type " + name);
+    }
+
+    private static void writeKey(DataOutputStream out, Object key) throws IOException
+    {
+        if (key == null)
+        {
+            out.writeByte(KEY_NULL);
+        }
+        else if (key instanceof Long)
+        {
+            out.writeByte(KEY_LONG);
+            out.writeLong((Long)key);
+        }
+        else if (key instanceof String)
+        {
+            // Not writeUTF since that is limited to 64k bytes
+            byte[] bytes = ((String)key).getBytes(StandardCharsets.UTF_8);
+            out.writeByte(KEY_STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        else if (key instanceof Date)
+        {
+            out.writeByte(KEY_DATE);
+            out.writeLong(((Date)key).getTime());
+        }
+        else if (key instanceof List)
+        {
+            List keys = (List)key;
+            out.writeByte(KEY_COMPOSITE);
+            out.writeInt(keys.size());
+            for (Object k : keys)
+            {
+                writeKey(out, k);
+            }
+        }
+        else
+        {
+            throw new IOException("Unsupported key type " + key.getClass().getName());
+        }
+    }
+
+    private static Object readKey(DataInputStream in) throws IOException
+    {
+        byte type = in.readByte();
+        switch (type)
+        {
+            case KEY_NULL :
+                return null;
+            case KEY_LONG :
+                return Long.valueOf(in.readLong());
+            case KEY_STRING :
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            case KEY_DATE :
+                return new Date(in.readLong());
+            case KEY_COMPOSITE :
+                Object[] keys = new Object[in.readInt()];
+                for (int i=0;i<keys.length;i++)
+                {
+                    keys[i] = readKey(in);
+                }
+                return Arrays.asList(keys);
+            default :
+                throw new IOException("Unsupported key type " + type);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.datanucleus.store.odf;
 
 import java.sql.Timestamp;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.datanucleus.ExecutionContext;
@@ -38,7 +39,9 @@ import org.datanucleus.store.StoreManager;
 import org.datanucleus.store.connection.ManagedConnection;
 import org.datanucleus.store.fieldmanager.DeleteFieldManager;
 import org.datanucleus.store.odf.fieldmanager.FetchFieldManager;
+import org.datanucleus.store.odf.fieldmanager.RowWriter;
 import org.datanucleus.store.odf.fieldmanager.StoreFieldManager;
+import org.datanucleus.store.odf.index.MemberIndex;
 import org.datanucleus.store.schema.table.MemberColumnMapping;
 import org.datanucleus.store.schema.table.SurrogateColumnType;
 import org.datanucleus.store.schema.table.Table;
@@ -63,6 +66,9 @@ import org.odftoolkit.odfdom.dom.attribute.office.OfficeValueTypeAttribute;
  */
 public class ODFPersistenceHandler extends AbstractPersistenceHandler
 {
+    /** Whether to skip the check for an existing row with the same identity on insert, when the identity was generated. */
+    protected final boolean trustGeneratedIdentities;
+
     /**
      * Constructor.
      * @param storeMgr Manager for the datastore
@@ -70,6 +76,7 @@ public class ODFPersistenceHandler extends AbstractPersistenceHandler
     public ODFPersistenceHandler(StoreManager storeMgr)
     {
         super(storeMgr);
+        trustGeneratedIdentities = storeMgr.getBooleanProperty(ODFStoreManager.PROPERTY_TRUST_GENERATED_IDENTITIES);
     }
 
     @Override
@@ -108,31 +115,33 @@ public class ODFPersistenceHandler extends AbstractPersistenceHandler
             String sheetName = schemaTable.getName();
             OdfTable table = spreadsheetDoc.getTableByName(sheetName);
 
-            if (cmd.getIdentityType() == IdentityType.APPLICATION || cmd.getIdentityType() == IdentityType.DATASTORE)
+            if ((cmd.getIdentityType() == IdentityType.APPLICATION || cmd.getIdentityType() == IdentityType.DATASTORE) &&
+                !(trustGeneratedIdentities && isIdentityGenerated(cmd)))
             {
-                // Enforce uniqueness of datastore rows
-                try
+                // Enforce uniqueness of datastore rows, looking up the identity in the primary-key index of the worksheet
+                if (table != null && ODFUtils.getTableRowForObjectInSheet(sm, spreadsheetDoc, false) != null)
                 {
-                    locateObject(sm);
                     throw new NucleusUserException(Localiser.msg("ODF.Insert.ObjectWithIdAlreadyExists",
                         StringUtils.toJVMIDString(sm.getObject()), sm.getInternalObjectId()));
                 }
-                catch (NucleusObjectNotFoundException onfe)
-                {
-                    // Do nothing since object with this id doesn't exist
-                }
             }
 
+            // Enforce uniqueness of any unique members
+            ODFUtils.checkUniqueMemberValues(sm, ODFUtils.getMemberIndexes(storeMgr, spreadsheetDoc, cmd, schemaTable), null);
+
             // Add a new row to this table for this object
             OdfTableRow row = table.appendRow();
+            ODFUtils.adjustDataRowCount(storeMgr, spreadsheetDoc, sheetName, 1);
+            ODFUtils.markModified(storeMgr, spreadsheetDoc, sheetName);
 
-            // Add cells for the fields to this row
-            sm.provideFields(cmd.getAllMemberPositions(), new StoreFieldManager(sm, row, true, schemaTable));
+            // Add cells for the fields to this row, splitting the cells of the new row in a single pass
+            RowWriter rowWriter = new RowWriter(row);
+            sm.provideFields(cmd.getAllMemberPositions(), new StoreFieldManager(sm, rowWriter, schemaTable));
 
             if (cmd.getIdentityType() == IdentityType.DATASTORE)
             {
                 int colIndex = schemaTable.getSurrogateColumn(SurrogateColumnType.DATASTORE_ID).getPosition();
-                OdfTableCell cell = row.getCellByIndex(colIndex);
+                OdfTableCell cell = rowWriter.getCell(colIndex);
                 Object idKey = IdentityUtils.getTargetKeyForDatastoreIdentity(sm.getInternalObjectId());
                 if (idKey instanceof String)
                 {
@@ -174,12 +183,12 @@ public class ODFPersistenceHandler extends AbstractPersistenceHandler
                 {
                     AbstractMemberMetaData verMmd = cmd.getMetaDataForMember(vermd.getMemberName());
                     MemberColumnMapping mapping = schemaTable.getMemberColumnMappingForMember(verMmd);
-                    verCell = row.getCellByIndex(mapping.getColumn(0).getPosition());
+                    verCell = rowWriter.getCell(mapping.getColumn(0).getPosition());
                 }
                 else
                 {
                     int colIndex = schemaTable.getSurrogateColumn(SurrogateColumnType.VERSION).getPosition();
-                    verCell = row.getCellByIndex(colIndex);
+                    verCell = rowWriter.getCell(colIndex);
                 }
                 if (nextVersion instanceof Long)
                 {
@@ -193,6 +202,9 @@ public class ODFPersistenceHandler extends AbstractPersistenceHandler
                 }
             }
 
+            // Row is now complete, so add it to any indexes of the worksheet
+            ODFUtils.indexRow(storeMgr, spreadsheetDoc, sheetName, row);
+
             if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
             {
                 NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("ODF.ExecutionTime", (System.currentTimeMillis() - startTime)));
@@ -311,7 +323,14 @@ public class ODFPersistenceHandler extends AbstractPersistenceHandler
                 throw new NucleusDataStoreException(Localiser.msg("ODF.RowNotFoundForSheetForWorkbook",
                     sheetName, StringUtils.toJVMIDString(sm.getInternalObjectId())));
             }
+            // Enforce uniqueness of any unique members being updated, and keep the indexes of updated members in step
+            List<MemberIndex> memberIndexes = ODFUtils.getMemberIndexesForFields(storeMgr, spreadsheetDoc, cmd, schemaTable, updatedFieldNums);
+            ODFUtils.checkUniqueMemberValues(sm, memberIndexes, row);
+            Object[] oldIndexKeys = ODFUtils.getMemberIndexKeys(memberIndexes, row);
+
             sm.provideFields(updatedFieldNums, new StoreFieldManager(sm, row, false, schemaTable));
+            ODFUtils.updateMemberIndexes(memberIndexes, row, oldIndexKeys);
+            ODFUtils.markModified(storeMgr, spreadsheetDoc, schemaTable.getName());
 
             if (vermd != null)
             {
@@ -409,7 +428,10 @@ public class ODFPersistenceHandler extends AbstractPersistenceHandler
             }
 
             // Remove the row node
+            ODFUtils.unindexRow(storeMgr, spreadsheetDoc, schemaTable.getName(), row);
             spreadsheetDoc.getTableByName(schemaTable.getName()).removeRowsByIndex(row.getRowIndex(), 1);
+            ODFUtils.adjustDataRowCount(storeMgr, spreadsheetDoc, schemaTable.getName(), -1);
+            ODFUtils.markModified(storeMgr, spreadsheetDoc, schemaTable.getName());
 
             if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
             {
@@ -554,6 +576,34 @@ public class ODFPersistenceHandler extends AbstractPersistenceHandler
         return null;
     }
 
+    /**
+     * Convenience method to return whether the identity of objects of the class is generated (by a value strategy),
+     * so will be unique without checking the worksheet.
+     * @param cmd Metadata for the class
+     * @return Whether the identity is generated
+     */
+    protected boolean isIdentityGenerated(AbstractClassMetaData cmd)
+    {
+        if (cmd.getIdentityType() == IdentityType.DATASTORE)
+        {
+            return cmd.getIdentityMetaData() != null && cmd.getIdentityMetaData().getValueStrategy() != null;
+        }
+
+        int[] pkFieldNumbers = cmd.getPKMemberPositions();
+        if (pkFieldNumbers == null || pkFieldNumbers.length == 0)
+        {
+            return false;
+        }
+        for (int i=0;i<pkFieldNumbers.length;i++)
+        {
+            if (cmd.getMetaDataForManagedMemberAtAbsolutePosition(pkFieldNumbers[i]).getValueStrategy() == null)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void locateObject(DNStateManager sm)
     {
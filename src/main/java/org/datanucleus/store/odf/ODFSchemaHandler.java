@@ -17,19 +17,30 @@ Contributors:
 **********************************************************************/
 package org.datanucleus.store.odf;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
 import org.datanucleus.ClassLoaderResolver;
 import org.datanucleus.exceptions.NucleusDataStoreException;
 import org.datanucleus.metadata.AbstractClassMetaData;
+import org.datanucleus.metadata.AbstractMemberMetaData;
+import org.datanucleus.metadata.FieldPersistenceModifier;
+import org.datanucleus.metadata.IndexMetaData;
+import org.datanucleus.metadata.RelationType;
+import org.datanucleus.metadata.UniqueMetaData;
 import org.datanucleus.store.StoreData;
 import org.datanucleus.store.StoreManager;
 import org.datanucleus.store.connection.ManagedConnection;
+import org.datanucleus.store.odf.index.MemberIndex;
 import org.datanucleus.store.schema.AbstractStoreSchemaHandler;
 import org.datanucleus.store.schema.table.Column;
 import org.datanucleus.store.schema.table.CompleteClassTable;
+import org.datanucleus.store.schema.table.MemberColumnMapping;
 import org.datanucleus.store.schema.table.Table;
 import org.datanucleus.util.Localiser;
 import org.datanucleus.util.NucleusLogger;
@@ -45,6 +56,8 @@ import org.odftoolkit.odfdom.pkg.OdfFileDom;
 
 /**
  * Handler for schema operations with ODF documents.
+ * A worksheet has no native indexes or constraints, so index and unique metadata on the members of a class are
+ * represented by in-memory indexes of the rows of its worksheet (see {@link #getMemberIndexesForClass(AbstractClassMetaData, Table)}).
  */
 public class ODFSchemaHandler extends AbstractStoreSchemaHandler
 {
@@ -108,6 +121,7 @@ public class ODFSchemaHandler extends AbstractStoreSchemaHandler
                         table.setTableName(schemaTable.getName());
 
                         // Set the header row if required TODO Make this optional when ODFDOM allows tables with no rows/columns
+                        int headerRowCount = 0;
                         if (true)
                         {
                             OdfTableRow headerRow = table.getRowByIndex(0);
@@ -119,6 +133,17 @@ public class ODFSchemaHandler extends AbstractStoreSchemaHandler
                                 cell.setValueType(OfficeValueTypeAttribute.Value.STRING.toString());
                                 cell.setStringValue(schemaCol.getName());
                             }
+                            headerRowCount = 1;
+                        }
+                        ODFUtils.markModified(storeMgr, spreadsheet);
+                        ODFUtils.removeSheetState(storeMgr, spreadsheet, schemaTable.getName());
+
+                        // Record where the data rows start (so scans needn't check each row for being a header), and how many there are
+                        SheetState sheetState = ODFUtils.getSheetState(storeMgr, spreadsheet, schemaTable.getName());
+                        if (sheetState != null)
+                        {
+                            sheetState.setHeaderRowCount(headerRowCount);
+                            sheetState.setDataRowCount(table.getRowCount() - headerRowCount);
                         }
 
                         if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
@@ -176,6 +201,8 @@ public class ODFSchemaHandler extends AbstractStoreSchemaHandler
                     if (table != null)
                     {
                         table.remove();
+                        ODFUtils.markModified(storeMgr, spreadsheet);
+                        ODFUtils.removeSheetState(storeMgr, spreadsheet, schemaTable.getName());
                     }
                 }
             }
@@ -198,4 +225,90 @@ public class ODFSchemaHandler extends AbstractStoreSchemaHandler
         // TODO Implement validation of the ODF document
         super.validateSchema(classNames, props, connection);
     }
-}
\ No newline at end of file
+
+    /**
+     * Method to return the (empty) indexes to maintain for the worksheet of the specified class, as defined by the index
+     * and unique metadata of the class and its members. Only single-member indexes are supported, on members of a
+     * basic type that can be keyed (String, short, int, long, and date types) stored in a single column without
+     * type converter. Any other index/unique metadata is ignored.
+     * @param cmd Metadata for the class
+     * @param table Table for the class
+     * @return The indexes (not yet built), one per member
+     */
+    public List<MemberIndex> getMemberIndexesForClass(AbstractClassMetaData cmd, Table table)
+    {
+        // Find the indexed members, and whether each is unique
+        Map<String, Boolean> uniqueByMemberName = new LinkedHashMap<>();
+        List<IndexMetaData> idxmds = cmd.getIndexMetaData();
+        if (idxmds != null)
+        {
+            for (IndexMetaData idxmd : idxmds)
+            {
+                String[] memberNames = idxmd.getMemberNames();
+                if (memberNames != null && memberNames.length == 1)
+                {
+                    uniqueByMemberName.merge(memberNames[0], Boolean.valueOf(idxmd.isUnique()), Boolean::logicalOr);
+                }
+            }
+        }
+        List<UniqueMetaData> unimds = cmd.getUniqueMetaData();
+        if (unimds != null)
+        {
+            for (UniqueMetaData unimd : unimds)
+            {
+                String[] memberNames = unimd.getMemberNames();
+                if (memberNames != null && memberNames.length == 1)
+                {
+                    uniqueByMemberName.put(memberNames[0], Boolean.TRUE);
+                }
+            }
+        }
+        int[] memberPositions = cmd.getAllMemberPositions();
+        for (int i=0;i<memberPositions.length;i++)
+        {
+            AbstractMemberMetaData mmd = cmd.getMetaDataForManagedMemberAtAbsolutePosition(memberPositions[i]);
+            IndexMetaData idxmd = mmd.getIndexMetaData();
+            if (idxmd != null)
+            {
+                uniqueByMemberName.merge(mmd.getName(), Boolean.valueOf(idxmd.isUnique()), Boolean::logicalOr);
+            }
+            if (mmd.getUniqueMetaData() != null)
+            {
+                uniqueByMemberName.put(mmd.getName(), Boolean.TRUE);
+            }
+        }
+
+        List<MemberIndex> indexes = new ArrayList<>();
+        ClassLoaderResolver clr = storeMgr.getNucleusContext().getClassLoaderResolver(null);
+        for (Map.Entry<String, Boolean> entry : uniqueByMemberName.entrySet())
+        {
+            AbstractMemberMetaData mmd = cmd.getMetaDataForMember(entry.getKey());
+            if (mmd == null || mmd.getPersistenceModifier() != FieldPersistenceModifier.PERSISTENT || mmd.getRelationType(clr) != RelationType.NONE ||
+                !isIndexableType(mmd.getType()))
+            {
+                NucleusLogger.DATASTORE_SCHEMA.debug("Index on member " + entry.getKey() + " of class " + cmd.getFullClassName() + " is not supported so is ignored");
+                continue;
+            }
+            MemberColumnMapping mapping = table.getMemberColumnMappingForMember(mmd);
+            if (mapping == null || mapping.getTypeConverter() != null || mapping.getNumberOfColumns() != 1)
+            {
+                NucleusLogger.DATASTORE_SCHEMA.debug("Index on member " + mmd.getFullFieldName() + " is not supported so is ignored");
+                continue;
+            }
+            indexes.add(new MemberIndex(mmd.getName(), mmd.getType(), mapping.getColumn(0).getPosition(), entry.getValue().booleanValue()));
+        }
+        return indexes;
+    }
+
+    /**
+     * Convenience method to return whether values of the specified member type can be keyed in a {@link MemberIndex}.
+     * @param type The member type
+     * @return Whether the type can be indexed
+     */
+    protected static boolean isIndexableType(Class type)
+    {
+        return type == String.class || type == short.class || type == int.class || type == long.class ||
+            type == Short.class || type == Integer.class || type == Long.class ||
+            type == Date.class || type == java.sql.Date.class || type == java.sql.Timestamp.class;
+    }
+}
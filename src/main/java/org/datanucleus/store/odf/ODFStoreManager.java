@@ -23,11 +23,13 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.datanucleus.ClassLoaderResolver;
 import org.datanucleus.ExecutionContext;
 import org.datanucleus.PersistenceNucleusContext;
 import org.datanucleus.exceptions.NucleusException;
+import org.datanucleus.metadata.AbstractClassMetaData;
 import org.datanucleus.metadata.ClassMetaData;
 import org.datanucleus.metadata.ClassPersistenceModifier;
 import org.datanucleus.metadata.QueryLanguage;
@@ -38,9 +40,12 @@ import org.datanucleus.store.StoreManager;
 import org.datanucleus.store.connection.ManagedConnection;
 import org.datanucleus.store.odf.query.JDOQLQuery;
 import org.datanucleus.store.odf.query.JPQLQuery;
+import org.datanucleus.store.odf.query.ODFQueryResultCache;
+import org.datanucleus.store.odf.query.ParallelRowScanner;
 import org.datanucleus.store.query.Query;
 import org.datanucleus.store.schema.SchemaAwareStoreManager;
 import org.datanucleus.store.schema.table.CompleteClassTable;
+import org.datanucleus.store.schema.table.Table;
 import org.datanucleus.util.ClassUtils;
 import org.datanucleus.util.Localiser;
 import org.odftoolkit.odfdom.doc.OdfSpreadsheetDocument;
@@ -50,11 +55,58 @@ import org.odftoolkit.odfdom.doc.OdfSpreadsheetDocument;
  */
 public class ODFStoreManager extends AbstractStoreManager implements SchemaAwareStoreManager
 {
+    /** Property defining when non-transactional changes are saved to the file : "immediate" (default) or "deferred". */
+    public static final String PROPERTY_SAVE_MODE = "datanucleus.odf.saveMode";
+
+    /** Property defining the maximum delay (millisecs) before a deferred save is performed. */
+    public static final String PROPERTY_SAVE_MAX_DELAY = "datanucleus.odf.saveMaxDelay";
+
+    /** Property defining the maximum number of unsaved changes before a deferred save is performed immediately. */
+    public static final String PROPERTY_SAVE_MAX_DIRTY_OPERATIONS = "datanucleus.odf.saveMaxDirtyOperations";
+
+    /** Property defining whether the indexes of the worksheets are persisted to a file next to the ODF file, for use when next loaded. */
+    public static final String PROPERTY_PERSIST_INDEXES = "datanucleus.odf.persistIndexes";
+
+    /** Property defining whether to skip the check for an existing row with the same identity on insert, when the identity was generated. */
+    public static final String PROPERTY_TRUST_GENERATED_IDENTITIES = "datanucleus.odf.trustGeneratedIdentities";
+
+    /** Property defining whether the query filter is evaluated on the rows of large worksheets in parallel. */
+    public static final String PROPERTY_PARALLEL_SCAN = "datanucleus.odf.parallelScan";
+
+    /** Property defining the number of threads for parallel scans (0 meaning the number of processors). */
+    public static final String PROPERTY_PARALLEL_SCAN_THREADS = "datanucleus.odf.parallelScanThreads";
+
+    /** Property defining the minimum number of rows of a worksheet for it to be scanned in parallel. */
+    public static final String PROPERTY_PARALLEL_SCAN_MIN_ROWS = "datanucleus.odf.parallelScanMinRows";
+
+    /** Property defining whether the results of queries are cached, until a worksheet they read is modified. */
+    public static final String PROPERTY_QUERY_RESULT_CACHE = "datanucleus.odf.queryResultCache";
+
+    /** Property defining the maximum number of query results held by the query result cache. */
+    public static final String PROPERTY_QUERY_RESULT_CACHE_MAX_SIZE = "datanucleus.odf.queryResultCacheMaxSize";
+
+    /** Property defining the time (millisecs) after which a cached query result expires (0 meaning never). */
+    public static final String PROPERTY_QUERY_RESULT_CACHE_EXPIRY = "datanucleus.odf.queryResultCacheExpiry";
+
+    public static final String SAVE_MODE_DEFERRED = "deferred";
+
     static
     {
         Localiser.registerBundle("org.datanucleus.store.odf.Localisation", ODFStoreManager.class.getClassLoader());
     }
 
+    /** Cache of loaded ODF documents, shared by the connection factories. */
+    private volatile DocumentCache documentCache;
+
+    /** Scanner for evaluating query filters on the rows in parallel, when enabled. */
+    private ParallelRowScanner parallelRowScanner;
+
+    /** Cache of the results of queries, when enabled. */
+    private ODFQueryResultCache queryResultCache;
+
+    /** Layout of the columns of the worksheet of each managed class, keyed by the class name. */
+    private final Map<String, ColumnLayout> columnLayouts = new ConcurrentHashMap<>();
+
     public ODFStoreManager(ClassLoaderResolver clr, PersistenceNucleusContext ctx, Map<String, Object> props)
     {
         super("odf", clr, ctx, props);
@@ -68,6 +120,106 @@ public class ODFStoreManager extends AbstractStoreManager implements SchemaAware
         logConfiguration();
     }
 
+    /* (non-Javadoc)
+     * @see org.datanucleus.store.AbstractStoreManager#close()
+     */
+    @Override
+    public synchronized void close()
+    {
+        super.close();
+
+        if (documentCache != null)
+        {
+            documentCache.close();
+            documentCache = null;
+        }
+        if (parallelRowScanner != null)
+        {
+            parallelRowScanner.close();
+            parallelRowScanner = null;
+        }
+        if (queryResultCache != null)
+        {
+            queryResultCache.clear();
+            queryResultCache = null;
+        }
+    }
+
+    /**
+     * Accessor for the cache of loaded ODF documents.
+     * Only takes the monitor of this store manager when creating the cache, since it is used for every operation on
+     * the cells of a document, and {@link #close()} holds the monitor while waiting for the documents to be saved.
+     * @return The document cache
+     */
+    public DocumentCache getDocumentCache()
+    {
+        DocumentCache docCache = documentCache;
+        if (docCache == null)
+        {
+            synchronized (this)
+            {
+                if (documentCache == null)
+                {
+                    boolean deferredSave = SAVE_MODE_DEFERRED.equalsIgnoreCase(getStringProperty(PROPERTY_SAVE_MODE));
+                    int saveMaxDelay = getIntProperty(PROPERTY_SAVE_MAX_DELAY);
+                    int saveMaxDirtyOps = getIntProperty(PROPERTY_SAVE_MAX_DIRTY_OPERATIONS);
+                    documentCache = new DocumentCache(deferredSave, saveMaxDelay > 0 ? saveMaxDelay : 1000, saveMaxDirtyOps > 0 ? saveMaxDirtyOps : 1000,
+                        getBooleanProperty(PROPERTY_PERSIST_INDEXES));
+                }
+                docCache = documentCache;
+            }
+        }
+        return docCache;
+    }
+
+    /**
+     * Accessor for the scanner for evaluating query filters on the rows of worksheets in parallel.
+     * @return The scanner, or null if parallel scans are not enabled
+     */
+    public synchronized ParallelRowScanner getParallelRowScanner()
+    {
+        if (parallelRowScanner == null && getBooleanProperty(PROPERTY_PARALLEL_SCAN))
+        {
+            int threads = getIntProperty(PROPERTY_PARALLEL_SCAN_THREADS);
+            int minRows = getIntProperty(PROPERTY_PARALLEL_SCAN_MIN_ROWS);
+            parallelRowScanner = new ParallelRowScanner(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), minRows > 0 ? minRows : 10000);
+        }
+        return parallelRowScanner;
+    }
+
+    /**
+     * Accessor for the cache of the results of queries.
+     * @return The cache, or null if query results are not cached
+     */
+    public synchronized ODFQueryResultCache getQueryResultCache()
+    {
+        if (queryResultCache == null && getBooleanProperty(PROPERTY_QUERY_RESULT_CACHE))
+        {
+            int maxSize = getIntProperty(PROPERTY_QUERY_RESULT_CACHE_MAX_SIZE);
+            int expiry = getIntProperty(PROPERTY_QUERY_RESULT_CACHE_EXPIRY);
+            queryResultCache = new ODFQueryResultCache(maxSize > 0 ? maxSize : 1000, expiry > 0 ? expiry : 0);
+        }
+        return queryResultCache;
+    }
+
+    /**
+     * Accessor for the layout of the columns of the worksheet of the specified class, computing it if not yet known.
+     * @param cmd Metadata for the class
+     * @param table Table for the class
+     * @param clr ClassLoader resolver
+     * @return The column layout
+     */
+    public ColumnLayout getColumnLayout(AbstractClassMetaData cmd, Table table, ClassLoaderResolver clr)
+    {
+        ColumnLayout layout = columnLayouts.get(cmd.getFullClassName());
+        if (layout == null || layout.getTable() != table)
+        {
+            layout = new ColumnLayout(cmd, table, clr, getMetaDataManager());
+            columnLayouts.put(cmd.getFullClassName(), layout);
+        }
+        return layout;
+    }
+
     /* (non-Javadoc)
      * @see org.datanucleus.store.AbstractStoreManager#getNucleusConnection(org.datanucleus.ExecutionContext)
      */
@@ -92,6 +244,8 @@ public class ODFStoreManager extends AbstractStoreManager implements SchemaAware
         set.add(StoreManager.OPTION_TXN_ISOLATION_READ_COMMITTED);
         set.add(StoreManager.OPTION_QUERY_JDOQL_BULK_DELETE);
         set.add(StoreManager.OPTION_QUERY_JPQL_BULK_DELETE);
+        set.add(StoreManager.OPTION_QUERY_JDOQL_BULK_UPDATE);
+        set.add(StoreManager.OPTION_QUERY_JPQL_BULK_UPDATE);
         set.add(StoreManager.OPTION_ORM_INHERITANCE_COMPLETE_TABLE);
         return set;
     }
@@ -193,6 +347,7 @@ public class ODFStoreManager extends AbstractStoreManager implements SchemaAware
                         sd = newStoreData(cmd, clr);
                         sd.setTable(table);
                         registerStoreData(sd);
+                        columnLayouts.put(cmd.getFullClassName(), new ColumnLayout(cmd, table, clr, getMetaDataManager()));
                     }
 
                     clsNameSet.add(cmd.getFullClassName());
@@ -18,15 +18,19 @@ Contributors:
 package org.datanucleus.store.odf;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
 import org.datanucleus.ClassLoaderResolver;
 import org.datanucleus.ExecutionContext;
+import org.datanucleus.ExecutionContextListener;
 import org.datanucleus.FetchPlan;
 import org.datanucleus.PersistableObjectType;
 import org.datanucleus.exceptions.NucleusDataStoreException;
+import org.datanucleus.exceptions.NucleusUserException;
 import org.datanucleus.identity.IdentityUtils;
 import org.datanucleus.identity.SCOID;
 import org.datanucleus.metadata.AbstractClassMetaData;
@@ -35,11 +39,19 @@ import org.datanucleus.metadata.IdentityType;
 import org.datanucleus.metadata.RelationType;
 import org.datanucleus.state.DNStateManager;
 import org.datanucleus.store.FieldValues;
+import org.datanucleus.store.StoreManager;
 import org.datanucleus.store.connection.ManagedConnection;
 import org.datanucleus.store.odf.fieldmanager.FetchFieldManager;
+import org.datanucleus.store.odf.fieldmanager.RowReader;
+import org.datanucleus.store.odf.index.MemberIndex;
+import org.datanucleus.store.odf.index.RowIndex;
 import org.datanucleus.store.schema.table.MemberColumnMapping;
 import org.datanucleus.store.schema.table.SurrogateColumnType;
 import org.datanucleus.store.schema.table.Table;
+import org.datanucleus.util.Localiser;
+import org.datanucleus.util.NucleusLogger;
+import org.datanucleus.util.StringUtils;
+import org.odftoolkit.odfdom.doc.OdfDocument;
 import org.odftoolkit.odfdom.doc.OdfSpreadsheetDocument;
 import org.odftoolkit.odfdom.incubator.doc.style.OdfStyle;
 import org.odftoolkit.odfdom.doc.table.OdfTable;
@@ -52,10 +64,471 @@ import org.odftoolkit.odfdom.dom.attribute.office.OfficeValueTypeAttribute;
  */
 public class ODFUtils
 {
+    /**
+     * Convenience method to take a reference to the cached document holding the provided ODF document, for a lazily
+     * loaded query result that reads the document after its connection is released, so that the document isn't
+     * reloaded while the result is still in use. The reference is released when the execution context is closed.
+     * @param ec execution context
+     * @param doc The ODF document
+     * @return The cached document, or null if the document is not held in the document cache
+     */
+    public static CachedDocument retainCachedDocument(ExecutionContext ec, OdfDocument doc)
+    {
+        DocumentCache docCache = ((ODFStoreManager)ec.getStoreManager()).getDocumentCache();
+        CachedDocument cachedDoc = docCache.getCachedDocument(doc);
+        if (cachedDoc != null)
+        {
+            docCache.retain(cachedDoc);
+            ec.registerExecutionContextListener(new ExecutionContextListener()
+            {
+                public void executionContextClosing(ExecutionContext closingEc)
+                {
+                    docCache.release(cachedDoc);
+                }
+            });
+        }
+        return cachedDoc;
+    }
+
+    /**
+     * Convenience method to register that the provided document has been modified, so needs saving when the
+     * connection using it is released.
+     * @param storeMgr StoreManager
+     * @param doc The ODF document
+     */
+    public static void markModified(StoreManager storeMgr, OdfDocument doc)
+    {
+        CachedDocument cachedDoc = ((ODFStoreManager)storeMgr).getDocumentCache().getCachedDocument(doc);
+        if (cachedDoc != null)
+        {
+            cachedDoc.markModified();
+        }
+    }
+
+    /**
+     * Convenience method to register that the specified worksheet of the provided document has been modified, so the
+     * document needs saving when the connection using it is released, and anything derived from the worksheet (such as
+     * cached query results) is out of date.
+     * @param storeMgr StoreManager
+     * @param doc The ODF document
+     * @param sheetName Name of the worksheet
+     */
+    public static void markModified(StoreManager storeMgr, OdfDocument doc, String sheetName)
+    {
+        CachedDocument cachedDoc = ((ODFStoreManager)storeMgr).getDocumentCache().getCachedDocument(doc);
+        if (cachedDoc != null)
+        {
+            cachedDoc.markModified();
+            cachedDoc.getSheetState(sheetName).markModified();
+        }
+    }
+
+    /**
+     * Convenience method to return the state of the specified worksheet of the provided document.
+     * @param storeMgr StoreManager
+     * @param doc The ODF document
+     * @param sheetName Name of the worksheet
+     * @return The sheet state, or null if the document is not held in the document cache
+     */
+    public static SheetState getSheetState(StoreManager storeMgr, OdfDocument doc, String sheetName)
+    {
+        CachedDocument cachedDoc = ((ODFStoreManager)storeMgr).getDocumentCache().getCachedDocument(doc);
+        return cachedDoc != null ? cachedDoc.getSheetState(sheetName) : null;
+    }
+
+    /**
+     * Convenience method to return the number of header rows at the top of the specified worksheet, so the position
+     * of its first data row. Determined when the worksheet is first scanned (or recorded when it is created) and held
+     * in the sheet state, so that scans can start at the data rows without checking the style of each row.
+     * @param storeMgr StoreManager
+     * @param doc The ODF document
+     * @param worksheet The worksheet
+     * @return The number of header rows
+     */
+    public static int getHeaderRowCount(StoreManager storeMgr, OdfDocument doc, OdfTable worksheet)
+    {
+        return getHeaderRowCount(getSheetState(storeMgr, doc, worksheet.getTableName()), worksheet);
+    }
+
+    /**
+     * Convenience method to return the number of header rows at the top of the specified worksheet, held in the
+     * provided sheet state (determining it if not yet known).
+     * @param sheetState State of the worksheet (or null if the document is not held in the document cache)
+     * @param worksheet The worksheet
+     * @return The number of header rows
+     */
+    public static int getHeaderRowCount(SheetState sheetState, OdfTable worksheet)
+    {
+        if (sheetState == null)
+        {
+            return countHeaderRows(worksheet);
+        }
+
+        synchronized (sheetState)
+        {
+            int count = sheetState.getHeaderRowCount();
+            if (count < 0)
+            {
+                count = countHeaderRows(worksheet);
+                sheetState.setHeaderRowCount(count);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Convenience method to return the number of data rows (those after the header rows) of the specified worksheet.
+     * Counted when first needed, and held in the sheet state where it is maintained as rows are added/removed (see
+     * {@link #adjustDataRowCount(StoreManager, OdfDocument, String, int)}), so it needn't be counted again.
+     * @param storeMgr StoreManager
+     * @param doc The ODF document
+     * @param worksheet The worksheet
+     * @return The number of data rows
+     */
+    public static int getDataRowCount(StoreManager storeMgr, OdfDocument doc, OdfTable worksheet)
+    {
+        SheetState sheetState = getSheetState(storeMgr, doc, worksheet.getTableName());
+        int headerRowCount = getHeaderRowCount(sheetState, worksheet);
+        if (sheetState == null)
+        {
+            return Math.max(worksheet.getRowCount() - headerRowCount, 0);
+        }
+
+        synchronized (sheetState)
+        {
+            int count = sheetState.getDataRowCount();
+            if (count < 0)
+            {
+                count = Math.max(worksheet.getRowCount() - headerRowCount, 0);
+                sheetState.setDataRowCount(count);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Convenience method to adjust the number of data rows held for the specified worksheet, for rows added or removed.
+     * @param storeMgr StoreManager
+     * @param doc The ODF document
+     * @param sheetName Name of the worksheet
+     * @param delta Number of rows added (or negative for rows removed)
+     */
+    public static void adjustDataRowCount(StoreManager storeMgr, OdfDocument doc, String sheetName, int delta)
+    {
+        SheetState sheetState = getSheetState(storeMgr, doc, sheetName);
+        if (sheetState != null)
+        {
+            sheetState.adjustDataRowCount(delta);
+        }
+    }
+
+    /**
+     * Convenience method to count the header rows (see {@link #isHeaderRow(OdfTableRow)}) at the top of the worksheet.
+     * @param worksheet The worksheet
+     * @return The number of header rows
+     */
+    private static int countHeaderRows(OdfTable worksheet)
+    {
+        int count = 0;
+        Iterator<OdfTableRow> rowIter = worksheet.getRowList().iterator();
+        while (rowIter.hasNext() && isHeaderRow(rowIter.next()))
+        {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Convenience method to discard the state (e.g indexes) of the specified worksheet, for use when the
+     * worksheet is created or deleted.
+     * @param storeMgr StoreManager
+     * @param doc The ODF document
+     * @param sheetName Name of the worksheet
+     */
+    public static void removeSheetState(StoreManager storeMgr, OdfDocument doc, String sheetName)
+    {
+        CachedDocument cachedDoc = ((ODFStoreManager)storeMgr).getDocumentCache().getCachedDocument(doc);
+        if (cachedDoc != null)
+        {
+            cachedDoc.removeSheetState(sheetName);
+        }
+    }
+
+    /**
+     * Convenience method to add a (newly inserted) row to any indexes of the worksheet that have been built.
+     * Should be called once all cells of the row have been populated.
+     * @param storeMgr StoreManager
+     * @param doc The ODF document
+     * @param sheetName Name of the worksheet
+     * @param row The row
+     */
+    public static void indexRow(StoreManager storeMgr, OdfDocument doc, String sheetName, OdfTableRow row)
+    {
+        SheetState sheetState = getSheetState(storeMgr, doc, sheetName);
+        if (sheetState != null)
+        {
+            RowIndex pkIndex = sheetState.getPrimaryKeyIndex();
+            if (pkIndex != null)
+            {
+                pkIndex.addRow(row);
+            }
+            List<MemberIndex> memberIndexes = sheetState.getMemberIndexes();
+            if (memberIndexes != null)
+            {
+                for (MemberIndex memberIndex : memberIndexes)
+                {
+                    memberIndex.addRow(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Convenience method to remove a row (about to be deleted) from any indexes of the worksheet that have been built.
+     * @param storeMgr StoreManager
+     * @param doc The ODF document
+     * @param sheetName Name of the worksheet
+     * @param row The row
+     */
+    public static void unindexRow(StoreManager storeMgr, OdfDocument doc, String sheetName, OdfTableRow row)
+    {
+        SheetState sheetState = getSheetState(storeMgr, doc, sheetName);
+        if (sheetState != null)
+        {
+            RowIndex pkIndex = sheetState.getPrimaryKeyIndex();
+            if (pkIndex != null)
+            {
+                pkIndex.removeRow(row);
+            }
+            List<MemberIndex> memberIndexes = sheetState.getMemberIndexes();
+            if (memberIndexes != null)
+            {
+                for (MemberIndex memberIndex : memberIndexes)
+                {
+                    memberIndex.removeRow(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Convenience method to return the indexes of the members of the specified class (as defined by its index/unique
+     * metadata), building them if not yet built (or using those restored from the index file, where still matching the metadata).
+     * @param storeMgr StoreManager
+     * @param doc The ODF document
+     * @param cmd Metadata for the class
+     * @param table Table for the class
+     * @return The member indexes (empty if none, or the document is not held in the document cache)
+     */
+    public static List<MemberIndex> getMemberIndexes(StoreManager storeMgr, OdfSpreadsheetDocument doc, AbstractClassMetaData cmd, Table table)
+    {
+        SheetState sheetState = getSheetState(storeMgr, doc, table.getName());
+        OdfTable worksheet = doc.getTableByName(table.getName());
+        if (sheetState == null || worksheet == null)
+        {
+            return Collections.emptyList();
+        }
+
+        synchronized (sheetState)
+        {
+            List<MemberIndex> memberIndexes = sheetState.getMemberIndexes();
+            if (memberIndexes == null || sheetState.isMemberIndexesRestored())
+            {
+                long startTime = System.currentTimeMillis();
+                List<MemberIndex> restoredIndexes = memberIndexes;
+                memberIndexes = ((ODFSchemaHandler)storeMgr.getSchemaHandler()).getMemberIndexesForClass(cmd, table);
+                for (int i=0;i<memberIndexes.size();i++)
+                {
+                    MemberIndex memberIndex = memberIndexes.get(i);
+                    MemberIndex restoredIndex = getMatchingMemberIndex(restoredIndexes, memberIndex);
+                    if (restoredIndex != null)
+                    {
+                        // Restored from the index file, so use it
+                        memberIndexes.set(i, restoredIndex);
+                    }
+                    else
+                    {
+                        memberIndex.build(worksheet, getHeaderRowCount(sheetState, worksheet));
+                    }
+                }
+                sheetState.setMemberIndexes(memberIndexes);
+                if (!memberIndexes.isEmpty() && NucleusLogger.DATASTORE_RETRIEVE.isDebugEnabled())
+                {
+                    NucleusLogger.DATASTORE_RETRIEVE.debug("Built " + memberIndexes.size() + " member index(es) for worksheet " + sheetState.getSheetName() + " in " +
+                        (System.currentTimeMillis() - startTime) + " ms");
+                }
+            }
+            return memberIndexes;
+        }
+    }
+
+    private static MemberIndex getMatchingMemberIndex(List<MemberIndex> memberIndexes, MemberIndex memberIndex)
+    {
+        if (memberIndexes != null)
+        {
+            for (MemberIndex index : memberIndexes)
+            {
+                if (index.getMemberName().equals(memberIndex.getMemberName()) && index.getColumnPosition() == memberIndex.getColumnPosition() &&
+                    index.isUnique() == memberIndex.isUnique() && index.getKeyType() == memberIndex.getKeyType())
+                {
+                    return index;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Convenience method to return the index of the specified member of the class, if it has one.
+     * @param storeMgr StoreManager
+     * @param doc The ODF document
+     * @param cmd Metadata for the class
+     * @param table Table for the class
+     * @param memberName Name of the member
+     * @return The member index, or null if the member is not indexed
+     */
+    public static MemberIndex getMemberIndex(StoreManager storeMgr, OdfSpreadsheetDocument doc, AbstractClassMetaData cmd, Table table, String memberName)
+    {
+        for (MemberIndex memberIndex : getMemberIndexes(storeMgr, doc, cmd, table))
+        {
+            if (memberIndex.getMemberName().equals(memberName))
+            {
+                return memberIndex;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Convenience method to return the indexes of the members of the class that are amongst the specified fields.
+     * @param storeMgr StoreManager
+     * @param doc The ODF document
+     * @param cmd Metadata for the class
+     * @param table Table for the class
+     * @param fieldNumbers Absolute numbers of the fields
+     * @return The member indexes for these fields
+     */
+    public static List<MemberIndex> getMemberIndexesForFields(StoreManager storeMgr, OdfSpreadsheetDocument doc, AbstractClassMetaData cmd, Table table,
+            int[] fieldNumbers)
+    {
+        List<MemberIndex> memberIndexes = getMemberIndexes(storeMgr, doc, cmd, table);
+        if (memberIndexes.isEmpty())
+        {
+            return memberIndexes;
+        }
+
+        List<MemberIndex> fieldIndexes = new ArrayList<>();
+        for (MemberIndex memberIndex : memberIndexes)
+        {
+            int memberPosition = cmd.getAbsolutePositionOfMember(memberIndex.getMemberName());
+            for (int i=0;i<fieldNumbers.length;i++)
+            {
+                if (fieldNumbers[i] == memberPosition)
+                {
+                    fieldIndexes.add(memberIndex);
+                    break;
+                }
+            }
+        }
+        return fieldIndexes;
+    }
+
+    /**
+     * Convenience method to check that the values of the unique members of an object (being inserted or updated) are not
+     * already present in another row, using the member indexes rather than a search of the worksheet.
+     * @param sm StateManager for the object
+     * @param memberIndexes The member indexes to check (only unique indexes are checked)
+     * @param row The row of the object (or null if being inserted)
+     * @throws NucleusUserException if another row has the value of a unique member
+     */
+    public static void checkUniqueMemberValues(DNStateManager sm, List<MemberIndex> memberIndexes, OdfTableRow row)
+    {
+        for (MemberIndex memberIndex : memberIndexes)
+        {
+            if (memberIndex.isUnique())
+            {
+                Object value = sm.provideField(sm.getClassMetaData().getAbsolutePositionOfMember(memberIndex.getMemberName()));
+                Object key = RowIndex.getKeyForValue(value);
+                if (key != null && memberIndex.hasOtherRow(key, row))
+                {
+                    throw new NucleusUserException(Localiser.msg("ODF.UniqueMemberValueAlreadyExists",
+                        StringUtils.toJVMIDString(sm.getObject()), memberIndex.getMemberName(), value));
+                }
+            }
+        }
+    }
+
+    /**
+     * Convenience method to return the keys of a row in the specified member indexes, for use when the cells of the row
+     * are about to be changed (see {@link #updateMemberIndexes(List, OdfTableRow, Object[])}).
+     * @param memberIndexes The member indexes
+     * @param row The row
+     * @return The keys, in the same order as the indexes
+     */
+    public static Object[] getMemberIndexKeys(List<MemberIndex> memberIndexes, OdfTableRow row)
+    {
+        Object[] keys = new Object[memberIndexes.size()];
+        for (int i=0;i<keys.length;i++)
+        {
+            keys[i] = memberIndexes.get(i).getKeyForRow(row);
+        }
+        return keys;
+    }
+
+    /**
+     * Convenience method to update the specified member indexes for a row whose cells have been changed.
+     * @param memberIndexes The member indexes
+     * @param row The row
+     * @param oldKeys The keys of the row before the change, in the same order as the indexes
+     */
+    public static void updateMemberIndexes(List<MemberIndex> memberIndexes, OdfTableRow row, Object[] oldKeys)
+    {
+        for (int i=0;i<oldKeys.length;i++)
+        {
+            memberIndexes.get(i).updateRow(row, oldKeys[i]);
+        }
+    }
+
+    /**
+     * Convenience method to return whether the specified row is a header row (having the "DN_Headers" style).
+     * @param row The row
+     * @return Whether it is a header row
+     */
+    public static boolean isHeaderRow(OdfTableRow row)
+    {
+        OdfStyle style = row.getDefaultCellStyle();
+        String styleName = (style != null ? style.getStyleNameAttribute() : null);
+        return styleName != null && styleName.equals("DN_Headers");
+    }
+
+    /**
+     * Convenience method to remove the rows at the specified positions from the worksheet. Removes the rows from the
+     * bottom up, coalescing adjacent positions into a single removal, so that each removal doesn't shift the rows still
+     * to be removed, and the number of removals (each of which has to shift all following rows) is kept to a minimum.
+     * @param worksheet The worksheet
+     * @param positions Positions of the rows to remove, in ascending order
+     */
+    public static void removeRows(OdfTable worksheet, int[] positions)
+    {
+        int end = positions.length - 1;
+        while (end >= 0)
+        {
+            int start = end;
+            while (start > 0 && positions[start-1] == positions[start] - 1)
+            {
+                start--;
+            }
+            worksheet.removeRowsByIndex(positions[start], end - start + 1);
+            end = start - 1;
+        }
+    }
+
     /**
      * Convenience method to find the row of an object in the provided sheet.
-     * For application-identity does a search for a row with the specified PK field values.
-     * For datastore-identity does a search for the row with the datastore column having the specified value
+     * For application-identity finds the row with the specified PK field values.
+     * For datastore-identity finds the row with the datastore column having the specified value.
+     * Both of these use the primary-key index of the worksheet (built on first use) where the value(s) can be indexed,
+     * otherwise do a search of the rows.
      * @param sm StateManager for the object
      * @param spreadsheetDoc The spreadsheet document
      * @param originalValue Whether to use the original value (when available) when using non-durable id.
@@ -126,25 +599,23 @@ public class ODFUtils
                 }
             }
 
+            SheetState sheetState = getSheetState(ec.getStoreManager(), spreadsheetDoc, sheetName);
+            Object indexKey = RowIndex.getKeyForValues(pkFieldValList);
+            if (sheetState != null && indexKey != null)
+            {
+                OdfTableRow row = getTableRowUsingPrimaryKeyIndex(sheetState, table, pkFieldColList, pkFieldValList, indexKey);
+                if (row != null || sheetState.getPrimaryKeyIndex() != null)
+                {
+                    return row;
+                }
+            }
+
             List<OdfTableRow> rows = table.getRowList();
             Iterator<OdfTableRow> rowIter = rows.iterator();
             while (rowIter.hasNext())
             {
                 OdfTableRow row = rowIter.next();
-                boolean isRow = true;
-
-                for (int i=0;i<pkFieldColList.size();i++)
-                {
-                    int index = pkFieldColList.get(i);
-                    Object val = pkFieldValList.get(i);
-                    OdfTableCell cellNode = row.getCellByIndex(index);
-                    if (!doesCellMatchValue(cellNode, val))
-                    {
-                        isRow = false;
-                        break;
-                    }
-                }
-                if (isRow)
+                if (doesRowMatchValues(row, pkFieldColList, pkFieldValList))
                 {
                     return row;
                 }
@@ -154,6 +625,22 @@ public class ODFUtils
         {
             Object key = IdentityUtils.getTargetKeyForDatastoreIdentity(sm.getInternalObjectId());
             int index = schemaTable.getSurrogateColumn(SurrogateColumnType.DATASTORE_ID).getPosition();
+
+            SheetState sheetState = getSheetState(ec.getStoreManager(), spreadsheetDoc, sheetName);
+            Object indexKey = RowIndex.getKeyForValue(key);
+            if (sheetState != null && indexKey != null)
+            {
+                List<Integer> idColList = new ArrayList<>(1);
+                idColList.add(index);
+                List idValList = new ArrayList(1);
+                idValList.add(key);
+                OdfTableRow row = getTableRowUsingPrimaryKeyIndex(sheetState, table, idColList, idValList, indexKey);
+                if (row != null || sheetState.getPrimaryKeyIndex() != null)
+                {
+                    return row;
+                }
+            }
+
             List<OdfTableRow> rows = table.getRowList();
             Iterator<OdfTableRow> rowIter = rows.iterator();
             while (rowIter.hasNext())
@@ -248,6 +735,73 @@ public class ODFUtils
         return null;
     }
 
+    /**
+     * Convenience method to find a row using the primary-key index of the worksheet, building the index if not yet built
+     * (or built for different columns). The row found is checked against the values, and if it doesn't match (the index
+     * being out of step with the worksheet) then the index is discarded, so the caller should fall back to a search.
+     * @param sheetState State of the worksheet
+     * @param table The worksheet
+     * @param colPositions Positions of the PK column(s)
+     * @param values The (datastore) values of the PK column(s)
+     * @param indexKey Key for the values in the index
+     * @return The row, or null if not present (or the index was discarded)
+     */
+    private static OdfTableRow getTableRowUsingPrimaryKeyIndex(SheetState sheetState, OdfTable table, List<Integer> colPositions, List values, Object indexKey)
+    {
+        int[] cols = new int[colPositions.size()];
+        for (int i=0;i<cols.length;i++)
+        {
+            cols[i] = colPositions.get(i);
+        }
+
+        RowIndex pkIndex = null;
+        synchronized (sheetState)
+        {
+            pkIndex = sheetState.getPrimaryKeyIndex();
+            if (pkIndex == null || !Arrays.equals(pkIndex.getColumnPositions(), cols))
+            {
+                long startTime = System.currentTimeMillis();
+                pkIndex = new RowIndex(cols);
+                pkIndex.build(table, getHeaderRowCount(sheetState, table));
+                sheetState.setPrimaryKeyIndex(pkIndex);
+                if (NucleusLogger.DATASTORE_RETRIEVE.isDebugEnabled())
+                {
+                    NucleusLogger.DATASTORE_RETRIEVE.debug("Built primary-key index for worksheet " + sheetState.getSheetName() + " with " + pkIndex.size() + " rows in " +
+                        (System.currentTimeMillis() - startTime) + " ms");
+                }
+            }
+        }
+
+        OdfTableRow row = pkIndex.getRow(indexKey);
+        if (row != null && !doesRowMatchValues(row, colPositions, values))
+        {
+            NucleusLogger.DATASTORE_RETRIEVE.debug("Primary-key index for worksheet " + sheetState.getSheetName() + " is out of step with the worksheet so discarding it");
+            sheetState.setPrimaryKeyIndex(null);
+            return null;
+        }
+        return row;
+    }
+
+    /**
+     * Convenience method to return if the cells of the supplied row in the specified columns match the passed values.
+     * @param row The row
+     * @param colPositions Positions of the columns
+     * @param values The values
+     * @return Whether they all match
+     */
+    private static boolean doesRowMatchValues(OdfTableRow row, List<Integer> colPositions, List values)
+    {
+        for (int i=0;i<colPositions.size();i++)
+        {
+            OdfTableCell cellNode = row.getCellByIndex(colPositions.get(i));
+            if (!doesCellMatchValue(cellNode, values.get(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Convenience method to return if the supplied cell matches the passed value.
      * Compares the type and value.
@@ -281,15 +835,15 @@ public class ODFUtils
         {
             return true;
         }
-        else if (value instanceof Date && isOfficeValueTypeConsistent(cell, OfficeValueTypeAttribute.Value.DATE) && 
-            cell.getDateValue().getTimeInMillis() == ((Date)value).getTime())
+        else if (value instanceof Date && isOfficeValueTypeConsistent(cell, OfficeValueTypeAttribute.Value.DATE))
         {
-            return true;
+            Object cellValue = DateTimeCodec.getValue(cell, Date.class);
+            return cellValue != null && ((Date)cellValue).getTime() == ((Date)value).getTime();
         }
-        else if (value instanceof Date && isOfficeValueTypeConsistent(cell, OfficeValueTypeAttribute.Value.TIME) && 
-            cell.getTimeValue().getTimeInMillis() == ((java.sql.Time)value).getTime())
+        else if (value instanceof java.sql.Time && isOfficeValueTypeConsistent(cell, OfficeValueTypeAttribute.Value.TIME))
         {
-            return true;
+            Object cellValue = DateTimeCodec.getValue(cell, java.sql.Time.class);
+            return cellValue != null && ((Date)cellValue).getTime() == ((Date)value).getTime();
         }
         // TODO Cater for other types
         return false;
@@ -354,19 +908,14 @@ public class ODFUtils
         final OdfTable table = spreadsheetDoc.getTableByName(sheetName);
         if (table != null)
         {
+            // Skip any header rows
             List<OdfTableRow> rows = table.getRowList();
-            Iterator<OdfTableRow> rowIter = rows.iterator();
+            Iterator<OdfTableRow> rowIter = rows.listIterator(Math.min(getHeaderRowCount(ec.getStoreManager(), spreadsheetDoc, table), rows.size()));
+            RowReader rowReader = new RowReader();
             while (rowIter.hasNext())
             {
                 final OdfTableRow row = rowIter.next();
-                final FetchFieldManager fm = new FetchFieldManager(ec, acmd, row, schemaTable);
-                OdfStyle style = row.getDefaultCellStyle();
-                String styleName = (style != null ? style.getStyleNameAttribute() : null);
-                if (styleName != null && styleName.equals("DN_Headers"))
-                {
-                    // Skip headers
-                    continue;
-                }
+                final FetchFieldManager fm = new FetchFieldManager(ec, acmd, row, schemaTable, rowReader);
 
                 // TODO Change acmd.getAllMemberPositions() to omit nonpersistent fields
                 Object pc = null;
@@ -451,14 +1000,111 @@ public class ODFUtils
         return results;
     }
 
-    public static boolean isOfficeValueTypeConsistent(OdfTableCell cell, OfficeValueTypeAttribute.Value type)
+    /**
+     * Convenience method to return whether the specified member type is a basic type whose value is held in a
+     * single cell, and that can be read using {@link #getBasicMemberValueForCell(Class, OdfTableCell)}.
+     * @param type The member type
+     * @return Whether it is a supported basic type
+     */
+    public static boolean isBasicMemberType(Class type)
     {
-        String cellTypeStr = cell.getValueType();
-        String typeStr = type.toString();
-        if (cellTypeStr != null && typeStr != null)
+        return type == boolean.class || type == byte.class || type == short.class || type == int.class || type == long.class ||
+            type == float.class || type == double.class ||
+            type == Boolean.class || type == Byte.class || type == Short.class || type == Integer.class || type == Long.class ||
+            type == Float.class || type == Double.class || type == String.class ||
+            type == Date.class || type == java.sql.Date.class || type == java.sql.Time.class || type == java.sql.Timestamp.class;
+    }
+
+    /**
+     * Convenience method to read the value of a member of a basic type (see {@link #isBasicMemberType(Class)}) directly
+     * from its cell, giving the same value as the FetchFieldManager would provide for the member, but without the need
+     * for a StateManager. Used by queries to evaluate rows before instantiating any object.
+     * @param type The member type
+     * @param cell The cell
+     * @return The value
+     */
+    public static Object getBasicMemberValueForCell(Class type, OdfTableCell cell)
+    {
+        if (type == String.class)
         {
-            return cellTypeStr.equals(typeStr);
+            return cell.getStringValue();
         }
-        return false;
+        else if (type == boolean.class || type == Boolean.class)
+        {
+            return cell.getBooleanValue();
+        }
+        else if (type == Date.class || type == java.sql.Date.class || type == java.sql.Timestamp.class || type == java.sql.Time.class)
+        {
+            return DateTimeCodec.getValue(cell, type);
+        }
+
+        // Numeric types, where primitives default to 0 and wrappers to null
+        Double value = cell.getDoubleValue();
+        if (value == null)
+        {
+            if (!type.isPrimitive())
+            {
+                return null;
+            }
+            value = Double.valueOf(0.0);
+        }
+        if (type == byte.class || type == Byte.class)
+        {
+            return Byte.valueOf(value.byteValue());
+        }
+        else if (type == short.class || type == Short.class)
+        {
+            return Short.valueOf(value.shortValue());
+        }
+        else if (type == int.class || type == Integer.class)
+        {
+            return Integer.valueOf(value.intValue());
+        }
+        else if (type == long.class || type == Long.class)
+        {
+            return Long.valueOf(value.longValue());
+        }
+        else if (type == float.class || type == Float.class)
+        {
+            return Float.valueOf(value.floatValue());
+        }
+        return value;
+    }
+
+    /**
+     * Convenience method to return the identity of the object stored in the specified row, without instantiating it.
+     * @param ec ExecutionContext
+     * @param cmd Metadata for the class stored in the worksheet
+     * @param table Table for the class
+     * @param row The row
+     * @param rowReader Reader of the cells, reused for the rows of a scan (or null to use a reader for just this row)
+     * @return The identity, or null if the class uses nondurable identity
+     */
+    public static Object getIdentityForRow(ExecutionContext ec, AbstractClassMetaData cmd, Table table, OdfTableRow row, RowReader rowReader)
+    {
+        if (cmd.getIdentityType() == IdentityType.APPLICATION)
+        {
+            return IdentityUtils.getApplicationIdentityForResultSetRow(ec, cmd, null, false, new FetchFieldManager(ec, cmd, row, table, rowReader));
+        }
+        else if (cmd.getIdentityType() == IdentityType.DATASTORE)
+        {
+            OdfTableCell idCell = row.getCellByIndex(table.getSurrogateColumn(SurrogateColumnType.DATASTORE_ID).getPosition());
+            Object idKey = null;
+            if (isOfficeValueTypeConsistent(idCell, OfficeValueTypeAttribute.Value.STRING))
+            {
+                idKey = idCell.getStringValue();
+            }
+            else
+            {
+                idKey = Long.valueOf(idCell.getDoubleValue().longValue());
+            }
+            return ec.getNucleusContext().getIdentityManager().getDatastoreId(cmd.getFullClassName(), idKey);
+        }
+        return null;
+    }
+
+    public static boolean isOfficeValueTypeConsistent(OdfTableCell cell, OfficeValueTypeAttribute.Value type)
+    {
+        return type != null && OfficeValueTypeDecoder.getValueType(cell) == type;
     }
 }
\ No newline at end of file
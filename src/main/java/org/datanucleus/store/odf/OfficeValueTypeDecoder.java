@@ -0,0 +1,87 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.store.odf;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.odftoolkit.odfdom.doc.table.OdfTableCell;
+import org.odftoolkit.odfdom.dom.attribute.office.OfficeValueTypeAttribute;
+
+/**
+ * Decoder for the "office:value-type" attribute of a cell, mapping the attribute value to its
+ * {@link OfficeValueTypeAttribute.Value} so that callers can switch on the type rather than comparing strings.
+ * Attribute values written by this plugin are the (same) strings of the enum constants, so are matched by identity;
+ * any other strings (e.g. as parsed from a document) are matched via a lookup keyed by the string.
+ */
+public class OfficeValueTypeDecoder
+{
+    /** The value types, in the order of {@link #TYPE_STRINGS}. */
+    private static final OfficeValueTypeAttribute.Value[] TYPES = OfficeValueTypeAttribute.Value.values();
+
+    /** String of each value type, as returned by the enum (and written into cells). */
+    private static final String[] TYPE_STRINGS = new String[TYPES.length];
+
+    /** Lookup of value type, keyed by its string. */
+    private static final Map<String, OfficeValueTypeAttribute.Value> TYPES_BY_STRING = new HashMap<>();
+
+    static
+    {
+        for (int i=0;i<TYPES.length;i++)
+        {
+            TYPE_STRINGS[i] = TYPES[i].toString();
+            TYPES_BY_STRING.put(TYPE_STRINGS[i], TYPES[i]);
+        }
+    }
+
+    private OfficeValueTypeDecoder()
+    {
+    }
+
+    /**
+     * Method to decode the value type attribute string.
+     * @param typeStr The attribute value
+     * @return The value type, or null if not set or not a known type
+     */
+    public static OfficeValueTypeAttribute.Value decode(String typeStr)
+    {
+        if (typeStr == null)
+        {
+            return null;
+        }
+
+        for (int i=0;i<TYPE_STRINGS.length;i++)
+        {
+            if (TYPE_STRINGS[i] == typeStr)
+            {
+                return TYPES[i];
+            }
+        }
+        return TYPES_BY_STRING.get(typeStr);
+    }
+
+    /**
+     * Method to return the value type of the specified cell.
+     * @param cell The cell
+     * @return The value type, or null if not set or not a known type
+     */
+    public static OfficeValueTypeAttribute.Value getValueType(OdfTableCell cell)
+    {
+        return decode(cell.getValueType());
+    }
+}
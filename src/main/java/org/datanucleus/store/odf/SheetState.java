@@ -0,0 +1,145 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.store.odf;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.datanucleus.store.odf.index.MemberIndex;
+import org.datanucleus.store.odf.index.RowIndex;
+
+/**
+ * In-memory state held for a worksheet of a cached document, such as the indexes of its rows.
+ * This state is discarded whenever the document is (re)loaded, or the worksheet is created/deleted.
+ * Indexes can be restored from an {@link IndexFile} when the worksheet is first used rather than being built.
+ */
+public class SheetState
+{
+    /** Source of the modification stamps of all sheet states. */
+    private static final AtomicLong STAMPS = new AtomicLong();
+
+    /** Name of the worksheet. */
+    final String sheetName;
+
+    /** Index of the rows keyed by the identity (PK or datastore-id column) of the objects, built when first needed. */
+    RowIndex primaryKeyIndex;
+
+    /** Indexes of the rows keyed by the values of indexed/unique members, built when first needed. */
+    List<MemberIndex> memberIndexes;
+
+    /** Whether the member indexes were restored from an index file, so are yet to be checked against the metadata. */
+    boolean memberIndexesRestored = false;
+
+    /** Number of header rows at the top of the worksheet (before the data rows), or -1 if not yet determined. */
+    int headerRowCount = -1;
+
+    /** Number of data rows of the worksheet, maintained as rows are added/removed, or -1 if not yet determined. */
+    int dataRowCount = -1;
+
+    /**
+     * Stamp of the last modification of the worksheet (or of the creation of this state), unique across all sheet states,
+     * so that a worksheet whose stamp is unchanged is known to be unchanged (and not reloaded).
+     */
+    long modificationStamp = STAMPS.incrementAndGet();
+
+    SheetState(String sheetName)
+    {
+        this.sheetName = sheetName;
+    }
+
+    public String getSheetName()
+    {
+        return sheetName;
+    }
+
+    public synchronized RowIndex getPrimaryKeyIndex()
+    {
+        return primaryKeyIndex;
+    }
+
+    public synchronized void setPrimaryKeyIndex(RowIndex index)
+    {
+        this.primaryKeyIndex = index;
+    }
+
+    public synchronized List<MemberIndex> getMemberIndexes()
+    {
+        return memberIndexes;
+    }
+
+    public synchronized void setMemberIndexes(List<MemberIndex> indexes)
+    {
+        this.memberIndexes = indexes;
+        this.memberIndexesRestored = false;
+    }
+
+    public synchronized boolean isMemberIndexesRestored()
+    {
+        return memberIndexesRestored;
+    }
+
+    public synchronized void setMemberIndexesRestored(boolean restored)
+    {
+        this.memberIndexesRestored = restored;
+    }
+
+    public synchronized int getHeaderRowCount()
+    {
+        return headerRowCount;
+    }
+
+    public synchronized void setHeaderRowCount(int count)
+    {
+        this.headerRowCount = count;
+    }
+
+    public synchronized int getDataRowCount()
+    {
+        return dataRowCount;
+    }
+
+    public synchronized void setDataRowCount(int count)
+    {
+        this.dataRowCount = count;
+    }
+
+    public synchronized long getModificationStamp()
+    {
+        return modificationStamp;
+    }
+
+    /**
+     * Method to register that the worksheet has been modified, giving it a new modification stamp.
+     */
+    public synchronized void markModified()
+    {
+        modificationStamp = STAMPS.incrementAndGet();
+    }
+
+    /**
+     * Method to adjust the number of data rows (when known) for rows added to/removed from the worksheet.
+     * @param delta Number of rows added (or negative for rows removed)
+     */
+    public synchronized void adjustDataRowCount(int delta)
+    {
+        if (dataRowCount >= 0)
+        {
+            dataRowCount += delta;
+        }
+    }
+}
@@ -29,7 +29,6 @@ import org.datanucleus.metadata.EmbeddedMetaData;
 import org.datanucleus.metadata.MetaDataUtils;
 import org.datanucleus.metadata.RelationType;
 import org.datanucleus.state.DNStateManager;
-import org.datanucleus.store.fieldmanager.FieldManager;
 import org.datanucleus.store.schema.table.MemberColumnMapping;
 import org.datanucleus.store.schema.table.Table;
 import org.datanucleus.util.NucleusLogger;
@@ -62,6 +61,12 @@ public class FetchEmbeddedFieldManager extends FetchFieldManager
         return table.getMemberColumnMappingForEmbeddedMember(embMmds);
     }
 
+    @Override
+    protected int getColumnPosition(int fieldNumber)
+    {
+        return getColumnMapping(fieldNumber).getColumn(0).getPosition();
+    }
+
     @Override
     public Object fetchObjectField(int fieldNumber)
     {
@@ -85,7 +90,8 @@ public class FetchEmbeddedFieldManager extends FetchFieldManager
                 embMmds.add(mmd);
                 AbstractClassMetaData embCmd = ec.getMetaDataManager().getMetaDataForClass(mmd.getType(), clr);
                 DNStateManager embSM = ec.getNucleusContext().getStateManagerFactory().newForEmbedded(ec, embCmd, sm, fieldNumber, PersistableObjectType.EMBEDDED_PC);
-                FieldManager fetchEmbFM = new FetchEmbeddedFieldManager(embSM, row, embMmds, table);
+                FetchEmbeddedFieldManager fetchEmbFM = new FetchEmbeddedFieldManager(embSM, row, embMmds, table);
+                fetchEmbFM.rowReader = getRowReader();
                 embSM.replaceFields(embCmd.getAllMemberPositions(), fetchEmbFM);
                 return embSM.getObject();
             }
@@ -20,10 +20,8 @@ package org.datanucleus.store.odf.fieldmanager;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Base64;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.Currency;
-import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -43,6 +41,10 @@ import org.datanucleus.metadata.JdbcType;
 import org.datanucleus.metadata.MetaDataUtils;
 import org.datanucleus.metadata.RelationType;
 import org.datanucleus.state.DNStateManager;
+import org.datanucleus.store.odf.ColumnLayout;
+import org.datanucleus.store.odf.DateTimeCodec;
+import org.datanucleus.store.odf.ODFStoreManager;
+import org.datanucleus.store.odf.OfficeValueTypeDecoder;
 import org.datanucleus.store.schema.table.Column;
 import org.datanucleus.store.schema.table.MemberColumnMapping;
 import org.datanucleus.store.schema.table.Table;
@@ -50,7 +52,6 @@ import org.datanucleus.store.types.converters.EnumConversionHelper;
 import org.datanucleus.store.types.converters.MultiColumnConverter;
 import org.datanucleus.store.types.converters.TypeConverter;
 import org.datanucleus.store.fieldmanager.AbstractFetchFieldManager;
-import org.datanucleus.store.fieldmanager.FieldManager;
 import org.datanucleus.store.query.QueryUtils;
 import org.datanucleus.store.types.SCOUtils;
 import org.datanucleus.util.NucleusLogger;
@@ -67,6 +68,15 @@ public class FetchFieldManager extends AbstractFetchFieldManager
     protected final Table table;
     protected final OdfTableRow row;
 
+    /** Layout of the columns of the table for the class (when not embedded), obtained when first needed. */
+    protected ColumnLayout layout;
+
+    /**
+     * Reader of the cells of the row, shared with any embedded field managers for the same row, and possibly provided
+     * by a scan of many rows (so reused for each of them).
+     */
+    protected RowReader rowReader;
+
     public FetchFieldManager(DNStateManager sm, OdfTableRow row, Table table)
     {
         super(sm);
@@ -81,9 +91,65 @@ public class FetchFieldManager extends AbstractFetchFieldManager
         this.row = row;
     }
 
+    /**
+     * Constructor for a field manager using the provided reader to read the cells of the row, for use when scanning
+     * many rows, so that the buffers of the reader are reused rather than allocated for every row.
+     * @param ec execution context
+     * @param cmd Metadata for the class
+     * @param row The row
+     * @param table Table for the class
+     * @param rowReader Reader of the cells, reused for the rows of the scan
+     */
+    public FetchFieldManager(ExecutionContext ec, AbstractClassMetaData cmd, OdfTableRow row, Table table, RowReader rowReader)
+    {
+        this(ec, cmd, row, table);
+        this.rowReader = rowReader;
+    }
+
+    /**
+     * Accessor for the reader of the cells of the row, reading the row when first needed (or when the reader has since
+     * been used for another row).
+     * @return The row reader
+     */
+    protected RowReader getRowReader()
+    {
+        if (rowReader == null)
+        {
+            rowReader = new RowReader();
+        }
+        if (rowReader.getRow() != row)
+        {
+            rowReader.read(row);
+        }
+        return rowReader;
+    }
+
+    /**
+     * Accessor for the layout of the columns of the table for the class, obtained when first needed.
+     * @return The column layout
+     */
+    protected ColumnLayout getColumnLayout()
+    {
+        if (layout == null)
+        {
+            layout = ((ODFStoreManager)ec.getStoreManager()).getColumnLayout(cmd, table, ec.getClassLoaderResolver());
+        }
+        return layout;
+    }
+
     protected MemberColumnMapping getColumnMapping(int fieldNumber)
     {
-        return table.getMemberColumnMappingForMember(cmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber));
+        return getColumnLayout().getColumnMapping(fieldNumber);
+    }
+
+    /**
+     * Accessor for the position of the (first) column of the specified member.
+     * @param fieldNumber Absolute field number of the member
+     * @return The column position
+     */
+    protected int getColumnPosition(int fieldNumber)
+    {
+        return getColumnLayout().getColumnPosition(fieldNumber);
     }
 
     /* (non-Javadoc)
@@ -92,8 +158,7 @@ public class FetchFieldManager extends AbstractFetchFieldManager
     @Override
     public boolean fetchBooleanField(int fieldNumber)
     {
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
-        return cell.getBooleanValue();
+        return getRowReader().getBooleanValue(getColumnPosition(fieldNumber));
     }
 
     /* (non-Javadoc)
@@ -102,13 +167,12 @@ public class FetchFieldManager extends AbstractFetchFieldManager
     @Override
     public byte fetchByteField(int fieldNumber)
     {
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
-        Double val = cell.getDoubleValue();
+        Double val = getRowReader().getDoubleValue(getColumnPosition(fieldNumber));
         if (val == null)
         {
             return 0;
         }
-        return cell.getDoubleValue().byteValue();
+        return val.byteValue();
     }
 
     /* (non-Javadoc)
@@ -117,8 +181,7 @@ public class FetchFieldManager extends AbstractFetchFieldManager
     @Override
     public char fetchCharField(int fieldNumber)
     {
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
-        return cell.getStringValue().charAt(0);
+        return getRowReader().getStringValue(getColumnPosition(fieldNumber)).charAt(0);
     }
 
     /* (non-Javadoc)
@@ -127,8 +190,7 @@ public class FetchFieldManager extends AbstractFetchFieldManager
     @Override
     public double fetchDoubleField(int fieldNumber)
     {
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
-        Double val = cell.getDoubleValue();
+        Double val = getRowReader().getDoubleValue(getColumnPosition(fieldNumber));
         if (val == null)
         {
             return 0.0;
@@ -142,8 +204,7 @@ public class FetchFieldManager extends AbstractFetchFieldManager
     @Override
     public float fetchFloatField(int fieldNumber)
     {
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
-        Double val = cell.getDoubleValue();
+        Double val = getRowReader().getDoubleValue(getColumnPosition(fieldNumber));
         if (val == null)
         {
             return 0.0f;
@@ -157,8 +218,7 @@ public class FetchFieldManager extends AbstractFetchFieldManager
     @Override
     public int fetchIntField(int fieldNumber)
     {
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
-        Double val = cell.getDoubleValue();
+        Double val = getRowReader().getDoubleValue(getColumnPosition(fieldNumber));
         if (val == null)
         {
             return 0;
@@ -172,8 +232,7 @@ public class FetchFieldManager extends AbstractFetchFieldManager
     @Override
     public long fetchLongField(int fieldNumber)
     {
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
-        Double val = cell.getDoubleValue();
+        Double val = getRowReader().getDoubleValue(getColumnPosition(fieldNumber));
         if (val == null)
         {
             return 0;
@@ -187,8 +246,7 @@ public class FetchFieldManager extends AbstractFetchFieldManager
     @Override
     public short fetchShortField(int fieldNumber)
     {
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
-        Double val = cell.getDoubleValue();
+        Double val = getRowReader().getDoubleValue(getColumnPosition(fieldNumber));
         if (val == null)
         {
             return 0;
@@ -202,8 +260,7 @@ public class FetchFieldManager extends AbstractFetchFieldManager
     @Override
     public String fetchStringField(int fieldNumber)
     {
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
-        return cell.getStringValue();
+        return getRowReader().getStringValue(getColumnPosition(fieldNumber));
     }
 
     /* (non-Javadoc)
@@ -214,10 +271,10 @@ public class FetchFieldManager extends AbstractFetchFieldManager
     {
         ClassLoaderResolver clr = ec.getClassLoaderResolver();
         AbstractMemberMetaData mmd = cmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber);
-        RelationType relationType = mmd.getRelationType(clr);
+        RelationType relationType = getColumnLayout().getRelationType(fieldNumber);
 
         // Special cases
-        if (relationType != RelationType.NONE && MetaDataUtils.getInstance().isMemberEmbedded(ec.getMetaDataManager(), clr, mmd, relationType, null))
+        if (getColumnLayout().isEmbedded(fieldNumber))
         {
             // Embedded field
             if (RelationType.isRelationSingleValued(relationType))
@@ -227,7 +284,8 @@ public class FetchFieldManager extends AbstractFetchFieldManager
                 embMmds.add(mmd);
                 AbstractClassMetaData embCmd = ec.getMetaDataManager().getMetaDataForClass(mmd.getType(), clr);
                 DNStateManager embSM = ec.getNucleusContext().getStateManagerFactory().newForEmbedded(ec, embCmd, sm, fieldNumber, PersistableObjectType.EMBEDDED_PC);
-                FieldManager fetchEmbFM = new FetchEmbeddedFieldManager(embSM, row, embMmds, table);
+                FetchEmbeddedFieldManager fetchEmbFM = new FetchEmbeddedFieldManager(embSM, row, embMmds, table);
+                fetchEmbFM.rowReader = getRowReader();
                 embSM.replaceFields(embCmd.getAllMemberPositions(), fetchEmbFM);
                 return embSM.getObject();
             }
@@ -256,6 +314,18 @@ public class FetchFieldManager extends AbstractFetchFieldManager
 
         if (relationType == RelationType.NONE)
         {
+            if (DateTimeCodec.isStoredNatively(ec.getTypeManager(), mapping, mmd.getType()))
+            {
+                // java.time member stored as a date/time cell
+                OdfTableCell cell = getRowReader().getCell(mapping.getColumn(0).getPosition());
+                OfficeValueTypeAttribute.Value cellValueType = OfficeValueTypeDecoder.getValueType(cell);
+                if (cellValueType == OfficeValueTypeAttribute.Value.DATE || cellValueType == OfficeValueTypeAttribute.Value.TIME)
+                {
+                    return DateTimeCodec.getValue(cell, mmd.getType());
+                }
+                // Otherwise stored via the converter for the type (e.g. as a String), so fall through
+            }
+
             if (mapping.getTypeConverter() != null)
             {
                 TypeConverter conv = mapping.getTypeConverter();
@@ -292,29 +362,30 @@ public class FetchFieldManager extends AbstractFetchFieldManager
 
                     for (int i=0;i<mapping.getNumberOfColumns();i++)
                     {
-                        OdfTableCell cell = row.getCellByIndex(mapping.getColumn(i).getPosition());
-                        String cellValueType = cell.getValueType();
+                        OdfTableCell cell = getRowReader().getCell(mapping.getColumn(i).getPosition());
+                        OfficeValueTypeAttribute.Value cellValueType = OfficeValueTypeDecoder.getValueType(cell);
                         // TODO Cater for other types (in the datastore we only have these types, but they may need updating as per getMemberValueFromCell
                         Object cellValue = null;
-                        if (cellValueType.equals(OfficeValueTypeAttribute.Value.BOOLEAN.toString()))
+                        if (cellValueType != null)
                         {
-                            cellValue = cell.getBooleanValue();
-                        }
-                        else if (cellValueType.equals(OfficeValueTypeAttribute.Value.STRING.toString()))
-                        {
-                            cellValue = cell.getStringValue();
-                        }
-                        else if (cellValueType.equals(OfficeValueTypeAttribute.Value.FLOAT.toString()))
-                        {
-                            cellValue = cell.getDoubleValue();
-                        }
-                        else if (cellValueType.equals(OfficeValueTypeAttribute.Value.DATE.toString()))
-                        {
-                            cellValue = cell.getDateValue();
-                        }
-                        else if (cellValueType.equals(OfficeValueTypeAttribute.Value.TIME.toString()))
-                        {
-                            cellValue = cell.getTimeValue();
+                            switch (cellValueType)
+                            {
+                                case BOOLEAN:
+                                    cellValue = cell.getBooleanValue();
+                                    break;
+                                case STRING:
+                                    cellValue = cell.getStringValue();
+                                    break;
+                                case FLOAT:
+                                    cellValue = cell.getDoubleValue();
+                                    break;
+                                case DATE:
+                                case TIME:
+                                    cellValue = DateTimeCodec.getValue(cell, colTypes[i]);
+                                    break;
+                                default:
+                                    break;
+                            }
                         }
 
                         if (cellValue == null)
@@ -353,36 +424,38 @@ public class FetchFieldManager extends AbstractFetchFieldManager
                 }
 
                 Object value = null;
-                OdfTableCell cell = row.getCellByIndex(mapping.getColumn(0).getPosition());
-                String cellValueType = cell.getValueType();
-                if (cellValueType.equals(OfficeValueTypeAttribute.Value.BOOLEAN.toString()))
-                {
-                    value = conv.toMemberType(cell.getBooleanValue());
-                }
-                else if (cellValueType.equals(OfficeValueTypeAttribute.Value.STRING.toString()))
+                OdfTableCell cell = getRowReader().getCell(mapping.getColumn(0).getPosition());
+                OfficeValueTypeAttribute.Value cellValueType = OfficeValueTypeDecoder.getValueType(cell);
+                if (cellValueType != null)
                 {
-                    String cellValue = cell.getStringValue();
-                    if (!StringUtils.isWhitespace(cellValue))
+                    switch (cellValueType)
                     {
-                        value = conv.toMemberType(cellValue);
+                        case BOOLEAN:
+                            value = conv.toMemberType(cell.getBooleanValue());
+                            break;
+                        case STRING:
+                            String cellValue = cell.getStringValue();
+                            if (!StringUtils.isWhitespace(cellValue))
+                            {
+                                value = conv.toMemberType(cellValue);
+                            }
+                            break;
+                        case FLOAT:
+                            value = conv.toMemberType(cell.getDoubleValue());
+                            break;
+                        case DATE:
+                        case TIME:
+                            Object datastoreValue = DateTimeCodec.getValue(cell, ec.getTypeManager().getDatastoreTypeForTypeConverter(conv, mmd.getType()));
+                            value = datastoreValue != null ? conv.toMemberType(datastoreValue) : null;
+                            break;
+                        default:
+                            break;
                     }
                 }
-                else if (cellValueType.equals(OfficeValueTypeAttribute.Value.FLOAT.toString()))
-                {
-                    value = conv.toMemberType(cell.getDoubleValue());
-                }
-                else if (cellValueType.equals(OfficeValueTypeAttribute.Value.DATE.toString()))
-                {
-                    value = conv.toMemberType(cell.getDateValue());
-                }
-                else if (cellValueType.equals(OfficeValueTypeAttribute.Value.TIME.toString()))
-                {
-                    value = conv.toMemberType(cell.getTimeValue());
-                }
                 return value;
             }
 
-            OdfTableCell cell = row.getCellByIndex(mapping.getColumn(0).getPosition());
+            OdfTableCell cell = getRowReader().getCell(mapping.getColumn(0).getPosition());
             Class type = optional ? clr.classForName(mmd.getCollection().getElementType()) : mmd.getType();
             Object value = getMemberValueFromCell(mapping, type, 0, cell);
             value = optional ? (value != null ? Optional.of(value) : Optional.empty()) : value;
@@ -392,7 +465,7 @@ public class FetchFieldManager extends AbstractFetchFieldManager
         else if (RelationType.isRelationSingleValued(relationType))
         {
             // Persistable object - retrieve the string form of the identity, and find the object
-            OdfTableCell cell = row.getCellByIndex(mapping.getColumn(0).getPosition());
+            OdfTableCell cell = getRowReader().getCell(mapping.getColumn(0).getPosition());
             String idStr = cell.getStringValue();
             if (idStr == null)
             {
@@ -431,7 +504,7 @@ public class FetchFieldManager extends AbstractFetchFieldManager
         else if (RelationType.isRelationMultiValued(relationType))
         {
             // Collection/Map/Array
-            OdfTableCell cell = row.getCellByIndex(mapping.getColumn(0).getPosition());
+            OdfTableCell cell = getRowReader().getCell(mapping.getColumn(0).getPosition());
             String cellStr = cell.getStringValue();
             if (cellStr == null || StringUtils.isWhitespace(cellStr))
             {
@@ -787,46 +860,9 @@ public class FetchFieldManager extends AbstractFetchFieldManager
             }
             value = cell.getStringValue();
         }
-        else if (type == Calendar.class)
-        {
-            if (cell.getDateValue() == null)
-            {
-                return null;
-            }
-            value = cell.getDateValue();
-        }
-        else if (java.sql.Date.class.isAssignableFrom(type))
+        else if (DateTimeCodec.isTemporalType(type))
         {
-            if (cell.getDateValue() == null)
-            {
-                return null;
-            }
-            value = new java.sql.Date(cell.getDateValue().getTime().getTime());
-        }
-        else if (java.sql.Time.class.isAssignableFrom(type))
-        {
-            if (cell.getTimeValue() == null)
-            {
-                return null;
-            }
-            value = new java.sql.Time(cell.getTimeValue().getTime().getTime());
-        }
-        else if (java.sql.Timestamp.class.isAssignableFrom(type))
-        {
-            if (cell.getDateValue() == null)
-            {
-                return null;
-            }
-            value = new java.sql.Timestamp(cell.getDateValue().getTime().getTime());
-        }
-        else if (Date.class.isAssignableFrom(type))
-        {
-            if (cell.getDateValue() == null)
-            {
-                return null;
-            }
-            Calendar cal = cell.getDateValue();
-            value = cal.getTime();
+            value = DateTimeCodec.getValue(cell, type);
         }
         else if (type == Currency.class)
         {
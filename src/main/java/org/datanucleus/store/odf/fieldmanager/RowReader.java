@@ -0,0 +1,221 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.store.odf.fieldmanager;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+
+import org.datanucleus.store.odf.DateTimeCodec;
+import org.odftoolkit.odfdom.doc.table.OdfTableCell;
+import org.odftoolkit.odfdom.doc.table.OdfTableRow;
+import org.odftoolkit.odfdom.dom.element.table.TableTableCellElementBase;
+import org.w3c.dom.Node;
+
+/**
+ * Reader for the cells of a row, walking the "table:table-row" element once and recording the cell for each column
+ * (expanding "table:number-columns-repeated"), rather than using {@link OdfTableRow#getCellByIndex(int)} for each
+ * column, which walks the cells of the row (and splits repeated cells) on each call.
+ * The value of a column is decoded from its cell when first requested, and held in a buffer (doubles for numeric
+ * values, objects for others, with a type tag per column), so the reader can be reused for further rows.
+ * <p>
+ * Where a column is beyond the cells present in the row, the cell is obtained from the row as before.
+ */
+public class RowReader
+{
+    /** Type tag for a column whose value hasn't been decoded. */
+    private static final byte UNDECODED = 0;
+
+    /** Type tag for a column with a numeric value (in the doubles buffer). */
+    private static final byte DOUBLE = 1;
+
+    /** Type tag for a column with no numeric value (null). */
+    private static final byte NO_DOUBLE = 2;
+
+    /** The row being read. */
+    OdfTableRow row;
+
+    /** Cell elements of the row, by column position. */
+    TableTableCellElementBase[] cellElements = new TableTableCellElementBase[16];
+
+    /** Number of columns with a cell element in the row. */
+    int numberOfColumns = 0;
+
+    /** Cells of the row, by column position, obtained when first needed. */
+    OdfTableCell[] cells = new OdfTableCell[16];
+
+    /** Type tag of the decoded numeric value of each column. */
+    byte[] doubleTypes = new byte[16];
+
+    /** Decoded numeric value of each column. */
+    double[] doubles = new double[16];
+
+    /** Decoded string value of each column (when requested). */
+    Object[] strings = new Object[16];
+
+    /**
+     * Accessor for the row last read.
+     * @return The row, or null if no row has been read
+     */
+    public OdfTableRow getRow()
+    {
+        return row;
+    }
+
+    /**
+     * Method to read the cells of the specified row, replacing any row previously read.
+     * @param row The row
+     */
+    public void read(OdfTableRow row)
+    {
+        this.row = row;
+        int col = 0;
+        for (Node node = row.getOdfElement().getFirstChild(); node != null; node = node.getNextSibling())
+        {
+            if (node instanceof TableTableCellElementBase)
+            {
+                TableTableCellElementBase cellElement = (TableTableCellElementBase)node;
+                Integer repeated = cellElement.getTableNumberColumnsRepeatedAttribute();
+                int num = (repeated != null && repeated.intValue() > 1) ? repeated.intValue() : 1;
+                ensureCapacity(col + num);
+                for (int i=0;i<num;i++)
+                {
+                    cellElements[col++] = cellElement;
+                }
+            }
+        }
+        numberOfColumns = col;
+
+        Arrays.fill(cells, 0, cells.length, null);
+        Arrays.fill(doubleTypes, 0, doubleTypes.length, UNDECODED);
+        Arrays.fill(strings, 0, strings.length, null);
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > cellElements.length)
+        {
+            int newCapacity = Math.max(capacity, cellElements.length * 2);
+            cellElements = Arrays.copyOf(cellElements, newCapacity);
+            cells = Arrays.copyOf(cells, newCapacity);
+            doubleTypes = Arrays.copyOf(doubleTypes, newCapacity);
+            doubles = Arrays.copyOf(doubles, newCapacity);
+            strings = Arrays.copyOf(strings, newCapacity);
+        }
+    }
+
+    /**
+     * Accessor for the cell of the specified column.
+     * @param position Position of the column
+     * @return The cell
+     */
+    public OdfTableCell getCell(int position)
+    {
+        if (position >= numberOfColumns)
+        {
+            // Not present in the row, so leave to ODFDOM to provide it
+            return row.getCellByIndex(position);
+        }
+
+        OdfTableCell cell = cells[position];
+        if (cell == null)
+        {
+            cell = OdfTableCell.getInstance(cellElements[position]);
+            cells[position] = cell;
+        }
+        return cell;
+    }
+
+    /**
+     * Accessor for the numeric value of the cell of the specified column (see {@link OdfTableCell#getDoubleValue()}).
+     * @param position Position of the column
+     * @return The value, or null if the cell has no numeric value
+     */
+    public Double getDoubleValue(int position)
+    {
+        if (position >= numberOfColumns)
+        {
+            return getCell(position).getDoubleValue();
+        }
+
+        if (doubleTypes[position] == UNDECODED)
+        {
+            Double value = getCell(position).getDoubleValue();
+            if (value != null)
+            {
+                doubles[position] = value.doubleValue();
+                doubleTypes[position] = DOUBLE;
+            }
+            else
+            {
+                doubleTypes[position] = NO_DOUBLE;
+            }
+        }
+        return doubleTypes[position] == DOUBLE ? Double.valueOf(doubles[position]) : null;
+    }
+
+    /**
+     * Accessor for the string value of the cell of the specified column (see {@link OdfTableCell#getStringValue()}).
+     * @param position Position of the column
+     * @return The value
+     */
+    public String getStringValue(int position)
+    {
+        if (position >= numberOfColumns)
+        {
+            return getCell(position).getStringValue();
+        }
+
+        if (strings[position] == null)
+        {
+            String value = getCell(position).getStringValue();
+            strings[position] = (value != null ? value : Void.TYPE);
+        }
+        return strings[position] != Void.TYPE ? (String)strings[position] : null;
+    }
+
+    /**
+     * Accessor for the boolean value of the cell of the specified column.
+     * @param position Position of the column
+     * @return The value
+     */
+    public Boolean getBooleanValue(int position)
+    {
+        return getCell(position).getBooleanValue();
+    }
+
+    /**
+     * Accessor for the date value of the cell of the specified column (see {@link DateTimeCodec#getDateTime(OdfTableCell)}).
+     * @param position Position of the column
+     * @return The value
+     */
+    public LocalDateTime getDateValue(int position)
+    {
+        return DateTimeCodec.getDateTime(getCell(position));
+    }
+
+    /**
+     * Accessor for the time value of the cell of the specified column (see {@link DateTimeCodec#getTime(OdfTableCell)}).
+     * @param position Position of the column
+     * @return The value
+     */
+    public LocalTime getTimeValue(int position)
+    {
+        return DateTimeCodec.getTime(getCell(position));
+    }
+}
@@ -0,0 +1,123 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.store.odf.fieldmanager;
+
+import java.util.Arrays;
+
+import org.odftoolkit.odfdom.doc.table.OdfTableCell;
+import org.odftoolkit.odfdom.doc.table.OdfTableRow;
+import org.odftoolkit.odfdom.dom.OdfDocumentNamespace;
+import org.odftoolkit.odfdom.dom.element.table.TableTableCellElementBase;
+import org.w3c.dom.Node;
+
+/**
+ * Writer for the cells of a newly inserted row. Walks the "table:table-row" element once when constructed, splitting
+ * any "table:number-columns-repeated" span into one cell element per column, and records the cell element for each
+ * column. The field managers then write each column directly to its cell, rather than using
+ * {@link OdfTableRow#getCellByIndex(int)} for each column, which walks the cells of the row (and splits one repeated
+ * span) on each call.
+ * <p>
+ * Where a column is beyond the cells present in the row, the cell is obtained from the row as before.
+ */
+public class RowWriter
+{
+    /** The row being written. */
+    final OdfTableRow row;
+
+    /** Cell elements of the row, by column position. */
+    TableTableCellElementBase[] cellElements = new TableTableCellElementBase[16];
+
+    /** Number of columns with a cell element in the row. */
+    int numberOfColumns = 0;
+
+    /** Cells of the row, by column position, obtained when first needed. */
+    OdfTableCell[] cells;
+
+    /**
+     * Constructor, preparing the cells of the specified (newly appended) row for writing.
+     * @param row The row
+     */
+    public RowWriter(OdfTableRow row)
+    {
+        this.row = row;
+
+        int col = 0;
+        Node node = row.getOdfElement().getFirstChild();
+        while (node != null)
+        {
+            Node nextNode = node.getNextSibling();
+            if (node instanceof TableTableCellElementBase)
+            {
+                TableTableCellElementBase cellElement = (TableTableCellElementBase)node;
+                Integer repeated = cellElement.getTableNumberColumnsRepeatedAttribute();
+                int num = (repeated != null && repeated.intValue() > 1) ? repeated.intValue() : 1;
+                if (num > 1)
+                {
+                    // Split the span into a cell element per column, each a copy of the original
+                    cellElement.removeAttributeNS(OdfDocumentNamespace.TABLE.getUri(), "number-columns-repeated");
+                }
+                ensureCapacity(col + num);
+                cellElements[col++] = cellElement;
+                for (int i=1;i<num;i++)
+                {
+                    TableTableCellElementBase copyElement = (TableTableCellElementBase)cellElement.cloneNode(true);
+                    row.getOdfElement().insertBefore(copyElement, nextNode);
+                    cellElements[col++] = copyElement;
+                }
+            }
+            node = nextNode;
+        }
+        numberOfColumns = col;
+        cells = new OdfTableCell[cellElements.length];
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > cellElements.length)
+        {
+            cellElements = Arrays.copyOf(cellElements, Math.max(capacity, cellElements.length * 2));
+        }
+    }
+
+    public OdfTableRow getRow()
+    {
+        return row;
+    }
+
+    /**
+     * Accessor for the cell of the specified column.
+     * @param position Position of the column
+     * @return The cell
+     */
+    public OdfTableCell getCell(int position)
+    {
+        if (position >= numberOfColumns)
+        {
+            // Not present in the row, so leave to ODFDOM to provide it
+            return row.getCellByIndex(position);
+        }
+
+        OdfTableCell cell = cells[position];
+        if (cell == null)
+        {
+            cell = OdfTableCell.getInstance(cellElements[position]);
+            cells[position] = cell;
+        }
+        return cell;
+    }
+}
@@ -61,6 +61,12 @@ public class StoreEmbeddedFieldManager extends StoreFieldManager
         return table.getMemberColumnMappingForEmbeddedMember(embMmds);
     }
 
+    @Override
+    protected int getColumnPosition(int fieldNumber)
+    {
+        return getColumnMapping(fieldNumber).getColumn(0).getPosition();
+    }
+
     public void storeObjectField(int fieldNumber, Object value)
     {
         AbstractMemberMetaData mmd = cmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber);
@@ -110,7 +116,9 @@ public class StoreEmbeddedFieldManager extends StoreFieldManager
 
                     List<AbstractMemberMetaData> embMmds = new ArrayList<AbstractMemberMetaData>(mmds);
                     embMmds.add(mmd);
-                    embSM.provideFields(embcmd.getAllMemberPositions(), new StoreEmbeddedFieldManager(embSM, row, insert, embMmds, table));
+                    StoreEmbeddedFieldManager storeEmbFM = new StoreEmbeddedFieldManager(embSM, row, insert, embMmds, table);
+                    storeEmbFM.rowWriter = rowWriter;
+                    embSM.provideFields(embcmd.getAllMemberPositions(), storeEmbFM);
                     return;
                 }
             }
@@ -20,10 +20,8 @@ package org.datanucleus.store.odf.fieldmanager;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Base64;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.Currency;
-import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +40,9 @@ import org.datanucleus.metadata.MetaDataUtils;
 import org.datanucleus.metadata.RelationType;
 import org.datanucleus.state.DNStateManager;
 import org.datanucleus.store.fieldmanager.AbstractStoreFieldManager;
+import org.datanucleus.store.odf.ColumnLayout;
+import org.datanucleus.store.odf.DateTimeCodec;
+import org.datanucleus.store.odf.ODFStoreManager;
 import org.datanucleus.store.schema.table.Column;
 import org.datanucleus.store.schema.table.MemberColumnMapping;
 import org.datanucleus.store.schema.table.Table;
@@ -64,6 +65,12 @@ public class StoreFieldManager extends AbstractStoreFieldManager
 
     protected final OdfTableRow row;
 
+    /** Layout of the columns of the table for the class (when not embedded), obtained when first needed. */
+    protected ColumnLayout layout;
+
+    /** Writer for the cells of the row when inserting (shared with any embedded field managers). */
+    protected RowWriter rowWriter;
+
     public StoreFieldManager(ExecutionContext ec, AbstractClassMetaData cmd, OdfTableRow row, boolean insert, Table table)
     {
         super(ec, cmd, insert);
@@ -78,9 +85,54 @@ public class StoreFieldManager extends AbstractStoreFieldManager
         this.row = row;
     }
 
+    /**
+     * Constructor for inserting into a newly appended row, writing the cells via the provided writer.
+     * @param sm StateManager of the object being inserted
+     * @param rowWriter Writer for the cells of the row
+     * @param table The table
+     */
+    public StoreFieldManager(DNStateManager sm, RowWriter rowWriter, Table table)
+    {
+        this(sm, rowWriter.getRow(), true, table);
+        this.rowWriter = rowWriter;
+    }
+
+    /**
+     * Accessor for the cell of the specified column of the row.
+     * @param position Position of the column
+     * @return The cell
+     */
+    protected OdfTableCell getCell(int position)
+    {
+        return rowWriter != null ? rowWriter.getCell(position) : row.getCellByIndex(position);
+    }
+
+    /**
+     * Accessor for the layout of the columns of the table for the class, obtained when first needed.
+     * @return The column layout
+     */
+    protected ColumnLayout getColumnLayout()
+    {
+        if (layout == null)
+        {
+            layout = ((ODFStoreManager)ec.getStoreManager()).getColumnLayout(cmd, table, ec.getClassLoaderResolver());
+        }
+        return layout;
+    }
+
     protected MemberColumnMapping getColumnMapping(int fieldNumber)
     {
-        return table.getMemberColumnMappingForMember(cmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber));
+        return getColumnLayout().getColumnMapping(fieldNumber);
+    }
+
+    /**
+     * Accessor for the position of the (first) column of the specified member.
+     * @param fieldNumber Absolute field number of the member
+     * @return The column position
+     */
+    protected int getColumnPosition(int fieldNumber)
+    {
+        return getColumnLayout().getColumnPosition(fieldNumber);
     }
 
     public void storeBooleanField(int fieldNumber, boolean value)
@@ -89,7 +141,7 @@ public class StoreFieldManager extends AbstractStoreFieldManager
         {
             return;
         }
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
+        OdfTableCell cell = getCell(getColumnPosition(fieldNumber));
         cell.setValueType(OfficeValueTypeAttribute.Value.BOOLEAN.toString());
         cell.setBooleanValue(value);
     }
@@ -100,7 +152,7 @@ public class StoreFieldManager extends AbstractStoreFieldManager
         {
             return;
         }
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
+        OdfTableCell cell = getCell(getColumnPosition(fieldNumber));
         cell.setValueType(OfficeValueTypeAttribute.Value.FLOAT.toString());
         cell.setDoubleValue(Double.valueOf(value));
     }
@@ -111,7 +163,7 @@ public class StoreFieldManager extends AbstractStoreFieldManager
         {
             return;
         }
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
+        OdfTableCell cell = getCell(getColumnPosition(fieldNumber));
         cell.setValueType(OfficeValueTypeAttribute.Value.STRING.toString());
         cell.setStringValue("" + value);
     }
@@ -122,7 +174,7 @@ public class StoreFieldManager extends AbstractStoreFieldManager
         {
             return;
         }
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
+        OdfTableCell cell = getCell(getColumnPosition(fieldNumber));
         cell.setValueType(OfficeValueTypeAttribute.Value.FLOAT.toString());
         cell.setDoubleValue(value);
     }
@@ -133,7 +185,7 @@ public class StoreFieldManager extends AbstractStoreFieldManager
         {
             return;
         }
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
+        OdfTableCell cell = getCell(getColumnPosition(fieldNumber));
         cell.setValueType(OfficeValueTypeAttribute.Value.FLOAT.toString());
         cell.setDoubleValue(Double.valueOf(value));
     }
@@ -144,7 +196,7 @@ public class StoreFieldManager extends AbstractStoreFieldManager
         {
             return;
         }
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
+        OdfTableCell cell = getCell(getColumnPosition(fieldNumber));
         cell.setValueType(OfficeValueTypeAttribute.Value.FLOAT.toString());
         cell.setDoubleValue(Double.valueOf(value));
     }
@@ -155,7 +207,7 @@ public class StoreFieldManager extends AbstractStoreFieldManager
         {
             return;
         }
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
+        OdfTableCell cell = getCell(getColumnPosition(fieldNumber));
         cell.setValueType(OfficeValueTypeAttribute.Value.FLOAT.toString());
         cell.setDoubleValue(Double.valueOf(value));
     }
@@ -166,7 +218,7 @@ public class StoreFieldManager extends AbstractStoreFieldManager
         {
             return;
         }
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
+        OdfTableCell cell = getCell(getColumnPosition(fieldNumber));
         cell.setValueType(OfficeValueTypeAttribute.Value.FLOAT.toString());
         cell.setDoubleValue(Double.valueOf(value));
     }
@@ -177,7 +229,7 @@ public class StoreFieldManager extends AbstractStoreFieldManager
         {
             return;
         }
-        OdfTableCell cell = row.getCellByIndex(getColumnMapping(fieldNumber).getColumn(0).getPosition());
+        OdfTableCell cell = getCell(getColumnPosition(fieldNumber));
         cell.setValueType(OfficeValueTypeAttribute.Value.STRING.toString());
         cell.setStringValue(value);
     }
@@ -192,8 +244,8 @@ public class StoreFieldManager extends AbstractStoreFieldManager
         }
 
         // Special cases
-        RelationType relationType = mmd.getRelationType(clr);
-        if (relationType != RelationType.NONE && MetaDataUtils.getInstance().isMemberEmbedded(ec.getMetaDataManager(), clr, mmd, relationType, null))
+        RelationType relationType = getColumnLayout().getRelationType(fieldNumber);
+        if (getColumnLayout().isEmbedded(fieldNumber))
         {
             // Embedded field
             if (RelationType.isRelationSingleValued(relationType))
@@ -219,6 +271,7 @@ public class StoreFieldManager extends AbstractStoreFieldManager
                 {
                     // Store null in all columns for the embedded (and nested embedded) object(s)
                     StoreEmbeddedFieldManager storeEmbFM = new StoreEmbeddedFieldManager(ec, embCmd, row, insert, embMmds, table);
+                    storeEmbFM.rowWriter = rowWriter;
                     for (int i=0;i<embMmdPosns.length;i++)
                     {
                         AbstractMemberMetaData embMmd = embCmd.getMetaDataForManagedMemberAtAbsolutePosition(embMmdPosns[i]);
@@ -243,6 +296,7 @@ public class StoreFieldManager extends AbstractStoreFieldManager
 
                 DNStateManager embSM = ec.findStateManagerForEmbedded(value, sm, mmd, null);
                 StoreEmbeddedFieldManager storeEmbFM = new StoreEmbeddedFieldManager(embSM, row, insert, embMmds, table);
+                storeEmbFM.rowWriter = rowWriter;
                 embSM.provideFields(embMmdPosns, storeEmbFM);
                 return;
             }
@@ -262,16 +316,9 @@ public class StoreFieldManager extends AbstractStoreFieldManager
             cell.setValueType(OfficeValueTypeAttribute.Value.FLOAT.toString());
             cell.setDoubleValue(0.0); // No other way of saying null ?
         }
-        else if (java.sql.Time.class.isAssignableFrom(type))
+        else if (DateTimeCodec.isTemporalType(type))
         {
-            cell.setValueType(OfficeValueTypeAttribute.Value.TIME.toString());
-            // TODO How to set empty cell?
-            cell.setTimeValue(getCalendarForTime(null)); // TODO This is dumped in to avoid NPEs in ODFDOM 0.8.7
-        }
-        else if (Date.class.isAssignableFrom(type) || Calendar.class.isAssignableFrom(type))
-        {
-            cell.setValueType(OfficeValueTypeAttribute.Value.DATE.toString());
-            // TODO How to set empty cell?
+            DateTimeCodec.setNull(cell, type);
         }
         else if (String.class.isAssignableFrom(type))
         {
@@ -322,18 +369,25 @@ public class StoreFieldManager extends AbstractStoreFieldManager
                     for (int i=0;i<mapping.getNumberOfColumns();i++)
                     {
                         Column col = mapping.getColumn(i);
-                        OdfTableCell theCell = row.getCellByIndex(col.getPosition());
+                        OdfTableCell theCell = getCell(col.getPosition());
                         setNullInCell(theCell, colTypes[i]);
                     }
                 }
                 else
                 {
-                    OdfTableCell cell = row.getCellByIndex(mapping.getColumn(0).getPosition());
+                    OdfTableCell cell = getCell(mapping.getColumn(0).getPosition());
                     setNullInCell(cell, type);
                 }
                 return;
             }
 
+            if (DateTimeCodec.isStoredNatively(ec.getTypeManager(), mapping, mmd.getType()))
+            {
+                // Persist java.time member as a date/time cell
+                DateTimeCodec.setValue(getCell(mapping.getColumn(0).getPosition()), value);
+                return;
+            }
+
             if (mapping.getTypeConverter() != null)
             {
                 // Persist using the provided converter
@@ -344,14 +398,14 @@ public class StoreFieldManager extends AbstractStoreFieldManager
                     for (int i=0;i<mapping.getNumberOfColumns();i++)
                     {
                         // Set each component cell
-                        OdfTableCell cell = row.getCellByIndex(mapping.getColumn(i).getPosition());
+                        OdfTableCell cell = getCell(mapping.getColumn(i).getPosition());
                         Object colValue = Array.get(datastoreValue, i);
                         storeValueInCell(mapping, i, cell, colValue);
                     }
                 }
                 else
                 {
-                    OdfTableCell cell = row.getCellByIndex(mapping.getColumn(0).getPosition());
+                    OdfTableCell cell = getCell(mapping.getColumn(0).getPosition());
                     if (datastoreType == String.class)
                     {
                         cell.setValueType(OfficeValueTypeAttribute.Value.STRING.toString());
@@ -370,18 +424,16 @@ public class StoreFieldManager extends AbstractStoreFieldManager
                         cell.setBooleanValue(Boolean.valueOf((Boolean)datastoreValue));
                         return;
                     }
-                    else if (java.sql.Time.class.isAssignableFrom(datastoreType))
+                    else if (DateTimeCodec.isTemporalType(datastoreType))
                     {
-                        cell.setValueType(OfficeValueTypeAttribute.Value.TIME.toString());
-                        cell.setTimeValue(getCalendarForTime((java.sql.Time)datastoreValue));
-                        return;
-                    }
-                    else if (Date.class.isAssignableFrom(datastoreType))
-                    {
-                        cell.setValueType(OfficeValueTypeAttribute.Value.DATE.toString());
-                        Calendar cal = Calendar.getInstance();
-                        cal.setTime((Date)datastoreValue);
-                        cell.setDateValue(cal);
+                        if (datastoreValue == null)
+                        {
+                            DateTimeCodec.setNull(cell, datastoreType);
+                        }
+                        else
+                        {
+                            DateTimeCodec.setValue(cell, datastoreValue);
+                        }
                         return;
                     }
                     else
@@ -392,7 +444,7 @@ public class StoreFieldManager extends AbstractStoreFieldManager
             }
             else
             {
-                OdfTableCell cell = row.getCellByIndex(mapping.getColumn(0).getPosition());
+                OdfTableCell cell = getCell(mapping.getColumn(0).getPosition());
                 storeValueInCell(mapping, 0, cell, value);
             }
         }
@@ -412,7 +464,7 @@ public class StoreFieldManager extends AbstractStoreFieldManager
             }
 
             // Persistable object - persist the related object and store the identity in the cell
-            OdfTableCell cell = row.getCellByIndex(mapping.getColumn(0).getPosition());
+            OdfTableCell cell = getCell(mapping.getColumn(0).getPosition());
             if (value == null)
             {
                 setNullInCell(cell, type);
@@ -428,7 +480,7 @@ public class StoreFieldManager extends AbstractStoreFieldManager
         else if (RelationType.isRelationMultiValued(relationType))
         {
             // Collection/Map/Array
-            OdfTableCell cell = row.getCellByIndex(mapping.getColumn(0).getPosition());
+            OdfTableCell cell = getCell(mapping.getColumn(0).getPosition());
             if (value == null)
             {
                 setNullInCell(cell, mmd.getType());
@@ -545,24 +597,9 @@ public class StoreFieldManager extends AbstractStoreFieldManager
     {
         Column col = mapping.getColumn(pos);
         AbstractMemberMetaData mmd = mapping.getMemberMetaData();
-        if (value instanceof java.sql.Time)
+        if (DateTimeCodec.isTemporalType(value.getClass()))
         {
-            cell.setValueType(OfficeValueTypeAttribute.Value.TIME.toString());
-            cell.setTimeValue(getCalendarForTime((java.sql.Time)value));
-            return;
-        }
-        else if (value instanceof Calendar)
-        {
-            cell.setValueType(OfficeValueTypeAttribute.Value.DATE.toString());
-            cell.setDateValue((Calendar)value);
-            return;
-        }
-        else if (value instanceof Date)
-        {
-            cell.setValueType(OfficeValueTypeAttribute.Value.DATE.toString());
-            Calendar cal = Calendar.getInstance();
-            cal.setTime((Date)value);
-            cell.setDateValue(cal);
+            DateTimeCodec.setValue(cell, value);
             return;
         }
         else if (value instanceof Boolean)
@@ -683,26 +720,4 @@ public class StoreFieldManager extends AbstractStoreFieldManager
                 " type=" + value.getClass().getName() + " to ODF");
         }
     }
-
-    protected static Calendar getCalendarForTime(Date date)
-    {
-        Calendar cal = Calendar.getInstance();
-        if (date != null)
-        {
-            // Base the Time on the provided value
-            cal.setTimeInMillis(date.getTime());
-        }
-        else
-        {
-            // Set the Time to 00:00:00
-            cal.set(Calendar.HOUR, 0);
-            cal.set(Calendar.MINUTE, 0);
-            cal.set(Calendar.SECOND, 0);
-        }
-        cal.set(Calendar.DAY_OF_MONTH, 0);
-        cal.set(Calendar.MONTH, 0);
-        cal.set(Calendar.YEAR, 0);
-        cal.set(Calendar.MILLISECOND, 0);
-        return cal;
-    }
 }
\ No newline at end of file
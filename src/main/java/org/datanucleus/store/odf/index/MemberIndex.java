@@ -0,0 +1,415 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.store.odf.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import org.odftoolkit.odfdom.doc.table.OdfTable;
+import org.odftoolkit.odfdom.doc.table.OdfTableRow;
+
+/**
+ * In-memory index of the rows of a worksheet keyed by the value in the column of a (basic) member, as defined by
+ * index/unique metadata for the member. Unlike {@link RowIndex} a key can have any number of rows.
+ * Keys are derived using the same rules as {@link RowIndex}, and rows whose cell has no value usable in a key (e.g null,
+ * or a value of a different kind to the member) are not indexed, so a lookup only finds rows with a non-null value.
+ * <p>
+ * The keys are held in order (the natural ordering of Long, String or Date, matching the ordering of the member values),
+ * so the index can find the rows with a key in a range, and can provide the rows in the order of the member values.
+ * <p>
+ * Each row is given an ordinal when added, increasing down the worksheet, so that the rows found for a lookup can be
+ * returned in worksheet order. Since rows are only ever appended to (or removed from) a worksheet, ordinals stay in step
+ * with the position of the rows.
+ */
+public class MemberIndex
+{
+    /** Name of the member being indexed. */
+    final String memberName;
+
+    /** Position of the column of the member. */
+    final int columnPosition;
+
+    /** Whether the values of the member are unique. */
+    final boolean unique;
+
+    /** Type of the keys (Long, String or Date) for the type of the member. */
+    final Class keyType;
+
+    /** The rows, keyed by their key, in key order. */
+    final NavigableMap<Object, List<OdfTableRow>> rowsByKey = new TreeMap<>();
+
+    /** Number of rows held against a key. */
+    int numberOfKeyedRows = 0;
+
+    /** Ordinal of each indexed row, keyed by its row element. */
+    final Map<Object, Long> ordinalByRowElement = new IdentityHashMap<>();
+
+    /** Ordinal to give to the next row added. */
+    long nextOrdinal = 0;
+
+    /**
+     * Constructor for an (empty) index.
+     * @param memberName Name of the member
+     * @param memberType Type of the member (String, short, int, long, or a date type)
+     * @param columnPosition Position of the column of the member
+     * @param unique Whether the values are unique
+     */
+    public MemberIndex(String memberName, Class memberType, int columnPosition, boolean unique)
+    {
+        this.memberName = memberName;
+        this.columnPosition = columnPosition;
+        this.unique = unique;
+        this.keyType = (memberType == String.class ? String.class : (Date.class.isAssignableFrom(memberType) ? Date.class : Long.class));
+    }
+
+    public String getMemberName()
+    {
+        return memberName;
+    }
+
+    public int getColumnPosition()
+    {
+        return columnPosition;
+    }
+
+    public boolean isUnique()
+    {
+        return unique;
+    }
+
+    public Class getKeyType()
+    {
+        return keyType;
+    }
+
+    /**
+     * Method to populate this index from all data rows of the worksheet (those after the header rows).
+     * @param table The worksheet
+     * @param headerRowCount Number of header rows at the top of the worksheet
+     */
+    public synchronized void build(OdfTable table, int headerRowCount)
+    {
+        rowsByKey.clear();
+        ordinalByRowElement.clear();
+        nextOrdinal = 0;
+        numberOfKeyedRows = 0;
+        List<OdfTableRow> rows = table.getRowList();
+        Iterator<OdfTableRow> rowIter = rows.listIterator(Math.min(headerRowCount, rows.size()));
+        while (rowIter.hasNext())
+        {
+            addRow(rowIter.next());
+        }
+    }
+
+    /**
+     * Method to add a (newly appended) row to the index.
+     * @param row The row
+     */
+    public synchronized void addRow(OdfTableRow row)
+    {
+        ordinalByRowElement.put(row.getOdfElement(), Long.valueOf(nextOrdinal++));
+        addRowForKey(row, getKeyForRow(row));
+    }
+
+    /**
+     * Method to remove a (deleted) row from the index.
+     * @param row The row
+     */
+    public synchronized void removeRow(OdfTableRow row)
+    {
+        removeRowForKey(row, getKeyForRow(row));
+        ordinalByRowElement.remove(row.getOdfElement());
+    }
+
+    /**
+     * Method to update the index for a row whose cell for the member has been changed.
+     * The row keeps its position in the index.
+     * @param row The row
+     * @param oldKey The key of the row before the change (see {@link #getKeyForRow(OdfTableRow)})
+     */
+    public synchronized void updateRow(OdfTableRow row, Object oldKey)
+    {
+        removeRowForKey(row, oldKey);
+        addRowForKey(row, getKeyForRow(row));
+    }
+
+    private void addRowForKey(OdfTableRow row, Object key)
+    {
+        if (key != null)
+        {
+            rowsByKey.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row);
+            numberOfKeyedRows++;
+        }
+    }
+
+    private void removeRowForKey(OdfTableRow row, Object key)
+    {
+        if (key == null)
+        {
+            return;
+        }
+        List<OdfTableRow> rows = rowsByKey.get(key);
+        if (rows != null)
+        {
+            Iterator<OdfTableRow> rowIter = rows.iterator();
+            while (rowIter.hasNext())
+            {
+                if (rowIter.next().getOdfElement() == row.getOdfElement())
+                {
+                    rowIter.remove();
+                    numberOfKeyedRows--;
+                    break;
+                }
+            }
+            if (rows.isEmpty())
+            {
+                rowsByKey.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Accessor for the rows with any of the specified keys, in worksheet order.
+     * @param keys The keys (see {@link RowIndex#getKeyForValue(Object)})
+     * @return The rows
+     */
+    public synchronized List<OdfTableRow> getRows(Collection<Object> keys)
+    {
+        List<OdfTableRow> rows = new ArrayList<>();
+        for (Object key : keys)
+        {
+            List<OdfTableRow> keyRows = keyType.isInstance(key) ? rowsByKey.get(key) : null;
+            if (keyRows != null)
+            {
+                rows.addAll(keyRows);
+            }
+        }
+        if (keys.size() > 1 || rows.size() > 1)
+        {
+            rows.sort((row1, row2) -> Long.compare(getOrdinal(row1), getOrdinal(row2)));
+        }
+        return rows;
+    }
+
+    /**
+     * Accessor for the rows with a key in the specified range, in worksheet order.
+     * @param fromKey Lowest key (or null if no lower limit)
+     * @param fromInclusive Whether the lowest key is included
+     * @param toKey Highest key (or null if no upper limit)
+     * @param toInclusive Whether the highest key is included
+     * @return The rows
+     */
+    public synchronized List<OdfTableRow> getRowsInRange(Object fromKey, boolean fromInclusive, Object toKey, boolean toInclusive)
+    {
+        List<OdfTableRow> rows = new ArrayList<>();
+        for (List<OdfTableRow> keyRows : getKeyRange(fromKey, fromInclusive, toKey, toInclusive).values())
+        {
+            rows.addAll(keyRows);
+        }
+        rows.sort((row1, row2) -> Long.compare(getOrdinal(row1), getOrdinal(row2)));
+        return rows;
+    }
+
+    /**
+     * Method to return the number of rows with a key in the specified range.
+     * @param fromKey Lowest key (or null if no lower limit)
+     * @param fromInclusive Whether the lowest key is included
+     * @param toKey Highest key (or null if no upper limit)
+     * @param toInclusive Whether the highest key is included
+     * @return The number of rows
+     */
+    public synchronized int getNumberOfRowsInRange(Object fromKey, boolean fromInclusive, Object toKey, boolean toInclusive)
+    {
+        if (fromKey == null && toKey == null)
+        {
+            return numberOfKeyedRows;
+        }
+        int number = 0;
+        for (List<OdfTableRow> keyRows : getKeyRange(fromKey, fromInclusive, toKey, toInclusive).values())
+        {
+            number += keyRows.size();
+        }
+        return number;
+    }
+
+    /**
+     * Method to pass the rows with a key in the specified range to the handler, in key order (and in worksheet order for
+     * rows with the same key), stopping when the handler returns false. The handler mustn't modify the worksheet.
+     * @param fromKey Lowest key (or null if no lower limit)
+     * @param fromInclusive Whether the lowest key is included
+     * @param toKey Highest key (or null if no upper limit)
+     * @param toInclusive Whether the highest key is included
+     * @param descending Whether to pass the rows in descending key order
+     * @param handler Handler for the rows, returning false if no further rows are required
+     */
+    public synchronized void forEachRowInKeyOrder(Object fromKey, boolean fromInclusive, Object toKey, boolean toInclusive, boolean descending,
+            Predicate<OdfTableRow> handler)
+    {
+        NavigableMap<Object, List<OdfTableRow>> keyRange = getKeyRange(fromKey, fromInclusive, toKey, toInclusive);
+        for (List<OdfTableRow> keyRows : (descending ? keyRange.descendingMap() : keyRange).values())
+        {
+            if (keyRows.size() > 1)
+            {
+                keyRows.sort((row1, row2) -> Long.compare(getOrdinal(row1), getOrdinal(row2)));
+            }
+            for (OdfTableRow row : keyRows)
+            {
+                if (!handler.test(row))
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    private NavigableMap<Object, List<OdfTableRow>> getKeyRange(Object fromKey, boolean fromInclusive, Object toKey, boolean toInclusive)
+    {
+        if (fromKey != null && toKey != null)
+        {
+            int cmp = ((Comparable)fromKey).compareTo(toKey);
+            if (cmp > 0 || (cmp == 0 && !(fromInclusive && toInclusive)))
+            {
+                return new TreeMap<>();
+            }
+            return rowsByKey.subMap(fromKey, fromInclusive, toKey, toInclusive);
+        }
+        else if (fromKey != null)
+        {
+            return rowsByKey.tailMap(fromKey, fromInclusive);
+        }
+        else if (toKey != null)
+        {
+            return rowsByKey.headMap(toKey, toInclusive);
+        }
+        return rowsByKey;
+    }
+
+    /**
+     * Accessor for whether a row other than the specified row has the specified key.
+     * @param key The key
+     * @param row The row to ignore (or null)
+     * @return Whether another row has this key
+     */
+    public synchronized boolean hasOtherRow(Object key, OdfTableRow row)
+    {
+        List<OdfTableRow> rows = keyType.isInstance(key) ? rowsByKey.get(key) : null;
+        if (rows != null)
+        {
+            for (OdfTableRow keyRow : rows)
+            {
+                if (row == null || keyRow.getOdfElement() != row.getOdfElement())
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method to return the number of rows with the specified key.
+     * @param key The key
+     * @return The number of rows
+     */
+    public synchronized int getNumberOfRows(Object key)
+    {
+        List<OdfTableRow> rows = keyType.isInstance(key) ? rowsByKey.get(key) : null;
+        return rows != null ? rows.size() : 0;
+    }
+
+    public synchronized int size()
+    {
+        return ordinalByRowElement.size();
+    }
+
+    /**
+     * Method to return the number of rows that aren't held against a key (since their cell has no value usable in a key).
+     * @return The number of rows without a key
+     */
+    public synchronized int getNumberOfUnkeyedRows()
+    {
+        return ordinalByRowElement.size() - numberOfKeyedRows;
+    }
+
+    /**
+     * Method to pass each row held by the index to the consumer (e.g to persist the index), with its key, or null if
+     * the row is held without a key.
+     * @param consumer Consumer of the key and the row element
+     */
+    public synchronized void forEachRowElement(BiConsumer<Object, Object> consumer)
+    {
+        Set<Object> keyedElements = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Map.Entry<Object, List<OdfTableRow>> entry : rowsByKey.entrySet())
+        {
+            for (OdfTableRow row : entry.getValue())
+            {
+                keyedElements.add(row.getOdfElement());
+                consumer.accept(entry.getKey(), row.getOdfElement());
+            }
+        }
+        for (Object rowElement : ordinalByRowElement.keySet())
+        {
+            if (!keyedElements.contains(rowElement))
+            {
+                consumer.accept(null, rowElement);
+            }
+        }
+    }
+
+    /**
+     * Method to add a row to the index with a known key (e.g when restoring a persisted index), without reading its cell.
+     * Rows should be restored in worksheet order, or with their position as ordinal.
+     * @param row The row
+     * @param ordinal Ordinal of the row (increasing down the worksheet)
+     * @param key The key of the row, or null if it has no key
+     */
+    public synchronized void restoreRow(OdfTableRow row, long ordinal, Object key)
+    {
+        ordinalByRowElement.put(row.getOdfElement(), Long.valueOf(ordinal));
+        nextOrdinal = Math.max(nextOrdinal, ordinal + 1);
+        addRowForKey(row, keyType.isInstance(key) ? key : null);
+    }
+
+    /**
+     * Method to return the key for the specified row, from the cell in the indexed column.
+     * @param row The row
+     * @return The key, or null if the cell has no value that can be used in a key for this member
+     */
+    public Object getKeyForRow(OdfTableRow row)
+    {
+        Object key = RowIndex.getKeyForCell(row.getCellByIndex(columnPosition));
+        return keyType.isInstance(key) ? key : null;
+    }
+
+    private long getOrdinal(OdfTableRow row)
+    {
+        Long ordinal = ordinalByRowElement.get(row.getOdfElement());
+        return ordinal != null ? ordinal.longValue() : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,304 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.store.odf.index;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.datanucleus.store.odf.DateTimeCodec;
+import org.datanucleus.store.odf.ODFUtils;
+import org.datanucleus.store.odf.OfficeValueTypeDecoder;
+import org.odftoolkit.odfdom.doc.table.OdfTable;
+import org.odftoolkit.odfdom.doc.table.OdfTableCell;
+import org.odftoolkit.odfdom.doc.table.OdfTableRow;
+import org.odftoolkit.odfdom.dom.attribute.office.OfficeValueTypeAttribute;
+
+/**
+ * In-memory index of the rows of a worksheet, keyed by the value(s) in particular column(s) of the row.
+ * Used to find the row for an object by its identity without scanning the worksheet.
+ * The key for a row is derived from its cells, and the key for an object from its (datastore) values, using the same
+ * matching rules as {@link ODFUtils} uses when comparing a cell with a value :
+ * <ul>
+ * <li>Long/Integer/Short values match the (truncated) value of a float cell.</li>
+ * <li>String values match a string cell.</li>
+ * <li>Date values match the time of a date or time cell.</li>
+ * </ul>
+ * Where a value cannot be converted into a key (null, or any other type) the index cannot be used for that value.
+ * Where two rows have the same key (e.g after the worksheet was edited externally), the first row in the worksheet is the
+ * one indexed, and the others are held so that one of them is indexed when that row is removed. So a row is never missing
+ * from the index while another row with its key is.
+ */
+public class RowIndex
+{
+    /** Positions of the column(s) making up the key. */
+    final int[] columnPositions;
+
+    /** The rows, keyed by their key. */
+    final Map<Object, OdfTableRow> rowsByKey = new HashMap<>();
+
+    /** The other rows with the same key as an indexed row, in the order added, keyed by their key. */
+    final Map<Object, List<OdfTableRow>> duplicateRowsByKey = new HashMap<>();
+
+    /**
+     * Constructor for an (empty) index.
+     * @param columnPositions Positions of the column(s) making up the key
+     */
+    public RowIndex(int[] columnPositions)
+    {
+        this.columnPositions = columnPositions;
+    }
+
+    public int[] getColumnPositions()
+    {
+        return columnPositions;
+    }
+
+    /**
+     * Method to populate this index from all data rows of the worksheet (those after the header rows).
+     * @param table The worksheet
+     * @param headerRowCount Number of header rows at the top of the worksheet
+     */
+    public synchronized void build(OdfTable table, int headerRowCount)
+    {
+        rowsByKey.clear();
+        duplicateRowsByKey.clear();
+        List<OdfTableRow> rows = table.getRowList();
+        Iterator<OdfTableRow> rowIter = rows.listIterator(Math.min(headerRowCount, rows.size()));
+        while (rowIter.hasNext())
+        {
+            addRow(rowIter.next());
+        }
+    }
+
+    /**
+     * Method to add a row to the index.
+     * @param row The row
+     */
+    public synchronized void addRow(OdfTableRow row)
+    {
+        Object key = getKeyForRow(row);
+        if (key != null)
+        {
+            addRow(key, row);
+        }
+    }
+
+    private void addRow(Object key, OdfTableRow row)
+    {
+        OdfTableRow indexedRow = rowsByKey.putIfAbsent(key, row);
+        if (indexedRow != null && indexedRow.getOdfElement() != row.getOdfElement())
+        {
+            duplicateRowsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(row);
+        }
+    }
+
+    /**
+     * Method to remove a row from the index. Where another row has the same key, that row is indexed in its place.
+     * @param row The row
+     */
+    public synchronized void removeRow(OdfTableRow row)
+    {
+        Object key = getKeyForRow(row);
+        if (key == null)
+        {
+            return;
+        }
+
+        List<OdfTableRow> duplicateRows = duplicateRowsByKey.get(key);
+        OdfTableRow indexedRow = rowsByKey.get(key);
+        if (indexedRow != null && indexedRow.getOdfElement() == row.getOdfElement())
+        {
+            if (duplicateRows != null)
+            {
+                rowsByKey.put(key, duplicateRows.remove(0));
+            }
+            else
+            {
+                rowsByKey.remove(key);
+            }
+        }
+        else if (duplicateRows != null)
+        {
+            duplicateRows.removeIf(duplicateRow -> duplicateRow.getOdfElement() == row.getOdfElement());
+        }
+        if (duplicateRows != null && duplicateRows.isEmpty())
+        {
+            duplicateRowsByKey.remove(key);
+        }
+    }
+
+    /**
+     * Accessor for the row with the specified key.
+     * @param key The key (see {@link #getKeyForValues(List)})
+     * @return The row, or null if no row has this key
+     */
+    public synchronized OdfTableRow getRow(Object key)
+    {
+        return rowsByKey.get(key);
+    }
+
+    public synchronized int size()
+    {
+        return rowsByKey.size();
+    }
+
+    /**
+     * Method to pass each row, with its key, to the consumer (e.g to persist the index). The indexed row for a key is
+     * passed before any other rows with the same key.
+     * @param consumer Consumer of the key and row
+     */
+    public synchronized void forEachRow(BiConsumer<Object, OdfTableRow> consumer)
+    {
+        rowsByKey.forEach((key, row) ->
+        {
+            consumer.accept(key, row);
+            List<OdfTableRow> duplicateRows = duplicateRowsByKey.get(key);
+            if (duplicateRows != null)
+            {
+                duplicateRows.forEach(duplicateRow -> consumer.accept(key, duplicateRow));
+            }
+        });
+    }
+
+    /**
+     * Method to add a row to the index with a known key (e.g when restoring a persisted index), without reading its cells.
+     * @param key The key of the row
+     * @param row The row
+     */
+    public synchronized void restoreRow(Object key, OdfTableRow row)
+    {
+        addRow(key, row);
+    }
+
+    /**
+     * Method to return the key for the specified row, from the cells in the indexed column(s).
+     * @param row The row
+     * @return The key, or null if any of the cells has no value that can be used in a key
+     */
+    public Object getKeyForRow(OdfTableRow row)
+    {
+        if (columnPositions.length == 1)
+        {
+            return getKeyForCell(row.getCellByIndex(columnPositions[0]));
+        }
+
+        Object[] keys = new Object[columnPositions.length];
+        for (int i=0;i<columnPositions.length;i++)
+        {
+            keys[i] = getKeyForCell(row.getCellByIndex(columnPositions[i]));
+            if (keys[i] == null)
+            {
+                return null;
+            }
+        }
+        return Arrays.asList(keys);
+    }
+
+    /**
+     * Method to return the key for the specified (datastore) values, in the same order as the indexed column(s).
+     * @param values The values
+     * @return The key, or null if any of the values cannot be used in a key
+     */
+    public static Object getKeyForValues(List values)
+    {
+        if (values.size() == 1)
+        {
+            return getKeyForValue(values.get(0));
+        }
+
+        Object[] keys = new Object[values.size()];
+        for (int i=0;i<keys.length;i++)
+        {
+            keys[i] = getKeyForValue(values.get(i));
+            if (keys[i] == null)
+            {
+                return null;
+            }
+        }
+        return Arrays.asList(keys);
+    }
+
+    /**
+     * Method to return the key component for a cell.
+     * @param cell The cell
+     * @return The key component, or null if the cell has no value usable in a key
+     */
+    public static Object getKeyForCell(OdfTableCell cell)
+    {
+        if (cell == null)
+        {
+            return null;
+        }
+
+        OfficeValueTypeAttribute.Value type = OfficeValueTypeDecoder.getValueType(cell);
+        if (type == null)
+        {
+            return null;
+        }
+        switch (type)
+        {
+            case FLOAT:
+                Double value = cell.getDoubleValue();
+                return value != null ? Long.valueOf(value.longValue()) : null;
+            case STRING:
+                return cell.getStringValue();
+            case DATE:
+                LocalDateTime dateTime = DateTimeCodec.getDateTime(cell);
+                return dateTime != null ? DateTimeCodec.toDateType(dateTime, Date.class) : null;
+            case TIME:
+                LocalTime time = DateTimeCodec.getTime(cell);
+                return time != null ? DateTimeCodec.toTimeType(time, Date.class) : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Method to return the key component for a (datastore) value.
+     * @param value The value
+     * @return The key component, or null if the value cannot be used in a key
+     */
+    public static Object getKeyForValue(Object value)
+    {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short)
+        {
+            return Long.valueOf(((Number)value).longValue());
+        }
+        else if (value instanceof String)
+        {
+            return value;
+        }
+        else if (value instanceof Date)
+        {
+            return new Date(((Date)value).getTime());
+        }
+        else if (value != null && DateTimeCodec.isJavaTimeType(value.getClass()))
+        {
+            return DateTimeCodec.toDateType(DateTimeCodec.toLocalDateTime(value), Date.class);
+        }
+        return null;
+    }
+}
@@ -19,6 +19,7 @@ package org.datanucleus.store.odf.query;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -27,12 +28,14 @@ import org.datanucleus.exceptions.NucleusException;
 import org.datanucleus.metadata.QueryLanguage;
 import org.datanucleus.store.StoreManager;
 import org.datanucleus.store.connection.ManagedConnection;
+import org.datanucleus.store.odf.ODFStoreManager;
 import org.datanucleus.store.query.AbstractJPQLQuery;
 import org.datanucleus.store.query.Query;
 import org.datanucleus.store.query.inmemory.JPQLInMemoryEvaluator;
 import org.datanucleus.store.query.inmemory.JavaQueryInMemoryEvaluator;
 import org.datanucleus.util.Localiser;
 import org.datanucleus.util.NucleusLogger;
+import org.odftoolkit.odfdom.doc.OdfDocument;
 
 /**
  * JPQL query for ODF documents.
@@ -43,6 +46,9 @@ public class JPQLQuery extends AbstractJPQLQuery
 {
     private static final long serialVersionUID = 4599206494545227602L;
 
+    /** Description of what was evaluated in the datastore during the last execution, if anything. */
+    transient String datastoreEvaluation = null;
+
     /**
      * Constructs a new query instance that uses the given persistence manager.
      * @param storeMgr StoreManager for this query
@@ -75,9 +81,21 @@ public class JPQLQuery extends AbstractJPQLQuery
         super(storeMgr, ec, query);
     }
 
+    /**
+     * Accessor for a description of what (if anything) was evaluated in the datastore, on the cells of the worksheets,
+     * during the last execution of this query.
+     * @return The description, or null if all evaluation was in-memory
+     */
+    @Override
+    public Object getNativeQuery()
+    {
+        return datastoreEvaluation;
+    }
+
     /**
      * Method to execute the query, specific to ODF datastores.
-     * Here we retrieve all objects of the candidate type, and process them using the in-memory evaluator.
+     * Here we retrieve the objects of the candidate type, excluding rows that don't match the filter (as far as it can be
+     * evaluated on the rows), and process them using the in-memory evaluator.
      * @param parameters Map of parameter values keyed by name.
      */
     protected Object performExecute(Map parameters)
@@ -91,10 +109,106 @@ public class JPQLQuery extends AbstractJPQLQuery
                 startTime = System.currentTimeMillis();
                 NucleusLogger.QUERY.debug(Localiser.msg("021046", QueryLanguage.JPQL.name(), getSingleStringQuery(), null));
             }
+            datastoreEvaluation = null;
+            ODFQueryResultCache.Lookup cacheLookup = null;
             List candidates = null;
+            boolean filterInMemory = true;
+            boolean orderingInMemory = true;
+            boolean rangeInMemory = true;
+            ODFQueryEvaluator datastoreEvaluator = new ODFQueryEvaluator(this, compilation, parameters, mconn);
             if (candidateCollection == null)
             {
-                candidates = new ODFCandidateList(candidateClass, subclasses, ec, (String)getExtension(Query.EXTENSION_RESULT_CACHE_TYPE), mconn, ignoreCache, getFetchPlan());
+                if (type == QueryType.BULK_UPDATE || type == QueryType.BULK_DELETE)
+                {
+                    // Update the cells of (or remove) the matching rows directly where possible
+                    Long number = (type == QueryType.BULK_UPDATE) ? datastoreEvaluator.executeBulkUpdate(null) : datastoreEvaluator.executeBulkDelete();
+                    if (number != null)
+                    {
+                        datastoreEvaluation = datastoreEvaluator.getDatastoreEvaluation();
+                        if (NucleusLogger.QUERY.isDebugEnabled())
+                        {
+                            NucleusLogger.QUERY.debug(Localiser.msg("021074", QueryLanguage.JPQL.name(), "" + (System.currentTimeMillis() - startTime)));
+                        }
+                        return number;
+                    }
+                }
+
+                // Use the cached result where none of the worksheets the query could read has been modified since
+                ODFQueryResultCache resultCache = ((ODFStoreManager)getStoreManager()).getQueryResultCache();
+                if (resultCache != null)
+                {
+                    cacheLookup = resultCache.lookup(this, compilation, parameters, (OdfDocument)mconn.getConnection());
+                    List cachedResults = (cacheLookup != null) ? cacheLookup.getResult() : null;
+                    if (cachedResults != null)
+                    {
+                        datastoreEvaluation = "Result taken from the query result cache";
+                        if (NucleusLogger.QUERY.isDebugEnabled())
+                        {
+                            NucleusLogger.QUERY.debug(Localiser.msg("021074", QueryLanguage.JPQL.name(), "" + (System.currentTimeMillis() - startTime)));
+                        }
+                        return cachedResults;
+                    }
+                }
+
+                // Evaluate aggregate-only or basic member results directly on the cells where possible
+                List results = datastoreEvaluator.executeAggregateQuery();
+                if (results == null)
+                {
+                    results = datastoreEvaluator.executeProjectionQuery();
+                }
+                if (results == null)
+                {
+                    // Stream the candidates from the rows where requested, evaluating the filter in-memory for any row undecided on its cells
+                    results = datastoreEvaluator.executeStreamingQuery(obj -> !new JPQLInMemoryEvaluator(this, Collections.singletonList(obj), compilation,
+                        parameters, ec.getClassLoaderResolver()).execute(true, false, false, false, false).isEmpty());
+                }
+                if (results != null)
+                {
+                    if (cacheLookup != null && !(results instanceof ODFStreamingResult))
+                    {
+                        cacheLookup.store(results, false);
+                    }
+                    datastoreEvaluation = datastoreEvaluator.getDatastoreEvaluation();
+                    if (NucleusLogger.QUERY.isDebugEnabled())
+                    {
+                        NucleusLogger.QUERY.debug(Localiser.msg("021074", QueryLanguage.JPQL.name(), "" + (System.currentTimeMillis() - startTime)));
+                    }
+                    return results;
+                }
+
+                // Evaluate what we can of the filter (and ordering/range) on the rows, so non-matching rows aren't instantiated
+                datastoreEvaluator.flushPendingChanges();
+                boolean applyRange = datastoreEvaluator.canApplyRangeToCandidates();
+                ODFCandidateList candidateList = new ODFCandidateList(candidateClass, subclasses, ec, (String)getExtension(Query.EXTENSION_RESULT_CACHE_TYPE), mconn,
+                    ignoreCache, getFetchPlan(), datastoreEvaluator.getMapper(), datastoreEvaluator.canApplyOrderingToCandidates(),
+                    applyRange ? getRangeFromIncl() : 0, applyRange ? getRangeToExcl() : Long.MAX_VALUE);
+                if (candidateList.isFilterComplete())
+                {
+                    filterInMemory = false;
+                    datastoreEvaluation = "Filter evaluated on the cells of the candidate worksheet(s)";
+                    if (NucleusLogger.QUERY.isDebugEnabled())
+                    {
+                        NucleusLogger.QUERY.debug("Filter of query was evaluated completely in the datastore");
+                    }
+                }
+                if (candidateList.isOrderingApplied())
+                {
+                    orderingInMemory = false;
+                    if (NucleusLogger.QUERY.isDebugEnabled())
+                    {
+                        NucleusLogger.QUERY.debug("Ordering of query was applied using an index in the datastore");
+                    }
+                }
+                if (candidateList.isRangeApplied())
+                {
+                    rangeInMemory = false;
+                    datastoreEvaluation = (datastoreEvaluator.getMapper().hasFilter() ? "Filter and range" : "Range") + " evaluated on the cells of the candidate worksheet(s)";
+                    if (NucleusLogger.QUERY.isDebugEnabled())
+                    {
+                        NucleusLogger.QUERY.debug("Range of query was applied when scanning the datastore");
+                    }
+                }
+                candidates = candidateList;
             }
             else
             {
@@ -104,7 +218,7 @@ public class JPQLQuery extends AbstractJPQLQuery
             // Map any result restrictions onto the worksheet results
             JavaQueryInMemoryEvaluator resultMapper = new JPQLInMemoryEvaluator(this, candidates, compilation, 
                 parameters, ec.getClassLoaderResolver());
-            Collection results = resultMapper.execute(true, true, true, true, true);
+            Collection results = resultMapper.execute(filterInMemory, orderingInMemory, true, true, rangeInMemory);
 
             if (NucleusLogger.QUERY.isDebugEnabled())
             {
@@ -114,16 +228,26 @@ public class JPQLQuery extends AbstractJPQLQuery
 
             if (type == QueryType.BULK_DELETE)
             {
+                // Delete the objects matching the filter through the execution context, since they are instantiated
                 ec.deleteObjects(results.toArray());
                 return Long.valueOf(results.size());
             }
             else if (type == QueryType.BULK_UPDATE)
             {
-                // TODO Support BULK UPDATE
-                throw new NucleusException("Bulk Update is not yet supported");
+                // Update the cells of the rows of the objects matching the filter
+                Long number = datastoreEvaluator.executeBulkUpdate(results);
+                if (number == null)
+                {
+                    throw new NucleusException("Bulk Update is not supported for this SET clause : " + getSingleStringQuery());
+                }
+                return number;
             }
             else
             {
+                if (cacheLookup != null)
+                {
+                    cacheLookup.store(results, compilation.getExprResult() == null);
+                }
                 return results;
             }
         }
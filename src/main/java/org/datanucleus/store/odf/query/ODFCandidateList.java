@@ -18,6 +18,7 @@ Contributors:
 package org.datanucleus.store.odf.query;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -33,14 +34,15 @@ import org.datanucleus.store.FieldValues;
 import org.datanucleus.store.StoreData;
 import org.datanucleus.store.connection.ManagedConnection;
 import org.datanucleus.store.fieldmanager.FieldManager;
+import org.datanucleus.store.odf.CachedDocument;
 import org.datanucleus.store.odf.ODFStoreManager;
 import org.datanucleus.store.odf.ODFUtils;
 import org.datanucleus.store.odf.fieldmanager.FetchFieldManager;
+import org.datanucleus.store.odf.fieldmanager.RowReader;
 import org.datanucleus.store.query.AbstractCandidateLazyLoadList;
 import org.datanucleus.store.schema.table.SurrogateColumnType;
 import org.datanucleus.store.schema.table.Table;
 import org.odftoolkit.odfdom.doc.OdfSpreadsheetDocument;
-import org.odftoolkit.odfdom.incubator.doc.style.OdfStyle;
 import org.odftoolkit.odfdom.doc.table.OdfTable;
 import org.odftoolkit.odfdom.doc.table.OdfTableCell;
 import org.odftoolkit.odfdom.doc.table.OdfTableRow;
@@ -48,18 +50,73 @@ import org.odftoolkit.odfdom.dom.attribute.office.OfficeValueTypeAttribute;
 
 /**
  * Wrapper for a List of candidate instances from ODF. Loads the instances from the workbook lazily.
+ * When not filtering, the number of instances of each class is the number of data rows of its worksheet, as held by
+ * the store (see {@link ODFUtils#getDataRowCount(org.datanucleus.store.StoreManager, org.odftoolkit.odfdom.doc.OdfDocument, OdfTable)}),
+ * so the worksheets aren't scanned to construct the list, and an instance is found directly by its position after the
+ * header rows.
+ * <p>
+ * When provided with a {@link QueryToODFMapper} the rows are evaluated against the query filter while counting, and
+ * rows that don't match are excluded before any object is instantiated for them. In that case the position of every
+ * included row is recorded.
+ * <p>
+ * When provided with a range (for a query without ordering) and the filter can be evaluated completely on the rows,
+ * the rows before the start of the range are skipped and the scan stops at the end of the range, without counting the
+ * remaining rows of the worksheet(s).
+ * <p>
+ * When the filter can use an index of a member of every candidate class (see
+ * {@link QueryToODFMapper#getRowsUsingIndexes(AbstractClassMetaData, Table, OdfSpreadsheetDocument)}), only the rows
+ * found using the indexes are evaluated, rather than scanning the worksheet(s). When the query is ordered by an indexed
+ * member, the rows can be found in that order using the index, and with a range the rows after the end of the range
+ * aren't visited.
  */
 public class ODFCandidateList extends AbstractCandidateLazyLoadList
 {
-    ManagedConnection mconn;
+    /** The document being queried, taken from the connection when constructed since objects are retrieved after it is released. */
+    OdfSpreadsheetDocument spreadsheetDoc;
+
+    /** The cached document (referenced until the execution context closes), whose lock is held while retrieving objects from the rows. */
+    CachedDocument cachedDoc;
 
     boolean ignoreCache;
 
     FetchPlan fetchPlan;
 
+    /** Whether the query filter was evaluated fully on the rows, so needn't be evaluated in-memory. */
+    boolean filterComplete = false;
+
+    /** Whether the query range was applied when scanning the rows, so needn't be applied in-memory. */
+    boolean rangeApplied = false;
+
+    /** Whether the query ordering was applied when finding the rows, so needn't be applied in-memory. */
+    boolean orderingApplied = false;
+
+    /** When the rows were found up front (range applied, or using indexes), the rows of the instances. */
+    List<OdfTableRow> loadedRows = null;
+
+    /** When the rows were found up front, the metadata of the class of each row. */
+    List<AbstractClassMetaData> loadedRowCmds = null;
+
     /** Number of objects per class, in same order as class meta-data. */
     List<Integer> numberInstancesPerClass = null;
 
+    /**
+     * Position in the row list of every instance per class (when filtered), in same order as class meta-data.
+     * Null for a class whose instances are all data rows of its worksheet.
+     */
+    List<int[]> rowPositionsPerClass = null;
+
+    /** Position (in the list of class meta-data) of the class of the worksheet at the cursor, or -1 when no cursor. */
+    int cursorClassNumber = -1;
+
+    /** Rows of the worksheet of the class at the cursor. */
+    List<OdfTableRow> cursorRows = null;
+
+    /** Position in the row list of the first data row of the worksheet at the cursor. */
+    int cursorFirstRowPosition = 0;
+
+    /** Reader of the cells of the rows, reused for each object retrieved. */
+    final RowReader rowReader = new RowReader();
+
     /**
      * Constructor for the lazy loaded ODF candidate list.
      * @param cls The candidate class
@@ -71,60 +128,446 @@ public class ODFCandidateList extends AbstractCandidateLazyLoadList
      * @param fp FetchPlan for retrieval
      */
     public ODFCandidateList(Class cls, boolean subclasses, ExecutionContext ec, String cacheType, ManagedConnection mconn, boolean ignoreCache, FetchPlan fp)
+    {
+        this(cls, subclasses, ec, cacheType, mconn, ignoreCache, fp, null);
+    }
+
+    /**
+     * Constructor for the lazy loaded ODF candidate list, excluding rows that don't match the query filter.
+     * @param cls The candidate class
+     * @param subclasses Whether to include subclasses
+     * @param ec execution context
+     * @param cacheType Type of caching
+     * @param mconn Connection to the datastore
+     * @param ignoreCache Whether to ignore the cache on object retrieval
+     * @param fp FetchPlan for retrieval
+     * @param mapper Mapper for the query filter (or null if not filtering)
+     */
+    public ODFCandidateList(Class cls, boolean subclasses, ExecutionContext ec, String cacheType, ManagedConnection mconn, boolean ignoreCache, FetchPlan fp,
+            QueryToODFMapper mapper)
+    {
+        this(cls, subclasses, ec, cacheType, mconn, ignoreCache, fp, mapper, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor for the lazy loaded ODF candidate list, excluding rows that don't match the query filter, and
+     * only including the rows in the specified range where the filter can be evaluated completely on the rows.
+     * The range should only be provided when the query has no ordering (and no grouping/aggregation of the candidates).
+     * @param cls The candidate class
+     * @param subclasses Whether to include subclasses
+     * @param ec execution context
+     * @param cacheType Type of caching
+     * @param mconn Connection to the datastore
+     * @param ignoreCache Whether to ignore the cache on object retrieval
+     * @param fp FetchPlan for retrieval
+     * @param mapper Mapper for the query filter (or null if not filtering)
+     * @param rangeFromIncl Start of the range (inclusive)
+     * @param rangeToExcl End of the range (exclusive), or Long.MAX_VALUE if no end
+     */
+    public ODFCandidateList(Class cls, boolean subclasses, ExecutionContext ec, String cacheType, ManagedConnection mconn, boolean ignoreCache, FetchPlan fp,
+            QueryToODFMapper mapper, long rangeFromIncl, long rangeToExcl)
+    {
+        this(cls, subclasses, ec, cacheType, mconn, ignoreCache, fp, mapper, false, rangeFromIncl, rangeToExcl);
+    }
+
+    /**
+     * Constructor for the lazy loaded ODF candidate list, excluding rows that don't match the query filter, providing the
+     * instances in the query ordering where an index of the member being ordered by can be used, and only including the
+     * rows in the specified range where the filter can be evaluated completely on the rows (and the ordering, if any, was
+     * applied). The range and ordering should only be provided when the query has no grouping/aggregation of the candidates.
+     * @param cls The candidate class
+     * @param subclasses Whether to include subclasses
+     * @param ec execution context
+     * @param cacheType Type of caching
+     * @param mconn Connection to the datastore
+     * @param ignoreCache Whether to ignore the cache on object retrieval
+     * @param fp FetchPlan for retrieval
+     * @param mapper Mapper for the query filter (or null if not filtering)
+     * @param ordered Whether to try to apply the query ordering
+     * @param rangeFromIncl Start of the range (inclusive)
+     * @param rangeToExcl End of the range (exclusive), or Long.MAX_VALUE if no end
+     */
+    public ODFCandidateList(Class cls, boolean subclasses, ExecutionContext ec, String cacheType, ManagedConnection mconn, boolean ignoreCache, FetchPlan fp,
+            QueryToODFMapper mapper, boolean ordered, long rangeFromIncl, long rangeToExcl)
     {
         super(cls, subclasses, ec, cacheType);
-        this.mconn = mconn;
+        this.spreadsheetDoc = (OdfSpreadsheetDocument)mconn.getConnection();
+        this.cachedDoc = ODFUtils.retainCachedDocument(ec, spreadsheetDoc);
         this.ignoreCache = ignoreCache;
         this.fetchPlan = fp;
 
-        // Count the instances per class by scanning the associated worksheets
-        numberInstancesPerClass = new ArrayList<Integer>();
+        if (ordered && mapper != null)
+        {
+            orderingApplied = loadRowsInIndexOrder(mapper, rangeFromIncl, rangeToExcl);
+            if (!orderingApplied)
+            {
+                // The range can't be applied to unordered rows
+                rangeFromIncl = 0;
+                rangeToExcl = Long.MAX_VALUE;
+            }
+        }
+        if (loadedRows == null && mapper != null && mapper.hasFilter())
+        {
+            loadRowsUsingIndexes(mapper, rangeFromIncl, rangeToExcl);
+        }
+        if (loadedRows == null && mapper != null && (rangeFromIncl > 0 || rangeToExcl != Long.MAX_VALUE))
+        {
+            rangeApplied = loadRowsInRange(mapper, rangeFromIncl, rangeToExcl);
+        }
+        if (loadedRows == null)
+        {
+            countRows(mapper);
+        }
+    }
+
+    /**
+     * Method to load the rows in the query ordering, using the index of the member being ordered by, evaluating the filter
+     * (as far as it can be evaluated on the rows) as the rows are passed. Only possible where there is a single candidate
+     * class. Where the filter can be evaluated on all rows up to the end of the range, the rows after it aren't visited,
+     * and the range is applied.
+     * @param mapper Mapper for the query filter and ordering
+     * @param fromIncl Start of the range (inclusive)
+     * @param toExcl End of the range (exclusive), or Long.MAX_VALUE if no end
+     * @return Whether the rows were loaded in order (otherwise an index couldn't be used)
+     */
+    protected boolean loadRowsInIndexOrder(QueryToODFMapper mapper, long fromIncl, long toExcl)
+    {
+        if (cmds.size() != 1)
+        {
+            return false;
+        }
+
+        AbstractClassMetaData cmd = cmds.iterator().next();
+        Table table = getTableForClass(cmd, spreadsheetDoc);
+        RowFilter filter = (mapper.hasFilter() ? mapper.getRowFilter(cmd, table) : null);
+        boolean filtered = mapper.hasFilter();
+        List<OdfTableRow> rows = new ArrayList<>();
+        boolean[] decided = new boolean[] {!filtered || (filter != null && filter.isComplete())};
+        boolean ordered = mapper.forEachRowInIndexOrder(cmd, table, spreadsheetDoc, row ->
+        {
+            Boolean matches = (filtered ? (filter != null ? filter.evaluate(row) : null) : Boolean.TRUE);
+            if (matches == null)
+            {
+                // Undecided, so include it and leave the in-memory evaluator to decide
+                decided[0] = false;
+            }
+            if (matches == null || matches.booleanValue())
+            {
+                rows.add(row);
+            }
+            return !decided[0] || rows.size() < toExcl;
+        });
+        if (!ordered)
+        {
+            return false;
+        }
+
+        List<AbstractClassMetaData> rowCmds = new ArrayList<>(Collections.nCopies(rows.size(), cmd));
+        if (decided[0] && (fromIncl > 0 || toExcl != Long.MAX_VALUE))
+        {
+            int from = (int)Math.min(fromIncl, rows.size());
+            int to = (int)Math.min(toExcl, rows.size());
+            loadedRows = new ArrayList<>(rows.subList(from, to));
+            loadedRowCmds = new ArrayList<>(rowCmds.subList(from, to));
+            rangeApplied = true;
+        }
+        else
+        {
+            loadedRows = rows;
+            loadedRowCmds = rowCmds;
+        }
+        filterComplete = filtered && decided[0];
+        return true;
+    }
+
+    /**
+     * Method to load the rows that can match the filter using the indexes of members of the candidate classes, evaluating
+     * the filter (as far as it can be evaluated on the rows) on just those rows. Only possible where every candidate class
+     * has an index that can be used for the filter. The range is applied where the filter can be evaluated completely.
+     * @param mapper Mapper for the query filter
+     * @param fromIncl Start of the range (inclusive)
+     * @param toExcl End of the range (exclusive), or Long.MAX_VALUE if no end
+     * @return Whether the rows were loaded (otherwise an index couldn't be used)
+     */
+    protected boolean loadRowsUsingIndexes(QueryToODFMapper mapper, long fromIncl, long toExcl)
+    {
+        List<List<OdfTableRow>> indexedRowsPerClass = new ArrayList<>();
+        List<RowFilter> filterPerClass = new ArrayList<>();
         Iterator<AbstractClassMetaData> cmdIter = cmds.iterator();
-        ODFStoreManager storeMgr = (ODFStoreManager)ec.getStoreManager();
         while (cmdIter.hasNext())
         {
             AbstractClassMetaData cmd = cmdIter.next();
-            OdfSpreadsheetDocument spreadsheetDoc = (OdfSpreadsheetDocument)mconn.getConnection();
+            Table table = getTableForClass(cmd, spreadsheetDoc);
+            List<OdfTableRow> indexedRows = mapper.getRowsUsingIndexes(cmd, table, spreadsheetDoc);
+            if (indexedRows == null)
+            {
+                return false;
+            }
+            indexedRowsPerClass.add(indexedRows);
+            filterPerClass.add(mapper.getRowFilter(cmd, table));
+        }
+
+        List<OdfTableRow> rows = new ArrayList<>();
+        List<AbstractClassMetaData> rowCmds = new ArrayList<>();
+        boolean complete = true;
+        cmdIter = cmds.iterator();
+        for (int i=0;i<indexedRowsPerClass.size();i++)
+        {
+            AbstractClassMetaData cmd = cmdIter.next();
+            RowFilter filter = filterPerClass.get(i);
+            if (filter == null || !filter.isComplete())
+            {
+                complete = false;
+            }
+            for (OdfTableRow row : indexedRowsPerClass.get(i))
+            {
+                Boolean matches = (filter != null ? filter.evaluate(row) : null);
+                if (matches == null)
+                {
+                    // Undecided, so include it and leave the in-memory evaluator to decide
+                    complete = false;
+                }
+                if (matches == null || matches.booleanValue())
+                {
+                    rows.add(row);
+                    rowCmds.add(cmd);
+                }
+            }
+        }
 
-            StoreData sd = storeMgr.getStoreDataForClass(cmd.getFullClassName());
-            if (sd == null)
+        if (complete && (fromIncl > 0 || toExcl != Long.MAX_VALUE))
+        {
+            // Apply the range to the matching rows
+            int from = (int)Math.min(fromIncl, rows.size());
+            int to = (int)Math.min(toExcl, rows.size());
+            rows = new ArrayList<>(rows.subList(from, to));
+            rowCmds = new ArrayList<>(rowCmds.subList(from, to));
+            rangeApplied = true;
+        }
+        loadedRows = rows;
+        loadedRowCmds = rowCmds;
+        filterComplete = complete;
+        return true;
+    }
+
+    /**
+     * Method to load the rows in the range, skipping the rows before the start of the range and stopping at the end
+     * of the range. Only possible where the filter (if any) can be evaluated completely on the rows.
+     * @param mapper Mapper for the query filter
+     * @param fromIncl Start of the range (inclusive)
+     * @param toExcl End of the range (exclusive)
+     * @return Whether the rows were loaded (otherwise the filter couldn't be decided on the rows)
+     */
+    protected boolean loadRowsInRange(QueryToODFMapper mapper, long fromIncl, long toExcl)
+    {
+        List<OdfTableRow> rows = new ArrayList<>();
+        List<AbstractClassMetaData> rowCmds = new ArrayList<>();
+        long number = 0;
+        Iterator<AbstractClassMetaData> cmdIter = cmds.iterator();
+        while (cmdIter.hasNext() && number < toExcl)
+        {
+            AbstractClassMetaData cmd = cmdIter.next();
+            Table table = getTableForClass(cmd, spreadsheetDoc);
+            RowFilter filter = null;
+            if (mapper.hasFilter())
             {
-                storeMgr.manageClasses(new String[] {cmd.getFullClassName()}, ec.getClassLoaderResolver(), spreadsheetDoc);
-                sd = storeMgr.getStoreDataForClass(cmd.getFullClassName());
+                filter = mapper.getRowFilter(cmd, table);
+                if (filter == null || !filter.isComplete())
+                {
+                    return false;
+                }
             }
-            Table table = sd.getTable();
-            String sheetName = table.getName();
-            OdfTable worksheet = spreadsheetDoc.getTableByName(sheetName);
+
+            // Start at the first data row (after any header rows)
+            OdfTable worksheet = spreadsheetDoc.getTableByName(table.getName());
+            int rowCount = (worksheet != null ? worksheet.getRowCount() : 0);
+            int rowPosition = (worksheet != null ? ODFUtils.getHeaderRowCount(ec.getStoreManager(), spreadsheetDoc, worksheet) : 0);
+            OdfTableRow row = (rowPosition < rowCount ? worksheet.getRowByIndex(rowPosition) : null);
+            while (row != null && number < toExcl)
+            {
+                Boolean matches = (filter != null ? filter.evaluate(row) : Boolean.TRUE);
+                if (matches == null)
+                {
+                    return false;
+                }
+                else if (matches.booleanValue())
+                {
+                    if (number >= fromIncl)
+                    {
+                        rows.add(row);
+                        rowCmds.add(cmd);
+                    }
+                    number++;
+                }
+                rowPosition++;
+                row = (rowPosition < rowCount ? row.getNextRow() : null);
+            }
+        }
+
+        loadedRows = rows;
+        loadedRowCmds = rowCmds;
+        filterComplete = true;
+        return true;
+    }
+
+    /**
+     * Method to count the instances per class. Where filtering, scans the associated worksheets, excluding rows not
+     * matching the filter (as far as it can be evaluated on the rows), and recording the position of every instance.
+     * Otherwise uses the number of data rows held for each worksheet. Where parallel scans are enabled (see
+     * {@link ODFStoreManager#getParallelRowScanner()}), the filter is evaluated on the rows of large worksheets in
+     * parallel, with the worksheets of all candidate classes being scanned at the same time.
+     * @param mapper Mapper for the query filter (or null if not filtering)
+     */
+    protected void countRows(QueryToODFMapper mapper)
+    {
+        numberInstancesPerClass = new ArrayList<Integer>();
+        rowPositionsPerClass = new ArrayList<int[]>();
+        filterComplete = (mapper != null);
+        ParallelRowScanner scanner = ((ODFStoreManager)ec.getStoreManager()).getParallelRowScanner();
+
+        // Find the rows of the worksheet of each class, starting parallel scans of those being filtered where worthwhile
+        int numClasses = cmds.size();
+        OdfTable[] worksheets = new OdfTable[numClasses];
+        RowFilter[] filters = new RowFilter[numClasses];
+        List<OdfTableRow>[] rowsPerClass = new List[numClasses];
+        int[] firstRowPositions = new int[numClasses];
+        ParallelRowScanner.Scan[] scans = new ParallelRowScanner.Scan[numClasses];
+        Iterator<AbstractClassMetaData> cmdIter = cmds.iterator();
+        for (int i=0;i<numClasses;i++)
+        {
+            AbstractClassMetaData cmd = cmdIter.next();
+            Table table = getTableForClass(cmd, spreadsheetDoc);
+            worksheets[i] = spreadsheetDoc.getTableByName(table.getName());
+            if (mapper != null)
+            {
+                filters[i] = mapper.getRowFilter(cmd, table);
+                if (filters[i] == null || !filters[i].isComplete())
+                {
+                    filterComplete = false;
+                }
+            }
+            if (filters[i] != null && worksheets[i] != null)
+            {
+                // Start at the first data row (after any header rows)
+                rowsPerClass[i] = worksheets[i].getRowList();
+                firstRowPositions[i] = Math.min(ODFUtils.getHeaderRowCount(ec.getStoreManager(), spreadsheetDoc, worksheets[i]), rowsPerClass[i].size());
+                if (scanner != null && scanner.isParallel(rowsPerClass[i].size() - firstRowPositions[i]))
+                {
+                    scans[i] = scanner.submit(rowsPerClass[i], firstRowPositions[i], filters[i]);
+                }
+            }
+        }
+        for (ParallelRowScanner.Scan scan : scans)
+        {
+            if (scan != null)
+            {
+                scan.join();
+            }
+        }
+
+        for (int i=0;i<numClasses;i++)
+        {
+            if (filters[i] == null)
+            {
+                // Every data row is an instance, so use the row count held for the worksheet, and find rows by position
+                numberInstancesPerClass.add(worksheets[i] != null ? ODFUtils.getDataRowCount(ec.getStoreManager(), spreadsheetDoc, worksheets[i]) : 0);
+                rowPositionsPerClass.add(null);
+                continue;
+            }
+
             int size = 0;
-            if (worksheet != null)
+            int[] rowPositions = new int[0];
+            if (worksheets[i] != null)
             {
-                List<OdfTableRow> rows = worksheet.getRowList();
-                Iterator<OdfTableRow> rowIter = rows.iterator();
+                List<OdfTableRow> rows = rowsPerClass[i];
+                rowPositions = new int[rows.size()];
+                int rowPosition = firstRowPositions[i];
+                Iterator<OdfTableRow> rowIter = rows.listIterator(rowPosition);
                 while (rowIter.hasNext())
                 {
                     OdfTableRow row = rowIter.next();
-                    OdfStyle style = row.getDefaultCellStyle();
-                    String styleName = (style != null ? style.getStyleNameAttribute() : null);
-                    if (styleName != null && styleName.equals("DN_Headers"))
+                    boolean include = true;
+                    Boolean matches = (scans[i] != null ? scans[i].getResult(rowPosition) : filters[i].evaluate(row));
+                    if (matches == null)
                     {
-                        // Skip header row(s)
+                        // Undecided, so include it and leave the in-memory evaluator to decide
+                        filterComplete = false;
                     }
                     else
                     {
-                        size++;
+                        include = matches.booleanValue();
+                    }
+                    if (include)
+                    {
+                        rowPositions[size++] = rowPosition;
                     }
+                    rowPosition++;
                 }
             }
             numberInstancesPerClass.add(size);
+            rowPositionsPerClass.add(rowPositions);
         }
     }
 
+    /**
+     * Convenience method to return the table for the specified class, managing the class if not yet managed.
+     * @param cmd Metadata for the class
+     * @param spreadsheetDoc The spreadsheet document
+     * @return The table
+     */
+    protected Table getTableForClass(AbstractClassMetaData cmd, OdfSpreadsheetDocument spreadsheetDoc)
+    {
+        ODFStoreManager storeMgr = (ODFStoreManager)ec.getStoreManager();
+        StoreData sd = storeMgr.getStoreDataForClass(cmd.getFullClassName());
+        if (sd == null)
+        {
+            storeMgr.manageClasses(new String[] {cmd.getFullClassName()}, ec.getClassLoaderResolver(), spreadsheetDoc);
+            sd = storeMgr.getStoreDataForClass(cmd.getFullClassName());
+        }
+        return sd.getTable();
+    }
+
+    /**
+     * Accessor for whether the query range was applied when scanning the rows, so this list holds only the
+     * instances in the range.
+     * @return Whether the range was applied
+     */
+    public boolean isRangeApplied()
+    {
+        return rangeApplied;
+    }
+
+    /**
+     * Accessor for whether the query ordering was applied when finding the rows, so this list holds the instances in
+     * the query ordering.
+     * @return Whether the ordering was applied
+     */
+    public boolean isOrderingApplied()
+    {
+        return orderingApplied;
+    }
+
+    /**
+     * Accessor for whether the query filter was evaluated fully on the rows of all candidate classes, so the
+     * instances in this list all match the filter.
+     * @return Whether the filter is complete
+     */
+    public boolean isFilterComplete()
+    {
+        return filterComplete;
+    }
+
     /* (non-Javadoc)
      * @see org.datanucleus.store.query.AbstractLazyLoadList#getSize()
      */
     @Override
     protected int getSize()
     {
+        if (loadedRows != null)
+        {
+            return loadedRows.size();
+        }
+
         int size = 0;
 
         Iterator<Integer> numberIter = numberInstancesPerClass.iterator();
@@ -147,121 +590,125 @@ public class ODFCandidateList extends AbstractCandidateLazyLoadList
             throw new NoSuchElementException();
         }
 
-        OdfSpreadsheetDocument spreadsheetDoc = (OdfSpreadsheetDocument)mconn.getConnection();
-        Iterator<AbstractClassMetaData> cmdIter = cmds.iterator();
-        Iterator<Integer> numIter = numberInstancesPerClass.iterator();
-        int first = 0;
-        int last = -1;
-        while (cmdIter.hasNext())
+        // The connection may have been released by now, so hold the lock of the document while reading its rows
+        if (cachedDoc != null)
         {
-            final AbstractClassMetaData cmd = cmdIter.next();
-            int number = numIter.next();
-            last = first+number;
-
-            if (index >= first && index < last)
+            cachedDoc.lock();
+        }
+        try
+        {
+            if (loadedRows != null)
             {
-                // Object is of this candidate type, so find the object
+                AbstractClassMetaData cmd = loadedRowCmds.get(index);
                 Table table = ec.getStoreManager().getStoreDataForClass(cmd.getFullClassName()).getTable();
-                String sheetName = table.getName();
-                OdfTable worksheet = spreadsheetDoc.getTableByName(sheetName);
-                List<OdfTableRow> rows = worksheet.getRowList();
-                int current = first;
-                Iterator<OdfTableRow> rowIter = rows.iterator();
-                while (rowIter.hasNext())
-                {
-                    final OdfTableRow row = rowIter.next();
-                    OdfStyle style = row.getDefaultCellStyle();
-                    String styleName = (style != null ? style.getStyleNameAttribute() : null);
-                    if (styleName != null && styleName.equals("DN_Headers"))
-                    {
-                        // Skip header row(s)
-                    }
-                    else
-                    {
-                        if (current == index)
-                        {
-                            // This row equates to the required index
-                            final FieldManager fm = new FetchFieldManager(ec, cmd, row, table);
-                            int[] fpFieldNums = fetchPlan.getFetchPlanForClass(cmd).getMemberNumbers();
-                            if (cmd.getIdentityType() == IdentityType.APPLICATION)
-                            {
-                                Object id = IdentityUtils.getApplicationIdentityForResultSetRow(ec, cmd, null, false, fm);
-                                return ec.findObject(id, new FieldValues()
-                                {
-                                    public void fetchFields(DNStateManager sm)
-                                    {
-                                        sm.replaceFields(fpFieldNums, fm);
-                                    }
-                                    public void fetchNonLoadedFields(DNStateManager sm)
-                                    {
-                                        sm.replaceNonLoadedFields(fpFieldNums, fm);
-                                    }
-                                    public FetchPlan getFetchPlanForLoading()
-                                    {
-                                        return null;
-                                    }
-                                }, null, ignoreCache, false);
-                            }
-                            else if (cmd.getIdentityType() == IdentityType.DATASTORE)
-                            {
-                                int idIndex = table.getSurrogateColumn(SurrogateColumnType.DATASTORE_ID).getPosition();
-                                OdfTableCell idCell = row.getCellByIndex(idIndex);
-                                Object idKey = null;
-                                if (ODFUtils.isOfficeValueTypeConsistent(idCell, OfficeValueTypeAttribute.Value.STRING))
-                                {
-                                    idKey = idCell.getStringValue();
-                                }
-                                else
-                                {
-                                    idKey = Long.valueOf(idCell.getDoubleValue().longValue());
-                                }
-                                Object id = ec.getNucleusContext().getIdentityManager().getDatastoreId(cmd.getFullClassName(), idKey);
-                                return ec.findObject(id, new FieldValues()
-                                {
-                                    public void fetchFields(DNStateManager sm)
-                                    {
-                                        sm.replaceFields(fpFieldNums, fm);
-                                    }
-                                    public void fetchNonLoadedFields(DNStateManager sm)
-                                    {
-                                        sm.replaceNonLoadedFields(fpFieldNums, fm);
-                                    }
-                                    public FetchPlan getFetchPlanForLoading()
-                                    {
-                                        return null;
-                                    }
-                                }, null, ignoreCache, false);
-                            }
-                            else
-                            {
-                                Object id = new SCOID(cmd.getFullClassName());
-                                return ec.findObject(id, new FieldValues()
-                                {
-                                    public void fetchFields(DNStateManager sm)
-                                    {
-                                        sm.replaceFields(fpFieldNums, fm);
-                                    }
-                                    public void fetchNonLoadedFields(DNStateManager sm)
-                                    {
-                                        sm.replaceNonLoadedFields(fpFieldNums, fm);
-                                    }
-                                    public FetchPlan getFetchPlanForLoading()
-                                    {
-                                        return null;
-                                    }
-                                }, null, ignoreCache, false);
-                            }
-                        }
-
-                        current++;
-                    }
-                }
+                return getObjectForRow(cmd, table, loadedRows.get(index));
+            }
+
+            // Find the class of this index, and the index within the instances of that class
+            Iterator<AbstractClassMetaData> cmdIter = cmds.iterator();
+            AbstractClassMetaData cmd = cmdIter.next();
+            int classNumber = 0;
+            int instanceIndex = index;
+            while (instanceIndex >= numberInstancesPerClass.get(classNumber))
+            {
+                instanceIndex -= numberInstancesPerClass.get(classNumber);
+                classNumber++;
+                cmd = cmdIter.next();
+            }
+
+            Table table = ec.getStoreManager().getStoreDataForClass(cmd.getFullClassName()).getTable();
+            if (classNumber != cursorClassNumber)
+            {
+                // Move the cursor to the worksheet of this class
+                OdfTable worksheet = spreadsheetDoc.getTableByName(table.getName());
+                cursorRows = worksheet.getRowList();
+                cursorFirstRowPosition = ODFUtils.getHeaderRowCount(ec.getStoreManager(), spreadsheetDoc, worksheet);
+                cursorClassNumber = classNumber;
+            }
+
+            // Every data row is an instance when not filtered, otherwise the position of every matching row was recorded
+            int[] rowPositions = rowPositionsPerClass.get(classNumber);
+            int rowPosition = (rowPositions != null ? rowPositions[instanceIndex] : cursorFirstRowPosition + instanceIndex);
+            return getObjectForRow(cmd, table, cursorRows.get(rowPosition));
+        }
+        finally
+        {
+            if (cachedDoc != null)
+            {
+                cachedDoc.unlock();
+            }
+        }
+    }
+
+    /**
+     * Method to return the object represented by the specified row of the worksheet.
+     * @param cmd Metadata for the class of the object
+     * @param table The table for the class
+     * @param row The row
+     * @return The object
+     */
+    protected Object getObjectForRow(AbstractClassMetaData cmd, Table table, OdfTableRow row)
+    {
+        return getObjectForRow(ec, fetchPlan, ignoreCache, cmd, table, row, rowReader);
+    }
+
+    /**
+     * Method to return the object represented by the specified row of the worksheet.
+     * @param ec execution context
+     * @param fetchPlan FetchPlan for retrieval
+     * @param ignoreCache Whether to ignore the cache on object retrieval
+     * @param cmd Metadata for the class of the object
+     * @param table The table for the class
+     * @param row The row
+     * @param rowReader Reader of the cells, reused for the rows of the scan
+     * @return The object
+     */
+    static Object getObjectForRow(ExecutionContext ec, FetchPlan fetchPlan, boolean ignoreCache, AbstractClassMetaData cmd, Table table, OdfTableRow row,
+            RowReader rowReader)
+    {
+        final FieldManager fm = new FetchFieldManager(ec, cmd, row, table, rowReader);
+        int[] fpFieldNums = fetchPlan.getFetchPlanForClass(cmd).getMemberNumbers();
+        FieldValues fv = new FieldValues()
+        {
+            public void fetchFields(DNStateManager sm)
+            {
+                sm.replaceFields(fpFieldNums, fm);
+            }
+            public void fetchNonLoadedFields(DNStateManager sm)
+            {
+                sm.replaceNonLoadedFields(fpFieldNums, fm);
+            }
+            public FetchPlan getFetchPlanForLoading()
+            {
+                return null;
+            }
+        };
+
+        if (cmd.getIdentityType() == IdentityType.APPLICATION)
+        {
+            Object id = IdentityUtils.getApplicationIdentityForResultSetRow(ec, cmd, null, false, fm);
+            return ec.findObject(id, fv, null, ignoreCache, false);
+        }
+        else if (cmd.getIdentityType() == IdentityType.DATASTORE)
+        {
+            int idIndex = table.getSurrogateColumn(SurrogateColumnType.DATASTORE_ID).getPosition();
+            OdfTableCell idCell = row.getCellByIndex(idIndex);
+            Object idKey = null;
+            if (ODFUtils.isOfficeValueTypeConsistent(idCell, OfficeValueTypeAttribute.Value.STRING))
+            {
+                idKey = idCell.getStringValue();
             }
             else
             {
-                first += number;
+                idKey = Long.valueOf(idCell.getDoubleValue().longValue());
             }
+            Object id = ec.getNucleusContext().getIdentityManager().getDatastoreId(cmd.getFullClassName(), idKey);
+            return ec.findObject(id, fv, null, ignoreCache, false);
+        }
+        else
+        {
+            Object id = new SCOID(cmd.getFullClassName());
+            return ec.findObject(id, fv, null, ignoreCache, false);
         }
-        return null;
     }
-}
\ No newline at end of file
+}
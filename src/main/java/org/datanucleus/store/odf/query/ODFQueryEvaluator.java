@@ -0,0 +1,1614 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.store.odf.query;
+
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.datanucleus.ClassLoaderResolver;
+import org.datanucleus.ExecutionContext;
+import org.datanucleus.PropertyNames;
+import org.datanucleus.api.ApiAdapter;
+import org.datanucleus.exceptions.NucleusUserException;
+import org.datanucleus.metadata.AbstractClassMetaData;
+import org.datanucleus.metadata.AbstractMemberMetaData;
+import org.datanucleus.metadata.FieldPersistenceModifier;
+import org.datanucleus.metadata.MetaDataManager;
+import org.datanucleus.metadata.MetaDataUtils;
+import org.datanucleus.metadata.RelationType;
+import org.datanucleus.metadata.VersionMetaData;
+import org.datanucleus.query.compiler.QueryCompilation;
+import org.datanucleus.query.expression.DyadicExpression;
+import org.datanucleus.query.expression.Expression;
+import org.datanucleus.query.expression.InvokeExpression;
+import org.datanucleus.query.expression.Literal;
+import org.datanucleus.query.expression.OrderExpression;
+import org.datanucleus.query.expression.ParameterExpression;
+import org.datanucleus.query.expression.PrimaryExpression;
+import org.datanucleus.state.DNStateManager;
+import org.datanucleus.store.StoreData;
+import org.datanucleus.store.connection.ManagedConnection;
+import org.datanucleus.store.odf.ODFStoreManager;
+import org.datanucleus.store.odf.ODFUtils;
+import org.datanucleus.store.odf.fieldmanager.RowReader;
+import org.datanucleus.store.odf.fieldmanager.StoreFieldManager;
+import org.datanucleus.store.odf.index.MemberIndex;
+import org.datanucleus.store.odf.index.RowIndex;
+import org.datanucleus.store.query.Query;
+import org.datanucleus.store.query.Query.QueryType;
+import org.datanucleus.store.schema.table.SurrogateColumnType;
+import org.datanucleus.store.schema.table.Table;
+import org.datanucleus.util.NucleusLogger;
+import org.odftoolkit.odfdom.doc.OdfSpreadsheetDocument;
+import org.odftoolkit.odfdom.doc.table.OdfTable;
+import org.odftoolkit.odfdom.doc.table.OdfTableCell;
+import org.odftoolkit.odfdom.doc.table.OdfTableRow;
+
+/**
+ * Evaluator for queries (or parts of queries) that can be evaluated directly on the cells of the worksheet(s) of the
+ * candidate class(es), without instantiating any objects. Each "execute" method returns null when the query is not
+ * suitable, in which case the caller should use the normal route of candidates plus in-memory evaluation.
+ * Supports
+ * <ul>
+ * <li>Result clauses made up solely of aggregates (count, sum, min, max, avg) of the candidate or of its basic numeric
+ * members, with no grouping, having, distinct or result class.</li>
+ * <li>Result clauses made up solely of basic members of the candidate (projections), with optional ordering by
+ * basic members and range, and no grouping, having or distinct.</li>
+ * <li>Bulk updates setting basic members of the candidate to values derived from literals, parameters and basic
+ * members of the candidate.</li>
+ * <li>Bulk deletes of candidates that have no relations, removing the matching rows in blocks.</li>
+ * </ul>
+ * The filter (if any) must be evaluated completely on the rows by {@link QueryToODFMapper}. Where the filter can use
+ * an index of a member of the candidate, only the rows found using the index are evaluated.
+ * <p>
+ * Also provides a streamed result of the candidates where requested (see {@link #executeStreamingQuery(Predicate)}),
+ * whose objects are instantiated as the result is iterated.
+ */
+public class ODFQueryEvaluator
+{
+    final Query query;
+
+    final ExecutionContext ec;
+
+    final QueryCompilation compilation;
+
+    final ManagedConnection mconn;
+
+    final QueryToODFMapper mapper;
+
+    /** Description of what was evaluated in the datastore, when a query was evaluated here. */
+    String datastoreEvaluation = null;
+
+    /** Reader of the cells of the rows, reused for each row read when updating/deleting rows. */
+    final RowReader rowReader = new RowReader();
+
+    /**
+     * Constructor.
+     * @param query The query
+     * @param compilation The generic query compilation
+     * @param parameters Parameter values keyed by name/position
+     * @param mconn Connection to the datastore
+     */
+    public ODFQueryEvaluator(Query query, QueryCompilation compilation, Map parameters, ManagedConnection mconn)
+    {
+        this.query = query;
+        this.ec = query.getExecutionContext();
+        this.compilation = compilation;
+        this.mconn = mconn;
+        this.mapper = new QueryToODFMapper(compilation, parameters, ec);
+    }
+
+    /**
+     * Accessor for a description of what was evaluated in the datastore by the last successful "execute" method.
+     * @return The description, or null if nothing was evaluated in the datastore
+     */
+    public String getDatastoreEvaluation()
+    {
+        return datastoreEvaluation;
+    }
+
+    /**
+     * Accessor for the mapper of the query filter onto the rows of the worksheets.
+     * @return The mapper
+     */
+    public QueryToODFMapper getMapper()
+    {
+        return mapper;
+    }
+
+    /**
+     * Method to flush the changes of the execution context not yet written to the datastore, for use before evaluating
+     * anything of the query on the cells of the worksheets. Where the query doesn't ignore the cache yet the changes weren't
+     * flushed before execution (datastore operations being delayed, as with an optimistic transaction), the in-memory
+     * evaluation would see the changed objects, so the rows must be brought up to date to give the same result.
+     */
+    public void flushPendingChanges()
+    {
+        if (!query.getIgnoreCache() && ec.isDelayDatastoreOperationsEnabled())
+        {
+            ec.flushInternal(false);
+        }
+    }
+
+    /**
+     * Accessor for whether the range of the query can be applied to the candidates when scanning the rows, meaning
+     * the query has a range, and has no grouping, distinct, or result other than basic members. Where the query has
+     * an ordering the range is only applied if the ordering is applied to the candidates too.
+     * @return Whether the range can be applied to the candidates
+     */
+    public boolean canApplyRangeToCandidates()
+    {
+        return isRangeSet() && canApplyToCandidates();
+    }
+
+    /**
+     * Accessor for whether the ordering of the query can be applied to the candidates when finding the rows, meaning
+     * the query has an ordering, and has no grouping, distinct, or result other than basic members. The ordering is only
+     * applied where there is an index of the member being ordered by.
+     * @return Whether the ordering can be applied to the candidates
+     */
+    public boolean canApplyOrderingToCandidates()
+    {
+        return compilation.getExprOrdering() != null && canApplyToCandidates();
+    }
+
+    /**
+     * Accessor for whether the result of the query can be streamed from the rows (see {@link ODFStreamingResult}), meaning
+     * streaming was requested via the query extension {@link ODFStreamingResult#EXTENSION_STREAMING}, and the query is a
+     * non-unique select of the candidate objects, with no result clause, result class, ordering, grouping or distinct.
+     * @return Whether the result can be streamed
+     */
+    public boolean canStreamCandidates()
+    {
+        if (!query.getBooleanExtensionProperty(ODFStreamingResult.EXTENSION_STREAMING, false))
+        {
+            return false;
+        }
+        return query.getType() == QueryType.SELECT && !query.isUnique() && query.getResultClass() == null && compilation.getExprResult() == null &&
+            compilation.getExprOrdering() == null && compilation.getExprGrouping() == null && compilation.getExprHaving() == null && !compilation.getResultDistinct();
+    }
+
+    /**
+     * Method to return the streamed result of the query, decoding the rows of the candidate worksheet(s) as the result is
+     * iterated. The range of the query is applied as the rows are passed.
+     * @param inMemoryFilter Filter for objects whose row can't be decided by the query filter on its cells
+     * @return The result, or null if the query is not suitable for streaming
+     */
+    public List executeStreamingQuery(Predicate<Object> inMemoryFilter)
+    {
+        if (!canStreamCandidates())
+        {
+            return null;
+        }
+
+        flushPendingChanges();
+        List<AbstractClassMetaData> cmds = MetaDataUtils.getMetaDataForCandidates(query.getCandidateClass(), query.isSubclasses(), ec);
+        datastoreEvaluation = "Result streamed from the rows of the candidate worksheet(s)";
+        if (NucleusLogger.QUERY.isDebugEnabled())
+        {
+            NucleusLogger.QUERY.debug(datastoreEvaluation + " for query " + query);
+        }
+        return new ODFStreamingResult(cmds, ec, mconn, query.getIgnoreCache(), query.getFetchPlan(), mapper, inMemoryFilter,
+            query.getRangeFromIncl(), query.getRangeToExcl(), query.getBooleanExtensionProperty(ODFStreamingResult.EXTENSION_STREAMING_EVICT, false));
+    }
+
+    private boolean canApplyToCandidates()
+    {
+        if (query.getType() != QueryType.SELECT || compilation.getExprGrouping() != null || compilation.getExprHaving() != null || compilation.getResultDistinct())
+        {
+            return false;
+        }
+        Expression[] resultExprs = compilation.getExprResult();
+        if (resultExprs != null)
+        {
+            for (Expression resultExpr : resultExprs)
+            {
+                if (!(resultExpr instanceof PrimaryExpression))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method to execute a query whose result is solely aggregates, in a single pass over the rows of the candidate worksheet(s).
+     * @return The results (a single row, being the value of the single aggregate or an Object[] of aggregate values),
+     *     or null if the query is not suitable for evaluation in this way
+     */
+    public List executeAggregateQuery()
+    {
+        Expression[] resultExprs = compilation.getExprResult();
+        if (query.getType() != QueryType.SELECT || resultExprs == null || resultExprs.length == 0 || compilation.getExprGrouping() != null ||
+            compilation.getExprHaving() != null || compilation.getResultDistinct() || query.getResultClass() != null || isRangeSet())
+        {
+            return null;
+        }
+
+        // Check that all result expressions are aggregates of the candidate or of a basic member
+        Aggregate[] aggregates = new Aggregate[resultExprs.length];
+        for (int i=0;i<resultExprs.length;i++)
+        {
+            aggregates[i] = Aggregate.getAggregateForExpression(resultExprs[i], compilation.getCandidateAlias());
+            if (aggregates[i] == null)
+            {
+                return null;
+            }
+        }
+
+        // The values are read from the cells, so they must include any changes not yet flushed
+        flushPendingChanges();
+
+        List<AbstractClassMetaData> cmds = MetaDataUtils.getMetaDataForCandidates(query.getCandidateClass(), query.isSubclasses(), ec);
+        OdfSpreadsheetDocument spreadsheetDoc = (OdfSpreadsheetDocument)mconn.getConnection();
+        for (AbstractClassMetaData cmd : cmds)
+        {
+            Table table = getTableForClass(cmd, spreadsheetDoc);
+            RowFilter filter = getCompleteRowFilter(cmd, table);
+            if (filter == RowFilter.UNKNOWN)
+            {
+                return null;
+            }
+
+            // Find the column (and type) of the member for each aggregate in this table
+            int[] positions = new int[aggregates.length];
+            Class[] types = new Class[aggregates.length];
+            for (int i=0;i<aggregates.length;i++)
+            {
+                if (aggregates[i].memberName != null)
+                {
+                    AbstractMemberMetaData mmd = mapper.getMemberForName(aggregates[i].memberName, cmd, table);
+                    if (mmd == null || !aggregates[i].isSupportedType(mmd.getType()))
+                    {
+                        return null;
+                    }
+                    positions[i] = mapper.getColumnPosition(mmd, table);
+                    types[i] = mmd.getType();
+                }
+            }
+
+            boolean decided = scanRows(cmd, table, filter, row ->
+            {
+                for (int i=0;i<aggregates.length;i++)
+                {
+                    if (aggregates[i].memberName == null)
+                    {
+                        aggregates[i].addCandidate();
+                    }
+                    else
+                    {
+                        aggregates[i].addValue(ODFUtils.getBasicMemberValueForCell(types[i], row.getCellByIndex(positions[i])));
+                    }
+                }
+                return true;
+            });
+            if (!decided)
+            {
+                return null;
+            }
+        }
+
+        List results = new ArrayList(1);
+        if (aggregates.length == 1)
+        {
+            results.add(aggregates[0].getResult());
+        }
+        else
+        {
+            Object[] resultRow = new Object[aggregates.length];
+            for (int i=0;i<aggregates.length;i++)
+            {
+                resultRow[i] = aggregates[i].getResult();
+            }
+            results.add(resultRow);
+        }
+        datastoreEvaluation = "Aggregates evaluated on the cells of the candidate worksheet(s)";
+        if (NucleusLogger.QUERY.isDebugEnabled())
+        {
+            NucleusLogger.QUERY.debug(datastoreEvaluation + " for query " + query);
+        }
+        return results;
+    }
+
+    /**
+     * Method to execute a query whose result is solely basic members of the candidate, reading the values from the
+     * cells of the rows of the candidate worksheet(s), without instantiating any objects.
+     * Supports ordering by basic members of the candidate, and range. Where ordered by a single indexed member the rows
+     * are read in that order using the index, so aren't sorted, and the rows after the end of any range aren't read. The result class (if specified) must be Object[],
+     * or (for a single result) a type that the result value is an instance of; other result classes are left to the
+     * in-memory evaluator.
+     * @return The results (the value of the single result expression, or an Object[] of values, per row), or null if
+     *     the query is not suitable for evaluation in this way
+     */
+    public List executeProjectionQuery()
+    {
+        Expression[] resultExprs = compilation.getExprResult();
+        if (query.getType() != QueryType.SELECT || resultExprs == null || resultExprs.length == 0 || compilation.getExprGrouping() != null ||
+            compilation.getExprHaving() != null || compilation.getResultDistinct())
+        {
+            return null;
+        }
+        for (Expression resultExpr : resultExprs)
+        {
+            if (!(resultExpr instanceof PrimaryExpression))
+            {
+                return null;
+            }
+        }
+        Expression[] orderExprs = compilation.getExprOrdering();
+        int numOrders = (orderExprs != null ? orderExprs.length : 0);
+        for (int i=0;i<numOrders;i++)
+        {
+            if (!(orderExprs[i] instanceof OrderExpression) || !(orderExprs[i].getLeft() instanceof PrimaryExpression))
+            {
+                return null;
+            }
+        }
+        Class resultClass = query.getResultClass();
+        if (resultClass != null && resultClass != Object[].class && resultExprs.length > 1)
+        {
+            return null;
+        }
+
+        // The values are read from the cells, so they must include any changes not yet flushed
+        flushPendingChanges();
+
+        // Read the values of the result (followed by ordering) members from the matching rows
+        int numValues = resultExprs.length + numOrders;
+        List<Object[]> valueRows = new ArrayList<>();
+        List<AbstractClassMetaData> cmds = MetaDataUtils.getMetaDataForCandidates(query.getCandidateClass(), query.isSubclasses(), ec);
+        OdfSpreadsheetDocument spreadsheetDoc = (OdfSpreadsheetDocument)mconn.getConnection();
+        boolean orderedByIndex = false;
+        for (AbstractClassMetaData cmd : cmds)
+        {
+            Table table = getTableForClass(cmd, spreadsheetDoc);
+            RowFilter filter = getCompleteRowFilter(cmd, table);
+            if (filter == RowFilter.UNKNOWN)
+            {
+                return null;
+            }
+
+            int[] positions = new int[numValues];
+            Class[] types = new Class[numValues];
+            for (int i=0;i<numValues;i++)
+            {
+                Expression expr = (i < resultExprs.length ? resultExprs[i] : orderExprs[i-resultExprs.length].getLeft());
+                AbstractMemberMetaData mmd = mapper.getMemberForPrimary((PrimaryExpression)expr, cmd, table);
+                if (mmd == null)
+                {
+                    return null;
+                }
+                positions[i] = mapper.getColumnPosition(mmd, table);
+                types[i] = mmd.getType();
+            }
+
+            Predicate<OdfTableRow> valueReader = row ->
+            {
+                Object[] values = new Object[numValues];
+                for (int i=0;i<numValues;i++)
+                {
+                    values[i] = ODFUtils.getBasicMemberValueForCell(types[i], row.getCellByIndex(positions[i]));
+                }
+                valueRows.add(values);
+                return true;
+            };
+
+            if (numOrders == 1 && cmds.size() == 1)
+            {
+                // Read the rows in the query ordering using an index of the member, stopping at the end of any range
+                long rangeToExcl = query.getRangeToExcl();
+                boolean[] decided = new boolean[] {true};
+                orderedByIndex = mapper.forEachRowInIndexOrder(cmd, table, spreadsheetDoc, row ->
+                {
+                    Boolean matches = (filter != null ? filter.evaluate(row) : Boolean.TRUE);
+                    if (matches == null)
+                    {
+                        decided[0] = false;
+                        return false;
+                    }
+                    if (matches.booleanValue())
+                    {
+                        valueReader.test(row);
+                    }
+                    return valueRows.size() < rangeToExcl;
+                });
+                if (!decided[0])
+                {
+                    return null;
+                }
+            }
+            if (!orderedByIndex && !scanRows(cmd, table, filter, valueReader))
+            {
+                return null;
+            }
+        }
+
+        if (numOrders > 0 && !orderedByIndex)
+        {
+            // Order the rows, leaving ordering of null values to the in-memory evaluator
+            for (Object[] values : valueRows)
+            {
+                for (int i=resultExprs.length;i<numValues;i++)
+                {
+                    if (values[i] == null)
+                    {
+                        return null;
+                    }
+                }
+            }
+            valueRows.sort((values1, values2) ->
+            {
+                for (int i=0;i<numOrders;i++)
+                {
+                    int cmp = ((Comparable)values1[resultExprs.length+i]).compareTo(values2[resultExprs.length+i]);
+                    if (cmp != 0)
+                    {
+                        return "descending".equalsIgnoreCase(((OrderExpression)orderExprs[i]).getSortOrder()) ? -cmp : cmp;
+                    }
+                }
+                return 0;
+            });
+        }
+
+        // Apply any range
+        int fromIncl = (int)Math.min(query.getRangeFromIncl(), valueRows.size());
+        int toExcl = (int)Math.min(query.getRangeToExcl(), valueRows.size());
+        List results = new ArrayList(Math.max(toExcl - fromIncl, 0));
+        for (int i=fromIncl;i<toExcl;i++)
+        {
+            Object[] values = valueRows.get(i);
+            Object result = null;
+            if (resultExprs.length == 1 && resultClass != Object[].class)
+            {
+                result = values[0];
+                if (resultClass != null && result != null && !resultClass.isInstance(result))
+                {
+                    // Needs conversion to the result class, so leave to the in-memory evaluator
+                    return null;
+                }
+            }
+            else
+            {
+                result = (numOrders > 0) ? Arrays.copyOf(values, resultExprs.length) : values;
+            }
+            results.add(result);
+        }
+
+        datastoreEvaluation = "Result evaluated on the cells of the candidate worksheet(s)";
+        if (NucleusLogger.QUERY.isDebugEnabled())
+        {
+            NucleusLogger.QUERY.debug(datastoreEvaluation + " for query " + query);
+        }
+        return results;
+    }
+
+    /**
+     * Method to execute a bulk update directly on the cells of the rows being updated, without instantiating any objects.
+     * The new values are written with the same cell encoding as the StoreFieldManager, any version cell is incremented,
+     * and the updated objects are evicted from the L1/L2 caches. Objects new or changed in the current transaction (whose
+     * changes are flushed beforehand) are kept in the L1 cache, with their updated members unloaded and their version
+     * set to the new version, so later changes neither overwrite the update nor lose the version increment. Not used for
+     * a read-only datastore. The SET clause must
+     * only update basic members of the candidate (other than primary-key or version members), to values that are literals,
+     * parameters, basic members of the candidate (as they were before the update), or arithmetic/concatenation of these.
+     * @param candidates The objects that match the filter (when the filter was evaluated in-memory), or null to evaluate
+     *     the filter on the rows
+     * @return The number of objects updated, or null if the update is not suitable for evaluation in this way
+     */
+    public Long executeBulkUpdate(Collection candidates)
+    {
+        Expression[] updateExprs = compilation.getExprUpdate();
+        if (query.getType() != QueryType.BULK_UPDATE || updateExprs == null || updateExprs.length == 0 ||
+            ec.getBooleanProperty(PropertyNames.PROPERTY_DATASTORE_READONLY))
+        {
+            return null;
+        }
+
+        // Write any changes not yet flushed, so they are neither overwritten nor missed by the filter
+        if (ec.isDelayDatastoreOperationsEnabled())
+        {
+            ec.flushInternal(false);
+        }
+
+        // Find the rows to update for each class, and check the SET clause for each, before changing anything
+        OdfSpreadsheetDocument spreadsheetDoc = (OdfSpreadsheetDocument)mconn.getConnection();
+        Map<AbstractClassMetaData, List<OdfTableRow>> rowsByClass = new LinkedHashMap<>();
+        if (candidates == null)
+        {
+            List<AbstractClassMetaData> cmds = MetaDataUtils.getMetaDataForCandidates(query.getCandidateClass(), query.isSubclasses(), ec);
+            for (AbstractClassMetaData cmd : cmds)
+            {
+                Table table = getTableForClass(cmd, spreadsheetDoc);
+                RowFilter filter = getCompleteRowFilter(cmd, table);
+                if (filter == RowFilter.UNKNOWN)
+                {
+                    return null;
+                }
+
+                List<OdfTableRow> rows = new ArrayList<>();
+                if (!scanRows(cmd, table, filter, rows::add))
+                {
+                    return null;
+                }
+                rowsByClass.put(cmd, rows);
+            }
+        }
+        else
+        {
+            for (Object candidate : candidates)
+            {
+                DNStateManager sm = ec.findStateManager(candidate);
+                if (sm != null)
+                {
+                    OdfTableRow row = ODFUtils.getTableRowForObjectInSheet(sm, spreadsheetDoc, true);
+                    if (row != null)
+                    {
+                        rowsByClass.computeIfAbsent(sm.getClassMetaData(), k -> new ArrayList<>()).add(row);
+                    }
+                }
+            }
+        }
+
+        Map<AbstractClassMetaData, AbstractMemberMetaData[]> membersByClass = new HashMap<>();
+        for (AbstractClassMetaData cmd : rowsByClass.keySet())
+        {
+            Table table = getTableForClass(cmd, spreadsheetDoc);
+            VersionMetaData vermd = cmd.getVersionMetaDataForClass();
+            AbstractMemberMetaData[] mmds = new AbstractMemberMetaData[updateExprs.length];
+            for (int i=0;i<updateExprs.length;i++)
+            {
+                Expression updateExpr = updateExprs[i];
+                if (!(updateExpr instanceof DyadicExpression) || updateExpr.getOperator() != Expression.OP_EQ ||
+                    !(updateExpr.getLeft() instanceof PrimaryExpression) || !isSupportedUpdateValue(updateExpr.getRight(), cmd, table))
+                {
+                    return null;
+                }
+                mmds[i] = mapper.getMemberForPrimary((PrimaryExpression)updateExpr.getLeft(), cmd, table);
+                if (mmds[i] == null || mmds[i].isPrimaryKey() || (vermd != null && mmds[i].getName().equals(vermd.getMemberName())))
+                {
+                    return null;
+                }
+            }
+            membersByClass.put(cmd, mmds);
+        }
+
+        // Evaluate the new values of all rows, and check them against any unique member indexes, before writing any of them
+        ODFStoreManager storeMgr = (ODFStoreManager)ec.getStoreManager();
+        Map<AbstractClassMetaData, List<Object[]>> valuesByClass = new HashMap<>();
+        Map<AbstractClassMetaData, List<MemberIndex>> memberIndexesByClass = new HashMap<>();
+        for (Map.Entry<AbstractClassMetaData, List<OdfTableRow>> entry : rowsByClass.entrySet())
+        {
+            AbstractClassMetaData cmd = entry.getKey();
+            Table table = getTableForClass(cmd, spreadsheetDoc);
+            AbstractMemberMetaData[] mmds = membersByClass.get(cmd);
+            List<Object[]> valueRows = new ArrayList<>(entry.getValue().size());
+            for (OdfTableRow row : entry.getValue())
+            {
+                Object[] values = new Object[mmds.length];
+                for (int i=0;i<mmds.length;i++)
+                {
+                    values[i] = getValueForMember(mmds[i], getUpdateValue(updateExprs[i].getRight(), cmd, table, row));
+                }
+                valueRows.add(values);
+            }
+            valuesByClass.put(cmd, valueRows);
+
+            int[] fieldNumbers = new int[mmds.length];
+            for (int i=0;i<mmds.length;i++)
+            {
+                fieldNumbers[i] = mmds[i].getAbsoluteFieldNumber();
+            }
+            List<MemberIndex> memberIndexes = ODFUtils.getMemberIndexesForFields(storeMgr, spreadsheetDoc, cmd, table, fieldNumbers);
+            checkUniqueMemberValues(memberIndexes, mmds, entry.getValue(), valueRows);
+            memberIndexesByClass.put(cmd, memberIndexes);
+        }
+
+        // Update the rows, keeping the indexes of updated members in step
+        List<Object> updatedIds = new ArrayList<>();
+        List<AbstractClassMetaData> updatedCmds = new ArrayList<>();
+        List<Object> updatedVersions = new ArrayList<>();
+        long number = 0;
+        for (Map.Entry<AbstractClassMetaData, List<OdfTableRow>> entry : rowsByClass.entrySet())
+        {
+            AbstractClassMetaData cmd = entry.getKey();
+            Table table = getTableForClass(cmd, spreadsheetDoc);
+            AbstractMemberMetaData[] mmds = membersByClass.get(cmd);
+            VersionMetaData vermd = cmd.getVersionMetaDataForClass();
+            List<MemberIndex> memberIndexes = memberIndexesByClass.get(cmd);
+            Iterator<Object[]> valuesIter = valuesByClass.get(cmd).iterator();
+            if (!entry.getValue().isEmpty())
+            {
+                ODFUtils.markModified(storeMgr, spreadsheetDoc, table.getName());
+            }
+            for (OdfTableRow row : entry.getValue())
+            {
+                Object[] values = valuesIter.next();
+                Object[] oldIndexKeys = ODFUtils.getMemberIndexKeys(memberIndexes, row);
+                StoreFieldManager storeFM = new StoreFieldManager(ec, cmd, row, false, table);
+                for (int i=0;i<mmds.length;i++)
+                {
+                    storeMemberValue(storeFM, mmds[i], values[i]);
+                }
+                ODFUtils.updateMemberIndexes(memberIndexes, row, oldIndexKeys);
+                Object nextVersion = null;
+                if (vermd != null)
+                {
+                    nextVersion = updateVersionCell(cmd, table, row, vermd);
+                }
+
+                Object id = ODFUtils.getIdentityForRow(ec, cmd, table, row, rowReader);
+                if (id != null)
+                {
+                    updatedIds.add(id);
+                    updatedCmds.add(cmd);
+                    updatedVersions.add(nextVersion);
+                }
+                number++;
+                if (ec.getStatistics() != null)
+                {
+                    ec.getStatistics().incrementNumWrites();
+                    ec.getStatistics().incrementUpdateCount();
+                }
+            }
+        }
+
+        // Evict the updated objects so that they are reloaded with the new values. Those new or changed in this transaction
+        // are kept, but their updated members are unloaded (to be reloaded from the cells) and they take the new version
+        ApiAdapter api = ec.getApiAdapter();
+        for (int i=0;i<updatedIds.size();i++)
+        {
+            Object id = updatedIds.get(i);
+            Object obj = ec.getObjectFromCache(id);
+            if (obj != null && (api.isNew(obj) || api.isDirty(obj)))
+            {
+                DNStateManager sm = ec.findStateManager(obj);
+                AbstractClassMetaData cmd = updatedCmds.get(i);
+                for (AbstractMemberMetaData mmd : membersByClass.get(cmd))
+                {
+                    sm.unloadField(mmd.getName());
+                }
+                VersionMetaData vermd = cmd.getVersionMetaDataForClass();
+                if (vermd != null)
+                {
+                    Object version = updatedVersions.get(i);
+                    if (vermd.getMemberName() != null)
+                    {
+                        AbstractMemberMetaData verMmd = cmd.getMetaDataForMember(vermd.getMemberName());
+                        if (version instanceof Long && (verMmd.getType() == Integer.class || verMmd.getType() == int.class))
+                        {
+                            // Cater for Integer-based versions, as the persistence handler does
+                            version = Integer.valueOf(((Long)version).intValue());
+                        }
+                        sm.unloadField(verMmd.getName());
+                    }
+                    sm.setTransactionalVersion(version);
+                }
+            }
+            else
+            {
+                ec.removeObjectFromLevel1Cache(id);
+            }
+            ec.removeObjectFromLevel2Cache(id);
+        }
+
+        datastoreEvaluation = "Bulk update evaluated on the cells of the candidate worksheet(s)";
+        if (NucleusLogger.QUERY.isDebugEnabled())
+        {
+            NucleusLogger.QUERY.debug(datastoreEvaluation + " for query " + query + " updating " + number + " row(s)");
+        }
+        return Long.valueOf(number);
+    }
+
+    /**
+     * Method to check that the new values of the members being updated in a bulk update don't break the uniqueness of
+     * any unique member index, either with the rows not being updated or amongst the updated rows.
+     * @param memberIndexes Indexes of the members being updated
+     * @param mmds Metadata for the members being updated
+     * @param rows The rows being updated
+     * @param valueRows The new values of the members for each row
+     * @throws NucleusUserException if a value of a unique member would no longer be unique
+     */
+    protected void checkUniqueMemberValues(List<MemberIndex> memberIndexes, AbstractMemberMetaData[] mmds, List<OdfTableRow> rows, List<Object[]> valueRows)
+    {
+        Set<Object> rowElements = null;
+        for (MemberIndex memberIndex : memberIndexes)
+        {
+            if (!memberIndex.isUnique())
+            {
+                continue;
+            }
+            int memberNumber = 0;
+            while (!mmds[memberNumber].getName().equals(memberIndex.getMemberName()))
+            {
+                memberNumber++;
+            }
+            if (rowElements == null)
+            {
+                rowElements = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (OdfTableRow row : rows)
+                {
+                    rowElements.add(row.getOdfElement());
+                }
+            }
+
+            Set<Object> newKeys = new HashSet<>();
+            for (Object[] values : valueRows)
+            {
+                Object key = RowIndex.getKeyForValue(values[memberNumber]);
+                if (key == null)
+                {
+                    continue;
+                }
+                boolean duplicate = !newKeys.add(key);
+                if (!duplicate)
+                {
+                    for (OdfTableRow keyRow : memberIndex.getRows(Collections.singleton(key)))
+                    {
+                        if (!rowElements.contains(keyRow.getOdfElement()))
+                        {
+                            duplicate = true;
+                            break;
+                        }
+                    }
+                }
+                if (duplicate)
+                {
+                    throw new NucleusUserException("Bulk update " + query + " would give more than one object the value " + values[memberNumber] +
+                        " for unique member " + mmds[memberNumber].getFullFieldName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to execute a bulk delete by removing the matching rows from the worksheet(s) directly, without instantiating
+     * any objects. The positions of the rows to delete are found in a single pass over each worksheet, and the rows are
+     * then removed from the bottom up in blocks of contiguous rows, and the deleted objects are evicted from the L2 cache.
+     * Objects of matching rows that are already instantiated are instead deleted through the execution context, so that
+     * they become deleted (rather than hollow objects of missing rows) and their delete callbacks/listeners are invoked.
+     * <p>
+     * Not used where a candidate class has relations, or is the type of a relation of another class, since deleting
+     * those objects may need to cascade to dependent objects or update related objects, so they go through the
+     * persistence handler. Nor is it used for JDOQL where a candidate class declares delete callbacks/listeners, since
+     * JDO requires them for every deleted object. JPA allows a bulk delete to bypass them, so for JPQL the callbacks
+     * are only invoked for the objects already instantiated.
+     * @return The number of objects deleted, or null if the delete is not suitable for evaluation in this way
+     */
+    public Long executeBulkDelete()
+    {
+        if (query.getType() != QueryType.BULK_DELETE || ec.getBooleanProperty(PropertyNames.PROPERTY_DATASTORE_READONLY))
+        {
+            return null;
+        }
+        boolean callbacksRequired = !(query instanceof JPQLQuery);
+        List<AbstractClassMetaData> cmds = MetaDataUtils.getMetaDataForCandidates(query.getCandidateClass(), query.isSubclasses(), ec);
+        for (AbstractClassMetaData cmd : cmds)
+        {
+            if (hasRelations(cmd) || isRelatedFromOtherClass(cmd) || (callbacksRequired && hasDeleteCallbacks(cmd)))
+            {
+                return null;
+            }
+        }
+
+        // Write any changes not yet flushed, so they are neither missed by the filter nor applied to removed rows
+        if (ec.isDelayDatastoreOperationsEnabled())
+        {
+            ec.flushInternal(false);
+        }
+
+        // Find the rows to delete for each class, before deleting anything
+        OdfSpreadsheetDocument spreadsheetDoc = (OdfSpreadsheetDocument)mconn.getConnection();
+        Map<AbstractClassMetaData, List<OdfTableRow>> rowsByClass = new LinkedHashMap<>();
+        Map<AbstractClassMetaData, List<Integer>> positionsByClass = new HashMap<>();
+        for (AbstractClassMetaData cmd : cmds)
+        {
+            Table table = getTableForClass(cmd, spreadsheetDoc);
+            RowFilter filter = getCompleteRowFilter(cmd, table);
+            if (filter == RowFilter.UNKNOWN)
+            {
+                return null;
+            }
+            OdfTable worksheet = spreadsheetDoc.getTableByName(table.getName());
+            if (worksheet == null)
+            {
+                continue;
+            }
+            if (filter != null && mapper.getRowsUsingIndexes(cmd, table, spreadsheetDoc) != null)
+            {
+                // Find the matching rows using the index, and their positions afterwards
+                List<OdfTableRow> rows = new ArrayList<>();
+                if (!scanRows(cmd, table, filter, rows::add))
+                {
+                    return null;
+                }
+                rowsByClass.put(cmd, rows);
+                continue;
+            }
+
+            List<OdfTableRow> rows = new ArrayList<>();
+            List<Integer> positions = new ArrayList<>();
+            List<OdfTableRow> worksheetRows = worksheet.getRowList();
+            int position = Math.min(ODFUtils.getHeaderRowCount(ec.getStoreManager(), spreadsheetDoc, worksheet), worksheetRows.size());
+            Iterator<OdfTableRow> rowIter = worksheetRows.listIterator(position);
+            while (rowIter.hasNext())
+            {
+                OdfTableRow row = rowIter.next();
+                Boolean matches = (filter != null ? filter.evaluate(row) : Boolean.TRUE);
+                if (matches == null)
+                {
+                    // Can't decide this row on its cells, so leave the query to the in-memory evaluator
+                    return null;
+                }
+                else if (matches.booleanValue())
+                {
+                    rows.add(row);
+                    positions.add(position);
+                }
+                position++;
+            }
+            rowsByClass.put(cmd, rows);
+            positionsByClass.put(cmd, positions);
+        }
+
+        // Leave the rows of objects already instantiated to be deleted through the execution context
+        List<Object> instantiatedObjs = new ArrayList<>();
+        Map<AbstractClassMetaData, List<Object>> idsByClass = new HashMap<>();
+        for (Map.Entry<AbstractClassMetaData, List<OdfTableRow>> entry : rowsByClass.entrySet())
+        {
+            AbstractClassMetaData cmd = entry.getKey();
+            Table table = getTableForClass(cmd, spreadsheetDoc);
+            List<Integer> positions = positionsByClass.get(cmd);
+            List<OdfTableRow> rows = new ArrayList<>();
+            List<Integer> rowPositions = new ArrayList<>();
+            List<Object> ids = new ArrayList<>();
+            for (int i=0;i<entry.getValue().size();i++)
+            {
+                OdfTableRow row = entry.getValue().get(i);
+                Object id = ODFUtils.getIdentityForRow(ec, cmd, table, row, rowReader);
+                Object obj = (id != null ? ec.getObjectFromCache(id) : null);
+                if (obj != null)
+                {
+                    instantiatedObjs.add(obj);
+                    continue;
+                }
+                rows.add(row);
+                ids.add(id);
+                if (positions != null)
+                {
+                    rowPositions.add(positions.get(i));
+                }
+            }
+            entry.setValue(rows);
+            idsByClass.put(cmd, ids);
+            if (positions != null)
+            {
+                positionsByClass.put(cmd, rowPositions);
+            }
+            else if (!rows.isEmpty())
+            {
+                // Find the positions of the rows in a single pass over the worksheet
+                Set<Object> rowElements = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (OdfTableRow row : rows)
+                {
+                    rowElements.add(row.getOdfElement());
+                }
+                int position = 0;
+                for (OdfTableRow row : spreadsheetDoc.getTableByName(table.getName()).getRowList())
+                {
+                    if (rowElements.contains(row.getOdfElement()))
+                    {
+                        rowPositions.add(position);
+                    }
+                    position++;
+                }
+                positionsByClass.put(cmd, rowPositions);
+            }
+        }
+
+        // Delete the other rows, removing them from any indexes first
+        ODFStoreManager storeMgr = (ODFStoreManager)ec.getStoreManager();
+        long number = 0;
+        for (Map.Entry<AbstractClassMetaData, List<OdfTableRow>> entry : rowsByClass.entrySet())
+        {
+            AbstractClassMetaData cmd = entry.getKey();
+            Table table = getTableForClass(cmd, spreadsheetDoc);
+            List<Integer> positionList = positionsByClass.get(cmd);
+            if (positionList == null || positionList.isEmpty())
+            {
+                continue;
+            }
+            int[] positions = positionList.stream().mapToInt(Integer::intValue).toArray();
+
+            for (OdfTableRow row : entry.getValue())
+            {
+                ODFUtils.unindexRow(storeMgr, spreadsheetDoc, table.getName(), row);
+            }
+            ODFUtils.removeRows(spreadsheetDoc.getTableByName(table.getName()), positions);
+            ODFUtils.adjustDataRowCount(storeMgr, spreadsheetDoc, table.getName(), -positions.length);
+            ODFUtils.markModified(storeMgr, spreadsheetDoc, table.getName());
+            number += positions.length;
+            if (ec.getStatistics() != null)
+            {
+                for (int i=0;i<positions.length;i++)
+                {
+                    ec.getStatistics().incrementNumWrites();
+                    ec.getStatistics().incrementDeleteCount();
+                }
+            }
+
+            for (Object id : idsByClass.get(cmd))
+            {
+                if (id != null)
+                {
+                    ec.removeObjectFromLevel2Cache(id);
+                }
+            }
+        }
+
+        // Delete the instantiated objects after removing the other rows, since this may remove rows (changing positions)
+        if (!instantiatedObjs.isEmpty())
+        {
+            ec.deleteObjects(instantiatedObjs.toArray());
+            number += instantiatedObjs.size();
+        }
+
+        datastoreEvaluation = "Bulk delete evaluated on the rows of the candidate worksheet(s)";
+        if (NucleusLogger.QUERY.isDebugEnabled())
+        {
+            NucleusLogger.QUERY.debug(datastoreEvaluation + " for query " + query + " deleting " + number + " row(s)");
+        }
+        return Long.valueOf(number);
+    }
+
+    /**
+     * Convenience method to return whether any other class has a persistent relation member that could refer to objects
+     * of the class, so that deleting those objects may need to update (or cascade from) the objects of the other class.
+     * @param cmd Metadata for the class
+     * @return Whether it is related from another class
+     */
+    protected boolean isRelatedFromOtherClass(AbstractClassMetaData cmd)
+    {
+        ClassLoaderResolver clr = ec.getClassLoaderResolver();
+        MetaDataManager mmgr = ec.getMetaDataManager();
+        Class cls = clr.classForName(cmd.getFullClassName());
+        for (String className : mmgr.getClassesWithMetaData())
+        {
+            AbstractClassMetaData otherCmd = mmgr.getMetaDataForClass(className, clr);
+            if (otherCmd == null || otherCmd == cmd)
+            {
+                continue;
+            }
+            int[] memberPositions = otherCmd.getAllMemberPositions();
+            for (int i=0;i<memberPositions.length;i++)
+            {
+                AbstractMemberMetaData mmd = otherCmd.getMetaDataForManagedMemberAtAbsolutePosition(memberPositions[i]);
+                if (mmd.getPersistenceModifier() != FieldPersistenceModifier.PERSISTENT || mmd.getRelationType(clr) == RelationType.NONE)
+                {
+                    continue;
+                }
+                for (String relatedClassName : getRelatedClassNames(mmd))
+                {
+                    if (relatedClassName == null || clr.classForName(relatedClassName).isAssignableFrom(cls))
+                    {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String[] getRelatedClassNames(AbstractMemberMetaData mmd)
+    {
+        if (mmd.hasCollection())
+        {
+            return new String[] {mmd.getCollection().getElementType()};
+        }
+        else if (mmd.hasArray())
+        {
+            return new String[] {mmd.getArray().getElementType()};
+        }
+        else if (mmd.hasMap())
+        {
+            return new String[] {mmd.getMap().getKeyType(), mmd.getMap().getValueType()};
+        }
+        return new String[] {mmd.getTypeName()};
+    }
+
+    /**
+     * Convenience method to return whether deleting an object of the class could invoke lifecycle callbacks or listeners,
+     * being those declared in the metadata of the class (or its superclasses), default listeners, or the class
+     * implementing a JDO delete callback. Listeners registered at runtime are not known here.
+     * @param cmd Metadata for the class
+     * @return Whether it has delete callbacks
+     */
+    protected boolean hasDeleteCallbacks(AbstractClassMetaData cmd)
+    {
+        if (!cmd.isExcludeDefaultListeners() && ec.getMetaDataManager().getListeners() != null && !ec.getMetaDataManager().getListeners().isEmpty())
+        {
+            return true;
+        }
+        AbstractClassMetaData theCmd = cmd;
+        while (theCmd != null)
+        {
+            if (theCmd.getListeners() != null && !theCmd.getListeners().isEmpty())
+            {
+                return true;
+            }
+            theCmd = (theCmd.isExcludeSuperClassListeners() ? null : theCmd.getSuperAbstractClassMetaData());
+        }
+
+        Class cls = ec.getClassLoaderResolver().classForName(cmd.getFullClassName());
+        while (cls != null)
+        {
+            if (hasDeleteCallbackInterface(cls.getInterfaces()))
+            {
+                return true;
+            }
+            cls = cls.getSuperclass();
+        }
+        return false;
+    }
+
+    private static boolean hasDeleteCallbackInterface(Class[] interfaces)
+    {
+        for (Class intf : interfaces)
+        {
+            // javax.jdo or jakarta.jdo
+            if (intf.getName().endsWith(".jdo.listener.DeleteCallback") || hasDeleteCallbackInterface(intf.getInterfaces()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Convenience method to return whether the class has any persistent member that is a relation (or embedded).
+     * @param cmd Metadata for the class
+     * @return Whether it has relations
+     */
+    protected boolean hasRelations(AbstractClassMetaData cmd)
+    {
+        int[] memberPositions = cmd.getAllMemberPositions();
+        for (int i=0;i<memberPositions.length;i++)
+        {
+            AbstractMemberMetaData mmd = cmd.getMetaDataForManagedMemberAtAbsolutePosition(memberPositions[i]);
+            if (mmd.getPersistenceModifier() == FieldPersistenceModifier.PERSISTENT && mmd.getRelationType(ec.getClassLoaderResolver()) != RelationType.NONE)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Convenience method to return whether the value expression of a SET clause can be evaluated on the cells of a row.
+     * @param expr The value expression
+     * @param cmd Metadata for the class
+     * @param table Table for the class
+     * @return Whether it is supported
+     */
+    protected boolean isSupportedUpdateValue(Expression expr, AbstractClassMetaData cmd, Table table)
+    {
+        if (expr instanceof Literal)
+        {
+            return true;
+        }
+        else if (expr instanceof ParameterExpression)
+        {
+            return mapper.getValue(expr) != null;
+        }
+        else if (expr instanceof PrimaryExpression)
+        {
+            return mapper.getMemberForPrimary((PrimaryExpression)expr, cmd, table) != null;
+        }
+        else if (expr instanceof DyadicExpression)
+        {
+            Expression.Operator op = expr.getOperator();
+            if (op == Expression.OP_NEG)
+            {
+                return isSupportedUpdateValue(expr.getLeft(), cmd, table);
+            }
+            else if (op == Expression.OP_ADD || op == Expression.OP_SUB || op == Expression.OP_MUL || op == Expression.OP_DIV || op == Expression.OP_MOD)
+            {
+                return isSupportedUpdateValue(expr.getLeft(), cmd, table) && isSupportedUpdateValue(expr.getRight(), cmd, table);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method to evaluate the value expression of a SET clause on the cells of a row.
+     * Follows SQL semantics in that any arithmetic involving null gives null.
+     * @param expr The value expression (supported, see {@link #isSupportedUpdateValue(Expression, AbstractClassMetaData, Table)})
+     * @param cmd Metadata for the class
+     * @param table Table for the class
+     * @param row The row
+     * @return The value
+     */
+    protected Object getUpdateValue(Expression expr, AbstractClassMetaData cmd, Table table, OdfTableRow row)
+    {
+        if (expr instanceof Literal || expr instanceof ParameterExpression)
+        {
+            return mapper.getValue(expr)[0];
+        }
+        else if (expr instanceof PrimaryExpression)
+        {
+            AbstractMemberMetaData mmd = mapper.getMemberForPrimary((PrimaryExpression)expr, cmd, table);
+            return ODFUtils.getBasicMemberValueForCell(mmd.getType(), row.getCellByIndex(mapper.getColumnPosition(mmd, table)));
+        }
+
+        Expression.Operator op = expr.getOperator();
+        Object left = getUpdateValue(expr.getLeft(), cmd, table, row);
+        if (op == Expression.OP_NEG)
+        {
+            if (left == null)
+            {
+                return null;
+            }
+            else if (!(left instanceof Number))
+            {
+                throw new NucleusUserException("Cannot negate value " + left + " in bulk update " + query);
+            }
+            return isIntegral(left) ? (Object)Long.valueOf(-((Number)left).longValue()) : (Object)Double.valueOf(-((Number)left).doubleValue());
+        }
+
+        Object right = getUpdateValue(expr.getRight(), cmd, table, row);
+        if (op == Expression.OP_ADD && (left instanceof String || right instanceof String))
+        {
+            return (left == null || right == null) ? null : "" + left + right;
+        }
+        if (left == null || right == null)
+        {
+            return null;
+        }
+        if (!(left instanceof Number) || !(right instanceof Number))
+        {
+            throw new NucleusUserException("Cannot apply arithmetic to values " + left + " and " + right + " in bulk update " + query);
+        }
+
+        if (isIntegral(left) && isIntegral(right))
+        {
+            long l = ((Number)left).longValue();
+            long r = ((Number)right).longValue();
+            if ((op == Expression.OP_DIV || op == Expression.OP_MOD) && r == 0)
+            {
+                throw new NucleusUserException("Division by zero in bulk update " + query);
+            }
+            return Long.valueOf(op == Expression.OP_ADD ? l + r : op == Expression.OP_SUB ? l - r : op == Expression.OP_MUL ? l * r : op == Expression.OP_DIV ? l / r : l % r);
+        }
+        double l = ((Number)left).doubleValue();
+        double r = ((Number)right).doubleValue();
+        return Double.valueOf(op == Expression.OP_ADD ? l + r : op == Expression.OP_SUB ? l - r : op == Expression.OP_MUL ? l * r : op == Expression.OP_DIV ? l / r : l % r);
+    }
+
+    private static boolean isIntegral(Object value)
+    {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte || value instanceof BigInteger;
+    }
+
+    /**
+     * Convenience method to convert a value of a SET clause to the type of the member being updated.
+     * @param mmd Metadata for the member
+     * @param value The value
+     * @return The value for the member
+     * @throws NucleusUserException if the value cannot be stored in the member
+     */
+    protected Object getValueForMember(AbstractMemberMetaData mmd, Object value)
+    {
+        Class type = mmd.getType();
+        if (value == null)
+        {
+            if (type.isPrimitive())
+            {
+                throw new NucleusUserException("Cannot set member " + mmd.getFullFieldName() + " to null in bulk update " + query);
+            }
+            return null;
+        }
+
+        if (type == String.class)
+        {
+            if (value instanceof String || value instanceof Character)
+            {
+                return value.toString();
+            }
+        }
+        else if (type == boolean.class || type == Boolean.class)
+        {
+            if (value instanceof Boolean)
+            {
+                return value;
+            }
+        }
+        else if (value instanceof Number && (type.isPrimitive() || Number.class.isAssignableFrom(type)))
+        {
+            Number num = (Number)value;
+            if (type == byte.class || type == Byte.class)
+            {
+                return Byte.valueOf(num.byteValue());
+            }
+            else if (type == short.class || type == Short.class)
+            {
+                return Short.valueOf(num.shortValue());
+            }
+            else if (type == int.class || type == Integer.class)
+            {
+                return Integer.valueOf(num.intValue());
+            }
+            else if (type == long.class || type == Long.class)
+            {
+                return Long.valueOf(num.longValue());
+            }
+            else if (type == float.class || type == Float.class)
+            {
+                return Float.valueOf(num.floatValue());
+            }
+            return Double.valueOf(num.doubleValue());
+        }
+        else if (value instanceof Date)
+        {
+            long millis = ((Date)value).getTime();
+            if (type == java.sql.Date.class)
+            {
+                return new java.sql.Date(millis);
+            }
+            else if (type == java.sql.Time.class)
+            {
+                return new java.sql.Time(millis);
+            }
+            else if (type == java.sql.Timestamp.class)
+            {
+                return new java.sql.Timestamp(millis);
+            }
+            return new Date(millis);
+        }
+        throw new NucleusUserException("Cannot set member " + mmd.getFullFieldName() + " to value " + value + " in bulk update " + query);
+    }
+
+    /**
+     * Convenience method to store the value of a (basic) member in its cell using the StoreFieldManager.
+     * @param storeFM The field manager for the row
+     * @param mmd Metadata for the member
+     * @param value The value (of the member type)
+     */
+    protected void storeMemberValue(StoreFieldManager storeFM, AbstractMemberMetaData mmd, Object value)
+    {
+        int fieldNumber = mmd.getAbsoluteFieldNumber();
+        Class type = mmd.getType();
+        if (value == null || !type.isPrimitive())
+        {
+            storeFM.storeObjectField(fieldNumber, value);
+        }
+        else if (type == boolean.class)
+        {
+            storeFM.storeBooleanField(fieldNumber, (Boolean)value);
+        }
+        else if (type == byte.class)
+        {
+            storeFM.storeByteField(fieldNumber, (Byte)value);
+        }
+        else if (type == short.class)
+        {
+            storeFM.storeShortField(fieldNumber, (Short)value);
+        }
+        else if (type == int.class)
+        {
+            storeFM.storeIntField(fieldNumber, (Integer)value);
+        }
+        else if (type == long.class)
+        {
+            storeFM.storeLongField(fieldNumber, (Long)value);
+        }
+        else if (type == float.class)
+        {
+            storeFM.storeFloatField(fieldNumber, (Float)value);
+        }
+        else
+        {
+            storeFM.storeDoubleField(fieldNumber, (Double)value);
+        }
+    }
+
+    /**
+     * Method to set the version cell of an updated row to the next version, as the persistence handler does on update.
+     * @param cmd Metadata for the class
+     * @param table Table for the class
+     * @param row The row
+     * @param vermd Version metadata for the class
+     * @return The next version
+     */
+    protected Object updateVersionCell(AbstractClassMetaData cmd, Table table, OdfTableRow row, VersionMetaData vermd)
+    {
+        OdfTableCell verCell = null;
+        if (vermd.getMemberName() != null)
+        {
+            AbstractMemberMetaData verMmd = cmd.getMetaDataForMember(vermd.getMemberName());
+            verCell = row.getCellByIndex(table.getMemberColumnMappingForMember(verMmd).getColumn(0).getPosition());
+        }
+        else
+        {
+            verCell = row.getCellByIndex(table.getSurrogateColumn(SurrogateColumnType.VERSION).getPosition());
+        }
+
+        Double currentValue = verCell.getDoubleValue();
+        Object currentVersion = (currentValue != null ? Long.valueOf(currentValue.longValue()) : null);
+        Object nextVersion = ec.getLockManager().getNextVersion(vermd, currentVersion);
+        if (nextVersion instanceof Number)
+        {
+            verCell.setDoubleValue(Double.valueOf(((Number)nextVersion).doubleValue()));
+        }
+        else if (nextVersion instanceof Timestamp)
+        {
+            verCell.setDoubleValue(Double.valueOf(((Timestamp)nextVersion).getTime()));
+        }
+        return nextVersion;
+    }
+
+    /**
+     * Convenience method to return the filter to apply to the rows of the specified class, where the query filter
+     * can be evaluated completely on the rows.
+     * @param cmd Metadata for the class
+     * @param table Table for the class
+     * @return The filter, or null if the query has no filter, or RowFilter.UNKNOWN if the filter cannot be evaluated completely
+     */
+    protected RowFilter getCompleteRowFilter(AbstractClassMetaData cmd, Table table)
+    {
+        if (compilation.getExprFilter() == null)
+        {
+            return null;
+        }
+        RowFilter filter = mapper.getRowFilter(cmd, table);
+        return (filter != null && filter.isComplete()) ? filter : RowFilter.UNKNOWN;
+    }
+
+    /**
+     * Method to pass the (non-header) rows of the worksheet of the class that match the filter to the handler, in order.
+     * Where the filter can use an index of a member of the class, only the rows found using the index are evaluated.
+     * Otherwise, where parallel scans are enabled and the worksheet is large, the filter is evaluated on the rows in
+     * parallel before any row is passed to the handler.
+     * @param cmd Metadata for the class
+     * @param table Table for the class
+     * @param filter The filter (complete), or null if no filter
+     * @param handler Handler for matching rows, returning false if no further rows are required
+     * @return Whether all rows could be decided by the filter (otherwise the scan was abandoned)
+     */
+    protected boolean scanRows(AbstractClassMetaData cmd, Table table, RowFilter filter, Predicate<OdfTableRow> handler)
+    {
+        OdfSpreadsheetDocument spreadsheetDoc = (OdfSpreadsheetDocument)mconn.getConnection();
+        OdfTable worksheet = spreadsheetDoc.getTableByName(table.getName());
+        if (worksheet == null)
+        {
+            return true;
+        }
+
+        // Scan the rows found via the indexes (which only hold data rows), otherwise all rows after any header rows
+        List<OdfTableRow> indexedRows = (filter != null ? mapper.getRowsUsingIndexes(cmd, table, spreadsheetDoc) : null);
+        Iterator<OdfTableRow> rowIter = null;
+        int rowPosition = 0;
+        ParallelRowScanner.Scan scan = null;
+        if (indexedRows != null)
+        {
+            rowIter = indexedRows.iterator();
+        }
+        else
+        {
+            List<OdfTableRow> rows = worksheet.getRowList();
+            rowPosition = Math.min(ODFUtils.getHeaderRowCount(ec.getStoreManager(), spreadsheetDoc, worksheet), rows.size());
+            rowIter = rows.listIterator(rowPosition);
+
+            ParallelRowScanner scanner = ((ODFStoreManager)ec.getStoreManager()).getParallelRowScanner();
+            if (filter != null && scanner != null && scanner.isParallel(rows.size() - rowPosition))
+            {
+                // Evaluate the filter on the rows in parallel, passing the matching rows to the handler in order
+                scan = scanner.submit(rows, rowPosition, filter);
+                scan.join();
+            }
+        }
+        while (rowIter.hasNext())
+        {
+            OdfTableRow row = rowIter.next();
+            if (filter != null)
+            {
+                Boolean matches = (scan != null ? scan.getResult(rowPosition++) : filter.evaluate(row));
+                if (matches == null)
+                {
+                    // Can't decide this row on its cells, so leave the query to the in-memory evaluator
+                    return false;
+                }
+                else if (!matches.booleanValue())
+                {
+                    continue;
+                }
+            }
+            if (!handler.test(row))
+            {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Convenience method to return the table for the specified class, managing the class if not yet managed.
+     * @param cmd Metadata for the class
+     * @param spreadsheetDoc The spreadsheet document
+     * @return The table
+     */
+    protected Table getTableForClass(AbstractClassMetaData cmd, OdfSpreadsheetDocument spreadsheetDoc)
+    {
+        ODFStoreManager storeMgr = (ODFStoreManager)ec.getStoreManager();
+        StoreData sd = storeMgr.getStoreDataForClass(cmd.getFullClassName());
+        if (sd == null)
+        {
+            storeMgr.manageClasses(new String[] {cmd.getFullClassName()}, ec.getClassLoaderResolver(), spreadsheetDoc);
+            sd = storeMgr.getStoreDataForClass(cmd.getFullClassName());
+        }
+        return sd.getTable();
+    }
+
+    protected boolean isRangeSet()
+    {
+        return query.getRangeFromIncl() > 0 || query.getRangeToExcl() != Long.MAX_VALUE;
+    }
+
+    /**
+     * Representation of an aggregate in the result clause, accumulating its value over the rows.
+     */
+    static class Aggregate
+    {
+        /** Name of the aggregate function (lowercase). */
+        final String function;
+
+        /** Name of the member being aggregated, or null when the candidate itself (count only). */
+        final String memberName;
+
+        long count = 0;
+
+        boolean integral = true;
+
+        long longSum = 0;
+
+        double doubleSum = 0.0;
+
+        Object extremeValue = null;
+
+        Aggregate(String function, String memberName)
+        {
+            this.function = function;
+            this.memberName = memberName;
+        }
+
+        /**
+         * Method to return the aggregate for the (result) expression, if it is an aggregate that we support.
+         * @param expr The expression
+         * @param candidateAlias Alias of the candidate
+         * @return The aggregate, or null if not supported
+         */
+        static Aggregate getAggregateForExpression(Expression expr, String candidateAlias)
+        {
+            if (!(expr instanceof InvokeExpression) || ((InvokeExpression)expr).getLeft() != null)
+            {
+                return null;
+            }
+            InvokeExpression invokeExpr = (InvokeExpression)expr;
+            String function = invokeExpr.getOperation() != null ? invokeExpr.getOperation().toLowerCase() : null;
+            if (!"count".equals(function) && !"sum".equals(function) && !"min".equals(function) && !"max".equals(function) && !"avg".equals(function))
+            {
+                return null;
+            }
+
+            List<Expression> args = invokeExpr.getArguments();
+            if (args == null || args.size() != 1 || !(args.get(0) instanceof PrimaryExpression) || args.get(0).getLeft() != null)
+            {
+                return null;
+            }
+            List<String> tuples = ((PrimaryExpression)args.get(0)).getTuples();
+            if (tuples.size() == 1 && tuples.get(0).equals(candidateAlias))
+            {
+                return "count".equals(function) ? new Aggregate(function, null) : null;
+            }
+            else if (tuples.size() == 1)
+            {
+                return new Aggregate(function, tuples.get(0));
+            }
+            else if (tuples.size() == 2 && tuples.get(0).equals(candidateAlias))
+            {
+                return new Aggregate(function, tuples.get(1));
+            }
+            return null;
+        }
+
+        boolean isSupportedType(Class type)
+        {
+            if ("count".equals(function))
+            {
+                return true;
+            }
+            return type.isPrimitive() ? type != boolean.class : Number.class.isAssignableFrom(type);
+        }
+
+        void addCandidate()
+        {
+            count++;
+        }
+
+        void addValue(Object value)
+        {
+            if (value == null)
+            {
+                return;
+            }
+            count++;
+            if ("sum".equals(function) || "avg".equals(function))
+            {
+                Number num = (Number)value;
+                if (num instanceof Float || num instanceof Double)
+                {
+                    integral = false;
+                }
+                longSum += num.longValue();
+                doubleSum += num.doubleValue();
+            }
+            else if ("min".equals(function) || "max".equals(function))
+            {
+                if (extremeValue == null ||
+                    Boolean.TRUE.equals(RowFilter.compareValues(value, "min".equals(function) ? Expression.OP_LT : Expression.OP_GT, extremeValue)))
+                {
+                    extremeValue = value;
+                }
+            }
+        }
+
+        Object getResult()
+        {
+            if ("count".equals(function))
+            {
+                return Long.valueOf(count);
+            }
+            else if (count == 0)
+            {
+                return null;
+            }
+            else if ("sum".equals(function))
+            {
+                return integral ? (Object)Long.valueOf(longSum) : (Object)Double.valueOf(doubleSum);
+            }
+            else if ("avg".equals(function))
+            {
+                return Double.valueOf(doubleSum / count);
+            }
+            return extremeValue;
+        }
+    }
+}
@@ -0,0 +1,675 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.store.odf.query;
+
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.datanucleus.ClassLoaderResolver;
+import org.datanucleus.ExecutionContext;
+import org.datanucleus.FetchPlan;
+import org.datanucleus.api.ApiAdapter;
+import org.datanucleus.metadata.AbstractClassMetaData;
+import org.datanucleus.metadata.AbstractMemberMetaData;
+import org.datanucleus.metadata.MetaDataManager;
+import org.datanucleus.metadata.MetaDataUtils;
+import org.datanucleus.metadata.RelationType;
+import org.datanucleus.query.compiler.QueryCompilation;
+import org.datanucleus.query.compiler.Symbol;
+import org.datanucleus.query.expression.CaseExpression;
+import org.datanucleus.query.expression.Expression;
+import org.datanucleus.query.expression.InvokeExpression;
+import org.datanucleus.state.DNStateManager;
+import org.datanucleus.store.StoreData;
+import org.datanucleus.store.StoreManager;
+import org.datanucleus.store.odf.ODFUtils;
+import org.datanucleus.store.odf.SheetState;
+import org.datanucleus.store.query.Query;
+import org.datanucleus.store.query.Query.QueryType;
+import org.datanucleus.util.NucleusLogger;
+import org.odftoolkit.odfdom.doc.OdfDocument;
+
+/**
+ * Cache of the results of queries, keyed by the query (its single-string form, candidate, range, fetch plan and whether
+ * ignoring the cache) and its parameter values. Results of candidate objects are held as the identities of the objects
+ * (whose fetch plan members are loaded when taken from the cache), and results of projections/aggregates as the
+ * (immutable) values of the rows.
+ * <p>
+ * Each entry is tagged with the modification stamp (see {@link SheetState#getModificationStamp()}) of each worksheet that
+ * the query could read, being those of the candidate classes and of all classes reachable from them via relations, and
+ * is only used while none of those worksheets has been modified (or reloaded) since. Entries are also evicted when older
+ * than the expiry time (if any), and the least recently used entries are evicted when the cache is full.
+ * <p>
+ * Queries with a candidate collection, variables, subqueries, multiple candidate expressions, a result class or functions
+ * of the current date/time, queries executed in an active transaction (whose results could reflect changes not yet committed), and queries with parameter
+ * values or results that can't be held safely, are not cached.
+ */
+public class ODFQueryResultCache
+{
+    /** Query extension to exclude a query from the result cache (boolean, default true). */
+    public static final String EXTENSION_RESULT_CACHE = "datanucleus.query.odf.resultCache";
+
+    /** Names of functions whose value depends on when the query is executed, so whose queries aren't cached. */
+    private static final Set<String> TIME_DEPENDENT_FUNCTIONS = new HashSet<>(Arrays.asList(
+        "CURRENT_DATE", "CURRENT_TIME", "CURRENT_TIMESTAMP", "LOCAL_DATE", "LOCAL_TIME", "LOCAL_DATETIME"));
+
+    /** Value used for a parameter value or result that can't be cached. */
+    private static final Object NOT_CACHEABLE = new Object();
+
+    /** Maximum number of entries. */
+    final int maxSize;
+
+    /** Time (millisecs) after which an entry expires, or 0 if not expiring. */
+    final long expiryMillis;
+
+    /** The entries, in access order. */
+    final Map<Key, Entry> entries;
+
+    /** Names of the classes whose worksheets a query of a candidate class could read, keyed by candidate (and subclasses flag). */
+    final Map<String, String[]> involvedClassNames = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     * @param maxSize Maximum number of entries
+     * @param expiryMillis Time (millisecs) after which an entry expires, or 0 if not expiring
+     */
+    public ODFQueryResultCache(int maxSize, long expiryMillis)
+    {
+        this.maxSize = maxSize;
+        this.expiryMillis = expiryMillis;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 5176354123475012843L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest)
+            {
+                return size() > ODFQueryResultCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Method to remove all entries.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        involvedClassNames.clear();
+    }
+
+    /**
+     * Method to look up the result of the query with the specified parameter values, taking the modification stamps of
+     * the worksheets the query could read, so that the result of the execution can be stored with them.
+     * @param query The query
+     * @param compilation The generic query compilation
+     * @param parameters Parameter values keyed by name/position
+     * @param doc The ODF document
+     * @return The lookup, or null if the query can't be cached
+     */
+    public Lookup lookup(Query query, QueryCompilation compilation, Map parameters, OdfDocument doc)
+    {
+        if (query.getType() != QueryType.SELECT || query.getCandidateCollection() != null || query.getResultClass() != null ||
+            !query.getBooleanExtensionProperty(EXTENSION_RESULT_CACHE, true) || query.getBooleanExtensionProperty(ODFStreamingResult.EXTENSION_STREAMING, false))
+        {
+            return null;
+        }
+        if (compilation.getSubqueryAliases() != null || (compilation.getExprFrom() != null && compilation.getExprFrom().length > 1) ||
+            !compilation.getSymbolTable().getSymbolNamesWithType(Symbol.VARIABLE).isEmpty() || hasTimeDependentFunction(compilation))
+        {
+            return null;
+        }
+
+        ExecutionContext ec = query.getExecutionContext();
+        if (ec.getTransaction().isActive())
+        {
+            return null;
+        }
+
+        Map<Object, Object> paramValues = new HashMap<>();
+        if (parameters != null)
+        {
+            for (Object paramEntryObj : parameters.entrySet())
+            {
+                Map.Entry paramEntry = (Map.Entry)paramEntryObj;
+                Object value = getCacheableValue(ec.getApiAdapter(), paramEntry.getValue(), true);
+                if (value == NOT_CACHEABLE)
+                {
+                    return null;
+                }
+                paramValues.put(paramEntry.getKey(), value);
+            }
+        }
+
+        String[] classNames = getInvolvedClassNames(query, ec);
+        if (classNames == null)
+        {
+            return null;
+        }
+
+        FetchPlan fetchPlan = query.getFetchPlan();
+        Key key = new Key(query.getLanguage(), query.getSingleStringQuery(), query.getCandidateClassName(), query.isSubclasses(),
+            query.getRangeFromIncl(), query.getRangeToExcl(), new HashSet<>(fetchPlan.getGroups()), fetchPlan.getMaxFetchDepth(),
+            query.getIgnoreCache(), paramValues);
+        long[] stamps = getModificationStamps(ec.getStoreManager(), doc, classNames);
+
+        Entry entry = null;
+        synchronized (this)
+        {
+            entry = entries.get(key);
+            if (entry != null && (!Arrays.equals(entry.stamps, stamps) || (expiryMillis > 0 && System.currentTimeMillis() - entry.createTime > expiryMillis)))
+            {
+                // Out of date
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        return new Lookup(key, stamps, entry, ec, fetchPlan);
+    }
+
+    /**
+     * Convenience method to return whether any expression of the compilation invokes a function of the current date/time.
+     * @param compilation The query compilation
+     * @return Whether the result depends on when the query is executed
+     */
+    protected static boolean hasTimeDependentFunction(QueryCompilation compilation)
+    {
+        List<Expression> exprs = new ArrayList<>();
+        exprs.add(compilation.getExprFilter());
+        exprs.add(compilation.getExprHaving());
+        for (Expression[] exprArray : new Expression[][] {compilation.getExprResult(), compilation.getExprOrdering(), compilation.getExprGrouping()})
+        {
+            if (exprArray != null)
+            {
+                exprs.addAll(Arrays.asList(exprArray));
+            }
+        }
+        for (Expression expr : exprs)
+        {
+            if (hasTimeDependentFunction(expr))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasTimeDependentFunction(Expression expr)
+    {
+        if (expr == null)
+        {
+            return false;
+        }
+        if (expr instanceof InvokeExpression)
+        {
+            InvokeExpression invokeExpr = (InvokeExpression)expr;
+            if (invokeExpr.getOperation() != null && TIME_DEPENDENT_FUNCTIONS.contains(invokeExpr.getOperation().toUpperCase()))
+            {
+                return true;
+            }
+            if (invokeExpr.getArguments() != null)
+            {
+                for (Expression argExpr : invokeExpr.getArguments())
+                {
+                    if (hasTimeDependentFunction(argExpr))
+                    {
+                        return true;
+                    }
+                }
+            }
+        }
+        else if (expr instanceof CaseExpression)
+        {
+            CaseExpression caseExpr = (CaseExpression)expr;
+            for (CaseExpression.ExpressionPair pair : caseExpr.getConditions())
+            {
+                if (hasTimeDependentFunction(pair.getWhenExpression()) || hasTimeDependentFunction(pair.getActionExpression()))
+                {
+                    return true;
+                }
+            }
+            if (hasTimeDependentFunction(caseExpr.getElseExpression()))
+            {
+                return true;
+            }
+        }
+        return hasTimeDependentFunction(expr.getLeft()) || hasTimeDependentFunction(expr.getRight());
+    }
+
+    /**
+     * Convenience method to return the names of the classes whose worksheets a query of the candidate could read,
+     * being the candidate class (and subclasses, if included), and all classes reachable from them via relations.
+     * @param query The query
+     * @param ec execution context
+     * @return The class names, or null if a relation is to a type that isn't a persistable class (so the worksheets can't be known)
+     */
+    protected String[] getInvolvedClassNames(Query query, ExecutionContext ec)
+    {
+        String candidateKey = query.getCandidateClassName() + (query.isSubclasses() ? "+" : "");
+        String[] classNames = involvedClassNames.get(candidateKey);
+        if (classNames != null)
+        {
+            return classNames.length > 0 ? classNames : null;
+        }
+
+        ClassLoaderResolver clr = ec.getClassLoaderResolver();
+        MetaDataManager mmgr = ec.getMetaDataManager();
+        Set<String> names = new LinkedHashSet<>();
+        List<AbstractClassMetaData> toProcess = new ArrayList<>(MetaDataUtils.getMetaDataForCandidates(query.getCandidateClass(), query.isSubclasses(), ec));
+        for (AbstractClassMetaData cmd : toProcess)
+        {
+            names.add(cmd.getFullClassName());
+        }
+        boolean known = true;
+        for (int i=0;i<toProcess.size() && known;i++)
+        {
+            AbstractClassMetaData cmd = toProcess.get(i);
+            int[] memberPositions = cmd.getAllMemberPositions();
+            for (int memberPosition : memberPositions)
+            {
+                AbstractMemberMetaData mmd = cmd.getMetaDataForManagedMemberAtAbsolutePosition(memberPosition);
+                if (mmd == null || mmd.getRelationType(clr) == RelationType.NONE)
+                {
+                    continue;
+                }
+
+                for (String relatedClassName : getRelatedClassNames(mmd))
+                {
+                    AbstractClassMetaData relatedCmd = (relatedClassName != null ? mmgr.getMetaDataForClass(relatedClassName, clr) : null);
+                    if (relatedCmd == null)
+                    {
+                        known = false;
+                        break;
+                    }
+                    List<String> relatedNames = new ArrayList<>();
+                    relatedNames.add(relatedCmd.getFullClassName());
+                    String[] subclassNames = mmgr.getSubclassesForClass(relatedCmd.getFullClassName(), true);
+                    if (subclassNames != null)
+                    {
+                        relatedNames.addAll(Arrays.asList(subclassNames));
+                    }
+                    for (String relatedName : relatedNames)
+                    {
+                        if (names.add(relatedName))
+                        {
+                            AbstractClassMetaData acmd = mmgr.getMetaDataForClass(relatedName, clr);
+                            if (acmd != null)
+                            {
+                                toProcess.add(acmd);
+                            }
+                        }
+                    }
+                }
+                if (!known)
+                {
+                    break;
+                }
+            }
+        }
+
+        classNames = known ? names.toArray(new String[names.size()]) : new String[0];
+        involvedClassNames.put(candidateKey, classNames);
+        return known ? classNames : null;
+    }
+
+    private static String[] getRelatedClassNames(AbstractMemberMetaData mmd)
+    {
+        if (mmd.hasCollection())
+        {
+            return new String[] {mmd.getCollection().getElementType()};
+        }
+        else if (mmd.hasArray())
+        {
+            return new String[] {mmd.getArray().getElementType()};
+        }
+        else if (mmd.hasMap())
+        {
+            return new String[] {mmd.getMap().getKeyType(), mmd.getMap().getValueType()};
+        }
+        return new String[] {mmd.getTypeName()};
+    }
+
+    /**
+     * Convenience method to return the modification stamps of the worksheets of the specified classes.
+     * @param storeMgr StoreManager
+     * @param doc The ODF document
+     * @param classNames Names of the classes
+     * @return The stamps, with -1 for a class without a worksheet (yet)
+     */
+    protected long[] getModificationStamps(StoreManager storeMgr, OdfDocument doc, String[] classNames)
+    {
+        long[] stamps = new long[classNames.length];
+        for (int i=0;i<classNames.length;i++)
+        {
+            stamps[i] = -1;
+            StoreData sd = storeMgr.getStoreDataForClass(classNames[i]);
+            if (sd != null && sd.getTable() != null)
+            {
+                SheetState sheetState = ODFUtils.getSheetState(storeMgr, doc, sd.getTable().getName());
+                if (sheetState != null)
+                {
+                    stamps[i] = sheetState.getModificationStamp();
+                }
+            }
+        }
+        return stamps;
+    }
+
+    /**
+     * Convenience method to return the form of a (parameter or result) value that can be held by the cache.
+     * @param api Api adapter
+     * @param value The value
+     * @param identity Whether to take the identity of a persistable object (otherwise it can't be cached)
+     * @return The value to hold, or NOT_CACHEABLE
+     */
+    static Object getCacheableValue(ApiAdapter api, Object value, boolean identity)
+    {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character ||
+            value instanceof Enum || value instanceof TemporalAccessor || value instanceof UUID)
+        {
+            return value;
+        }
+        else if (value instanceof Date)
+        {
+            return ((Date)value).clone();
+        }
+        else if (identity && api.isPersistable(value))
+        {
+            Object id = api.getIdForObject(value);
+            return id != null ? new PersistableKey(id) : NOT_CACHEABLE;
+        }
+        else if (identity && value instanceof Collection)
+        {
+            List values = new ArrayList(((Collection)value).size());
+            for (Object element : (Collection)value)
+            {
+                Object elementValue = getCacheableValue(api, element, true);
+                if (elementValue == NOT_CACHEABLE)
+                {
+                    return NOT_CACHEABLE;
+                }
+                values.add(elementValue);
+            }
+            return values;
+        }
+        return NOT_CACHEABLE;
+    }
+
+    /**
+     * Convenience method to return a copy of a cached (result) value, for return to the user.
+     * @param value The value
+     * @return The copy (where the value is mutable)
+     */
+    static Object copyValue(Object value)
+    {
+        return (value instanceof Date) ? ((Date)value).clone() : value;
+    }
+
+    /**
+     * Lookup of a query in the cache, providing the cached result (if any), or storing the result of its execution.
+     */
+    public class Lookup
+    {
+        final Key key;
+
+        final long[] stamps;
+
+        final Entry entry;
+
+        final ExecutionContext ec;
+
+        final FetchPlan fetchPlan;
+
+        Lookup(Key key, long[] stamps, Entry entry, ExecutionContext ec, FetchPlan fetchPlan)
+        {
+            this.key = key;
+            this.stamps = stamps;
+            this.entry = entry;
+            this.ec = ec;
+            this.fetchPlan = fetchPlan;
+        }
+
+        /**
+         * Accessor for the cached result of the query, finding the objects of a result of candidate objects and loading
+         * the members of the fetch plan of the query (as an execution of the query would have loaded from the rows).
+         * @return The result, or null if not cached
+         */
+        public List getResult()
+        {
+            if (entry == null)
+            {
+                return null;
+            }
+
+            List results = new ArrayList(entry.values.length);
+            for (int i=0;i<entry.values.length;i++)
+            {
+                if (entry.classNames != null)
+                {
+                    Object obj = ec.findObject(entry.values[i], false, false, entry.classNames[i]);
+                    DNStateManager sm = ec.findStateManager(obj);
+                    if (sm != null)
+                    {
+                        sm.loadUnloadedFieldsOfClassInFetchPlan(fetchPlan);
+                    }
+                    results.add(obj);
+                }
+                else if (entry.values[i] instanceof Object[])
+                {
+                    Object[] row = ((Object[])entry.values[i]).clone();
+                    for (int j=0;j<row.length;j++)
+                    {
+                        row[j] = copyValue(row[j]);
+                    }
+                    results.add(row);
+                }
+                else
+                {
+                    results.add(copyValue(entry.values[i]));
+                }
+            }
+            if (NucleusLogger.QUERY.isDebugEnabled())
+            {
+                NucleusLogger.QUERY.debug("Result of query taken from the ODF query result cache (" + results.size() + " row(s))");
+            }
+            return results;
+        }
+
+        /**
+         * Method to store the result of the execution of the query, where it can be cached.
+         * @param results The results
+         * @param candidates Whether the results are candidate objects (otherwise rows of projection/aggregate values)
+         */
+        public void store(Collection results, boolean candidates)
+        {
+            ApiAdapter api = ec.getApiAdapter();
+            Object[] values = new Object[results.size()];
+            String[] classNames = (candidates ? new String[values.length] : null);
+            int i = 0;
+            for (Object result : results)
+            {
+                if (candidates)
+                {
+                    values[i] = (result != null ? api.getIdForObject(result) : null);
+                    if (values[i] == null)
+                    {
+                        return;
+                    }
+                    classNames[i] = result.getClass().getName();
+                }
+                else if (result instanceof Object[])
+                {
+                    Object[] row = new Object[((Object[])result).length];
+                    for (int j=0;j<row.length;j++)
+                    {
+                        row[j] = getCacheableValue(api, ((Object[])result)[j], false);
+                        if (row[j] == NOT_CACHEABLE)
+                        {
+                            return;
+                        }
+                    }
+                    values[i] = row;
+                }
+                else
+                {
+                    values[i] = getCacheableValue(api, result, false);
+                    if (values[i] == NOT_CACHEABLE)
+                    {
+                        return;
+                    }
+                }
+                i++;
+            }
+
+            synchronized (ODFQueryResultCache.this)
+            {
+                entries.put(key, new Entry(stamps, values, classNames));
+            }
+        }
+    }
+
+    /**
+     * Key of an entry in the cache.
+     */
+    static class Key
+    {
+        final String language;
+
+        final String queryString;
+
+        final String candidateClassName;
+
+        final boolean subclasses;
+
+        final long rangeFromIncl;
+
+        final long rangeToExcl;
+
+        final Set<String> fetchGroups;
+
+        final int maxFetchDepth;
+
+        final boolean ignoreCache;
+
+        final Map<Object, Object> parameters;
+
+        final int hashCode;
+
+        Key(String language, String queryString, String candidateClassName, boolean subclasses, long rangeFromIncl, long rangeToExcl,
+                Set<String> fetchGroups, int maxFetchDepth, boolean ignoreCache, Map<Object, Object> parameters)
+        {
+            this.language = language;
+            this.queryString = queryString;
+            this.candidateClassName = candidateClassName;
+            this.subclasses = subclasses;
+            this.rangeFromIncl = rangeFromIncl;
+            this.rangeToExcl = rangeToExcl;
+            this.fetchGroups = fetchGroups;
+            this.maxFetchDepth = maxFetchDepth;
+            this.ignoreCache = ignoreCache;
+            this.parameters = parameters;
+            this.hashCode = queryString.hashCode() ^ parameters.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == this)
+            {
+                return true;
+            }
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key)obj;
+            return hashCode == other.hashCode && queryString.equals(other.queryString) && language.equals(other.language) &&
+                (candidateClassName != null ? candidateClassName.equals(other.candidateClassName) : other.candidateClassName == null) &&
+                subclasses == other.subclasses && rangeFromIncl == other.rangeFromIncl && rangeToExcl == other.rangeToExcl &&
+                fetchGroups.equals(other.fetchGroups) && maxFetchDepth == other.maxFetchDepth && ignoreCache == other.ignoreCache &&
+                parameters.equals(other.parameters);
+        }
+    }
+
+    /**
+     * Key for a persistable parameter value, being its identity.
+     */
+    static class PersistableKey
+    {
+        final Object id;
+
+        PersistableKey(Object id)
+        {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return id.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return obj instanceof PersistableKey && id.equals(((PersistableKey)obj).id);
+        }
+    }
+
+    /**
+     * Entry in the cache.
+     */
+    static class Entry
+    {
+        /** Modification stamps of the worksheets the query could read, when the result was obtained. */
+        final long[] stamps;
+
+        /** Identities of the objects (for a result of candidates), or the values of the rows. */
+        final Object[] values;
+
+        /** Class names of the objects (for a result of candidates), otherwise null. */
+        final String[] classNames;
+
+        final long createTime = System.currentTimeMillis();
+
+        Entry(long[] stamps, Object[] values, String[] classNames)
+        {
+            this.stamps = stamps;
+            this.values = values;
+            this.classNames = classNames;
+        }
+    }
+}
@@ -0,0 +1,513 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.store.odf.query;
+
+import java.util.AbstractSequentialList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Predicate;
+
+import org.datanucleus.ExecutionContext;
+import org.datanucleus.FetchPlan;
+import org.datanucleus.api.ApiAdapter;
+import org.datanucleus.metadata.AbstractClassMetaData;
+import org.datanucleus.store.StoreData;
+import org.datanucleus.store.connection.ManagedConnection;
+import org.datanucleus.store.odf.CachedDocument;
+import org.datanucleus.store.odf.ODFStoreManager;
+import org.datanucleus.store.odf.ODFUtils;
+import org.datanucleus.store.odf.fieldmanager.RowReader;
+import org.datanucleus.store.schema.table.Table;
+import org.odftoolkit.odfdom.doc.OdfSpreadsheetDocument;
+import org.odftoolkit.odfdom.doc.table.OdfTable;
+import org.odftoolkit.odfdom.doc.table.OdfTableRow;
+
+/**
+ * Forward-only result of a query of candidate objects (no result clause, ordering or grouping), decoding the rows of
+ * the worksheet(s) of the candidate class(es) on demand as the result is iterated, rather than collecting all matching
+ * objects up front. So the memory needed is bounded by what the caller holds on to, not by the number of matching rows.
+ * <p>
+ * Each row is evaluated against the query filter as far as it can be evaluated on the cells (see {@link RowFilter}),
+ * and where the filter can't decide a row the object is instantiated and evaluated by the in-memory filter provided.
+ * The range (if any) is applied as the matching rows are passed. Where the filter can use an index of a member of a
+ * candidate class, only the rows found using the index are evaluated.
+ * <p>
+ * When eviction is enabled, each object is evicted (and removed from the L1 cache) when the iterator moves past it,
+ * unless it is new, dirty or deleted in the current transaction, so consumed objects can be garbage collected.
+ * <p>
+ * Each call of {@link #iterator()} (or {@link #stream()}) starts a new pass over the rows. Positional access and
+ * {@link #size()} are supported, but each makes a pass over the rows, so should be avoided for large results.
+ */
+public class ODFStreamingResult extends AbstractSequentialList<Object>
+{
+    /** Query extension to enable streaming of the query result (boolean, default false). */
+    public static final String EXTENSION_STREAMING = "datanucleus.query.odf.streaming";
+
+    /** Query extension to evict the objects of a streamed result once consumed (boolean, default false). */
+    public static final String EXTENSION_STREAMING_EVICT = "datanucleus.query.odf.streaming.evictConsumed";
+
+    final ExecutionContext ec;
+
+    /** The document being queried, taken from the connection when constructed since the result is read after it is released. */
+    final OdfSpreadsheetDocument spreadsheetDoc;
+
+    /** The cached document (referenced until the execution context closes), whose lock is held while reading the rows. */
+    final CachedDocument cachedDoc;
+
+    final List<AbstractClassMetaData> cmds;
+
+    final boolean ignoreCache;
+
+    final FetchPlan fetchPlan;
+
+    final QueryToODFMapper mapper;
+
+    /** Filter for objects whose row couldn't be decided by the row filter. */
+    final Predicate<Object> inMemoryFilter;
+
+    final long rangeFromIncl;
+
+    final long rangeToExcl;
+
+    final boolean evictConsumed;
+
+    /** Number of objects in the result, once counted. */
+    int size = -1;
+
+    /**
+     * Constructor for a streamed query result.
+     * @param cmds Metadata for the candidate classes
+     * @param ec execution context
+     * @param mconn Connection to the datastore
+     * @param ignoreCache Whether to ignore the cache on object retrieval
+     * @param fp FetchPlan for retrieval
+     * @param mapper Mapper for the query filter
+     * @param inMemoryFilter Filter for objects whose row can't be decided on its cells
+     * @param rangeFromIncl Start of the range (inclusive)
+     * @param rangeToExcl End of the range (exclusive), or Long.MAX_VALUE if no end
+     * @param evictConsumed Whether to evict the objects once consumed
+     */
+    public ODFStreamingResult(List<AbstractClassMetaData> cmds, ExecutionContext ec, ManagedConnection mconn, boolean ignoreCache, FetchPlan fp,
+            QueryToODFMapper mapper, Predicate<Object> inMemoryFilter, long rangeFromIncl, long rangeToExcl, boolean evictConsumed)
+    {
+        this.cmds = cmds;
+        this.ec = ec;
+        this.spreadsheetDoc = (OdfSpreadsheetDocument)mconn.getConnection();
+        this.cachedDoc = ODFUtils.retainCachedDocument(ec, spreadsheetDoc);
+        this.ignoreCache = ignoreCache;
+        this.fetchPlan = fp;
+        this.mapper = mapper;
+        this.inMemoryFilter = inMemoryFilter;
+        this.rangeFromIncl = rangeFromIncl;
+        this.rangeToExcl = rangeToExcl;
+        this.evictConsumed = evictConsumed;
+    }
+
+    /**
+     * Accessor for the number of objects in the result. Makes a pass over the rows when first called, only
+     * instantiating objects for rows that the filter can't decide on their cells.
+     * @return The number of objects
+     */
+    @Override
+    public int size()
+    {
+        if (size < 0)
+        {
+            StreamingIterator iter = new StreamingIterator(0);
+            int number = 0;
+            lockDocument();
+            try
+            {
+                while (iter.findNext())
+                {
+                    iter.skipNext();
+                    number++;
+                }
+            }
+            finally
+            {
+                unlockDocument();
+            }
+            size = number;
+        }
+        return size;
+    }
+
+    @Override
+    public Iterator<Object> iterator()
+    {
+        return new StreamingIterator(0);
+    }
+
+    @Override
+    public ListIterator<Object> listIterator(int index)
+    {
+        if (index < 0)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        return new StreamingIterator(index);
+    }
+
+    @Override
+    public Spliterator<Object> spliterator()
+    {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * Method to acquire the lock of the document, to be held while reading its rows (since the connection will
+     * have been released by then).
+     */
+    void lockDocument()
+    {
+        if (cachedDoc != null)
+        {
+            cachedDoc.lock();
+        }
+    }
+
+    void unlockDocument()
+    {
+        if (cachedDoc != null)
+        {
+            cachedDoc.unlock();
+        }
+    }
+
+    /**
+     * Convenience method to return the table for the specified class, managing the class if not yet managed.
+     * @param cmd Metadata for the class
+     * @param spreadsheetDoc The spreadsheet document
+     * @return The table
+     */
+    protected Table getTableForClass(AbstractClassMetaData cmd, OdfSpreadsheetDocument spreadsheetDoc)
+    {
+        ODFStoreManager storeMgr = (ODFStoreManager)ec.getStoreManager();
+        StoreData sd = storeMgr.getStoreDataForClass(cmd.getFullClassName());
+        if (sd == null)
+        {
+            storeMgr.manageClasses(new String[] {cmd.getFullClassName()}, ec.getClassLoaderResolver(), spreadsheetDoc);
+            sd = storeMgr.getStoreDataForClass(cmd.getFullClassName());
+        }
+        return sd.getTable();
+    }
+
+    /**
+     * Forward-only iterator over the matching rows of the worksheet(s) of the candidate classes, moving to the
+     * worksheet of the next class when the rows of one are exhausted.
+     */
+    class StreamingIterator implements ListIterator<Object>
+    {
+        /** Iterator over the candidate classes. */
+        final Iterator<AbstractClassMetaData> cmdIter = cmds.iterator();
+
+        /** Metadata for the class of the worksheet being iterated. */
+        AbstractClassMetaData cmd = null;
+
+        /** Table for the class of the worksheet being iterated. */
+        Table table = null;
+
+        /** Filter for the rows of the worksheet being iterated, or null if no filter. */
+        RowFilter filter = null;
+
+        /** Iterator over the rows of the worksheet being iterated. */
+        Iterator<OdfTableRow> rowIter = Collections.emptyIterator();
+
+        /** Number of matching rows passed (including those before the start of the range). */
+        long number = 0;
+
+        /** Number of objects returned by this iterator. */
+        int nextIndex = 0;
+
+        /** Whether the next matching row has been found (and not yet returned). */
+        boolean pending = false;
+
+        /** The next matching row, when pending. */
+        OdfTableRow nextRow = null;
+
+        /** The object for the next matching row, when pending and already instantiated. */
+        Object nextObject = null;
+
+        /** The object last returned, to evict when moving past it. */
+        Object previousObject = null;
+
+        /** Reader of the cells of the rows, reused for each object instantiated by this iterator. */
+        final RowReader rowReader = new RowReader();
+
+        StreamingIterator(int index)
+        {
+            lockDocument();
+            try
+            {
+                for (int i=0;i<index;i++)
+                {
+                    if (!findNext())
+                    {
+                        throw new IndexOutOfBoundsException("Index: " + index);
+                    }
+                    skipNext();
+                    nextIndex++;
+                }
+            }
+            finally
+            {
+                unlockDocument();
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            lockDocument();
+            try
+            {
+                if (findNext())
+                {
+                    return true;
+                }
+                evictPrevious();
+                return false;
+            }
+            finally
+            {
+                unlockDocument();
+            }
+        }
+
+        @Override
+        public Object next()
+        {
+            lockDocument();
+            try
+            {
+                if (!findNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                evictPrevious();
+
+                Object obj = (nextObject != null ? nextObject : ODFCandidateList.getObjectForRow(ec, fetchPlan, ignoreCache, cmd, table, nextRow, rowReader));
+                pending = false;
+                nextRow = null;
+                nextObject = null;
+                previousObject = obj;
+                nextIndex++;
+                return obj;
+            }
+            finally
+            {
+                unlockDocument();
+            }
+        }
+
+        /**
+         * Method to find the next matching row (within the range), unless already found. Only instantiates the object
+         * of a row where the row filter can't decide the row.
+         * @return Whether there is a next matching row
+         */
+        boolean findNext()
+        {
+            if (pending)
+            {
+                return true;
+            }
+            if (number >= rangeToExcl)
+            {
+                return false;
+            }
+
+            while (true)
+            {
+                while (!rowIter.hasNext())
+                {
+                    if (!nextClass())
+                    {
+                        return false;
+                    }
+                }
+
+                OdfTableRow row = rowIter.next();
+                Object obj = null;
+                Boolean matches = (filter != null ? filter.evaluate(row) : Boolean.TRUE);
+                if (matches == null)
+                {
+                    // Undecided on the cells, so instantiate the object and evaluate the filter in-memory
+                    obj = ODFCandidateList.getObjectForRow(ec, fetchPlan, ignoreCache, cmd, table, row, rowReader);
+                    matches = Boolean.valueOf(inMemoryFilter.test(obj));
+                    if (!matches.booleanValue())
+                    {
+                        evictObject(obj);
+                    }
+                }
+                if (!matches.booleanValue())
+                {
+                    continue;
+                }
+
+                number++;
+                if (number > rangeFromIncl)
+                {
+                    pending = true;
+                    nextRow = row;
+                    nextObject = obj;
+                    return true;
+                }
+                if (obj != null)
+                {
+                    evictObject(obj);
+                }
+            }
+        }
+
+        /**
+         * Method to move to the worksheet of the next candidate class.
+         * @return Whether there is a next class
+         */
+        boolean nextClass()
+        {
+            if (!cmdIter.hasNext())
+            {
+                return false;
+            }
+
+            cmd = cmdIter.next();
+            table = getTableForClass(cmd, spreadsheetDoc);
+            filter = null;
+            if (mapper.hasFilter())
+            {
+                filter = mapper.getRowFilter(cmd, table);
+                if (filter == null)
+                {
+                    filter = RowFilter.UNKNOWN;
+                }
+            }
+
+            OdfTable worksheet = spreadsheetDoc.getTableByName(table.getName());
+            if (worksheet == null)
+            {
+                rowIter = Collections.emptyIterator();
+                return true;
+            }
+
+            // Iterate the rows found via the indexes (which only hold data rows), otherwise all rows after any header rows
+            List<OdfTableRow> indexedRows = (filter != null ? mapper.getRowsUsingIndexes(cmd, table, spreadsheetDoc) : null);
+            if (indexedRows != null)
+            {
+                rowIter = indexedRows.iterator();
+            }
+            else
+            {
+                List<OdfTableRow> rows = worksheet.getRowList();
+                rowIter = rows.listIterator(Math.min(ODFUtils.getHeaderRowCount(ec.getStoreManager(), spreadsheetDoc, worksheet), rows.size()));
+            }
+            return true;
+        }
+
+        /**
+         * Method to pass over the next matching row (once found) without returning its object.
+         */
+        void skipNext()
+        {
+            if (nextObject != null)
+            {
+                evictObject(nextObject);
+            }
+            pending = false;
+            nextRow = null;
+            nextObject = null;
+        }
+
+        void evictPrevious()
+        {
+            if (previousObject != null)
+            {
+                evictObject(previousObject);
+            }
+            previousObject = null;
+        }
+
+        void evictObject(Object obj)
+        {
+            if (!evictConsumed)
+            {
+                return;
+            }
+
+            ApiAdapter api = ec.getApiAdapter();
+            if (api.isNew(obj) || api.isDirty(obj) || api.isDeleted(obj))
+            {
+                return;
+            }
+            Object id = api.getIdForObject(obj);
+            ec.evictObject(obj);
+            if (id != null)
+            {
+                ec.removeObjectFromLevel1Cache(id);
+            }
+        }
+
+        @Override
+        public int nextIndex()
+        {
+            return nextIndex;
+        }
+
+        @Override
+        public boolean hasPrevious()
+        {
+            // Forward-only, so can never move back
+            return false;
+        }
+
+        @Override
+        public Object previous()
+        {
+            throw new UnsupportedOperationException("Streamed query results are forward-only");
+        }
+
+        @Override
+        public int previousIndex()
+        {
+            return nextIndex - 1;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException("Query results are read-only");
+        }
+
+        @Override
+        public void set(Object obj)
+        {
+            throw new UnsupportedOperationException("Query results are read-only");
+        }
+
+        @Override
+        public void add(Object obj)
+        {
+            throw new UnsupportedOperationException("Query results are read-only");
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.store.odf.query;
+
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.datanucleus.util.NucleusLogger;
+import org.odftoolkit.odfdom.doc.table.OdfTableRow;
+import org.odftoolkit.odfdom.dom.element.table.TableTableRowElement;
+
+/**
+ * Scanner evaluating a {@link RowFilter} on the rows of a worksheet in parallel, splitting the rows into ranges that
+ * are evaluated by the tasks of a {@link ForkJoinPool}. The row elements are collected on the calling thread, and the
+ * tasks only read them via a {@link RowElementReader} each, so the document is never modified (nor the ODFDOM wrapper
+ * caches used) by the pool threads. Rows that a task can't decide (including where a cell can't be decoded by the reader)
+ * are evaluated via their {@link OdfTableRow} on the calling thread when the result is requested.
+ * <p>
+ * The caller must not modify the document while a scan is running, i.e between {@link #submit(List, int, RowFilter)}
+ * and {@link Scan#join()} (or the first call of {@link Scan#getResult(int)}). Note that evaluating a row via its
+ * {@link OdfTableRow} can modify the document (splitting repeated cells), so all scans of the document should be
+ * joined before evaluating rows that way.
+ */
+public class ParallelRowScanner
+{
+    /** Minimum number of rows evaluated by a task. */
+    private static final int MIN_PARTITION_ROWS = 1024;
+
+    private static final byte NO_MATCH = 0;
+
+    private static final byte MATCH = 1;
+
+    private static final byte UNDECIDED = 2;
+
+    final ForkJoinPool pool;
+
+    /** Minimum number of rows of a worksheet for a scan to be done in parallel. */
+    final int minRows;
+
+    /**
+     * Constructor.
+     * @param parallelism Number of threads of the pool
+     * @param minRows Minimum number of rows of a worksheet for a scan to be done in parallel
+     */
+    public ParallelRowScanner(int parallelism, int minRows)
+    {
+        this.pool = new ForkJoinPool(parallelism);
+        this.minRows = minRows;
+    }
+
+    /**
+     * Method to release the threads of the pool.
+     */
+    public void close()
+    {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Accessor for whether a scan of the specified number of rows should be done in parallel.
+     * @param numRows Number of rows
+     * @return Whether to scan in parallel
+     */
+    public boolean isParallel(int numRows)
+    {
+        return numRows >= minRows;
+    }
+
+    /**
+     * Method to start the evaluation of the filter on the rows from the specified position.
+     * @param rows The rows of the worksheet
+     * @param fromPosition Position of the first row to evaluate
+     * @param filter The filter
+     * @return The scan, providing the result for each row
+     */
+    public Scan submit(List<OdfTableRow> rows, int fromPosition, RowFilter filter)
+    {
+        int numRows = Math.max(rows.size() - fromPosition, 0);
+        TableTableRowElement[] rowElements = new TableTableRowElement[numRows];
+        ListIterator<OdfTableRow> rowIter = rows.listIterator(Math.min(fromPosition, rows.size()));
+        for (int i=0;i<numRows;i++)
+        {
+            rowElements[i] = rowIter.next().getOdfElement();
+        }
+
+        byte[] results = new byte[numRows];
+        int partitionSize = Math.max(MIN_PARTITION_ROWS, numRows / (pool.getParallelism() * 4));
+        ForkJoinTask<Void> task = pool.submit(new EvaluateTask(filter, rowElements, results, 0, numRows, partitionSize));
+        if (NucleusLogger.QUERY.isDebugEnabled())
+        {
+            NucleusLogger.QUERY.debug("Evaluating filter on " + numRows + " rows in parallel, in partitions of " + partitionSize + " rows");
+        }
+        return new Scan(rows, fromPosition, filter, task, results);
+    }
+
+    /**
+     * Evaluation of a filter on the rows of a worksheet, started by {@link ParallelRowScanner#submit(List, int, RowFilter)}.
+     */
+    public static class Scan
+    {
+        final List<OdfTableRow> rows;
+
+        final int fromPosition;
+
+        final RowFilter filter;
+
+        ForkJoinTask<Void> task;
+
+        final byte[] results;
+
+        Scan(List<OdfTableRow> rows, int fromPosition, RowFilter filter, ForkJoinTask<Void> task, byte[] results)
+        {
+            this.rows = rows;
+            this.fromPosition = fromPosition;
+            this.filter = filter;
+            this.task = task;
+            this.results = results;
+        }
+
+        /**
+         * Method to wait for the evaluation by the tasks to finish.
+         */
+        public void join()
+        {
+            if (task != null)
+            {
+                task.join();
+                task = null;
+            }
+        }
+
+        /**
+         * Accessor for the result of the filter for the row at the specified position, waiting for the evaluation to
+         * finish if necessary. Rows not decided by the tasks are evaluated on the calling thread.
+         * @param rowPosition Position of the row (at or after the position the scan was started from)
+         * @return TRUE if the row matches, FALSE if not, or null if undecided
+         */
+        public Boolean getResult(int rowPosition)
+        {
+            join();
+
+            byte result = results[rowPosition - fromPosition];
+            if (result == UNDECIDED)
+            {
+                return filter.evaluate(rows.get(rowPosition));
+            }
+            return result == MATCH ? Boolean.TRUE : Boolean.FALSE;
+        }
+    }
+
+    /**
+     * Task evaluating the filter on a range of rows, splitting the range while larger than the partition size.
+     */
+    static class EvaluateTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = -3862934178045283659L;
+
+        final RowFilter filter;
+
+        final TableTableRowElement[] rowElements;
+
+        final byte[] results;
+
+        final int from;
+
+        final int to;
+
+        final int partitionSize;
+
+        EvaluateTask(RowFilter filter, TableTableRowElement[] rowElements, byte[] results, int from, int to, int partitionSize)
+        {
+            this.filter = filter;
+            this.rowElements = rowElements;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.partitionSize = partitionSize;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > partitionSize)
+            {
+                int middle = (from + to) >>> 1;
+                invokeAll(new EvaluateTask(filter, rowElements, results, from, middle, partitionSize),
+                    new EvaluateTask(filter, rowElements, results, middle, to, partitionSize));
+                return;
+            }
+
+            RowElementReader reader = new RowElementReader();
+            for (int i=from;i<to;i++)
+            {
+                Boolean matches = null;
+                try
+                {
+                    reader.read(rowElements[i]);
+                    matches = filter.evaluate(reader);
+                }
+                catch (RuntimeException e)
+                {
+                    // Leave the row to be evaluated on the calling thread
+                    matches = null;
+                }
+                results[i] = (matches == null ? UNDECIDED : (matches.booleanValue() ? MATCH : NO_MATCH));
+            }
+        }
+    }
+}
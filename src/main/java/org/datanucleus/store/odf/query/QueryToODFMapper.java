@@ -0,0 +1,603 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.store.odf.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.datanucleus.ExecutionContext;
+import org.datanucleus.metadata.AbstractClassMetaData;
+import org.datanucleus.metadata.AbstractMemberMetaData;
+import org.datanucleus.metadata.FieldPersistenceModifier;
+import org.datanucleus.metadata.RelationType;
+import org.datanucleus.query.compiler.QueryCompilation;
+import org.datanucleus.query.expression.DyadicExpression;
+import org.datanucleus.query.expression.Expression;
+import org.datanucleus.query.expression.Expression.Operator;
+import org.datanucleus.query.expression.InvokeExpression;
+import org.datanucleus.query.expression.Literal;
+import org.datanucleus.query.expression.OrderExpression;
+import org.datanucleus.query.expression.ParameterExpression;
+import org.datanucleus.query.expression.PrimaryExpression;
+import org.datanucleus.store.odf.ODFUtils;
+import org.datanucleus.store.odf.index.MemberIndex;
+import org.datanucleus.store.odf.index.RowIndex;
+import org.datanucleus.store.query.QueryUtils;
+import org.datanucleus.store.schema.table.MemberColumnMapping;
+import org.datanucleus.store.schema.table.Table;
+import org.datanucleus.util.NucleusLogger;
+import org.odftoolkit.odfdom.doc.OdfSpreadsheetDocument;
+import org.odftoolkit.odfdom.doc.table.OdfTableRow;
+
+/**
+ * Class which maps a compiled (generic) query to a form that can be evaluated on the rows of an ODF worksheet, so that
+ * rows can be rejected before any object is instantiated for them. Supports the following parts of the filter :
+ * <ul>
+ * <li>Comparisons (==, !=, &lt;, &lt;=, &gt;, &gt;=) of a basic member of the candidate with a literal or parameter,
+ * including comparisons with null.</li>
+ * <li>A boolean member of the candidate on its own.</li>
+ * <li>AND, OR, NOT of any of these.</li>
+ * <li>String "startsWith", "endsWith" on a String member of the candidate, with a literal or parameter.</li>
+ * <li>"contains" of a basic member of the candidate in a collection literal or parameter.</li>
+ * </ul>
+ * Any other part of the filter is left to the in-memory evaluator (see {@link RowFilter#UNKNOWN}).
+ * <p>
+ * Where the filter requires an indexed member (see {@link MemberIndex}) to equal a value, to be in a collection of
+ * values, or to be in a range, the rows that can match are found using the index (see
+ * {@link #getRowsUsingIndexes(AbstractClassMetaData, Table, OdfSpreadsheetDocument)}). Where the query is ordered by an
+ * indexed member, the rows can be provided in that order using the index (see
+ * {@link #forEachRowInIndexOrder(AbstractClassMetaData, Table, OdfSpreadsheetDocument, Predicate)}).
+ */
+public class QueryToODFMapper
+{
+    final QueryCompilation compilation;
+
+    final Map parameters;
+
+    final ExecutionContext ec;
+
+    /**
+     * Constructor.
+     * @param compilation The generic query compilation
+     * @param parameters Parameter values keyed by name/position
+     * @param ec ExecutionContext
+     */
+    public QueryToODFMapper(QueryCompilation compilation, Map parameters, ExecutionContext ec)
+    {
+        this.compilation = compilation;
+        this.parameters = parameters;
+        this.ec = ec;
+    }
+
+    /**
+     * Accessor for whether the query has a filter.
+     * @return Whether there is a filter
+     */
+    public boolean hasFilter()
+    {
+        return compilation != null && compilation.getExprFilter() != null;
+    }
+
+    /**
+     * Method to compile the query filter into a filter on the rows of the worksheet for the specified class.
+     * @param cmd Metadata for the (candidate) class
+     * @param table Table for the class
+     * @return The row filter, or null if there is no filter or no part of it can be evaluated on the rows
+     */
+    public RowFilter getRowFilter(AbstractClassMetaData cmd, Table table)
+    {
+        if (compilation == null || compilation.getExprFilter() == null)
+        {
+            return null;
+        }
+
+        RowFilter filter = compileFilter(compilation.getExprFilter(), cmd, table);
+        return filter != RowFilter.UNKNOWN ? filter : null;
+    }
+
+    protected RowFilter compileFilter(Expression expr, AbstractClassMetaData cmd, Table table)
+    {
+        if (expr instanceof DyadicExpression)
+        {
+            Operator op = expr.getOperator();
+            if (op == Expression.OP_AND || op == Expression.OP_OR)
+            {
+                RowFilter left = compileFilter(expr.getLeft(), cmd, table);
+                RowFilter right = compileFilter(expr.getRight(), cmd, table);
+                if (left == RowFilter.UNKNOWN && right == RowFilter.UNKNOWN)
+                {
+                    return RowFilter.UNKNOWN;
+                }
+                return op == Expression.OP_AND ? new RowFilter.AndFilter(left, right) : new RowFilter.OrFilter(left, right);
+            }
+            else if (op == Expression.OP_NOT)
+            {
+                RowFilter filter = compileFilter(expr.getLeft(), cmd, table);
+                return filter != RowFilter.UNKNOWN ? new RowFilter.NotFilter(filter) : RowFilter.UNKNOWN;
+            }
+            else if (op == Expression.OP_EQ || op == Expression.OP_NOTEQ || op == Expression.OP_LT || op == Expression.OP_LTEQ ||
+                op == Expression.OP_GT || op == Expression.OP_GTEQ)
+            {
+                return compileComparison(expr.getLeft(), op, expr.getRight(), cmd, table);
+            }
+        }
+        else if (expr instanceof PrimaryExpression)
+        {
+            // Boolean member on its own
+            AbstractMemberMetaData mmd = getMemberForPrimary((PrimaryExpression)expr, cmd, table);
+            if (mmd != null && (mmd.getType() == boolean.class || mmd.getType() == Boolean.class))
+            {
+                return new RowFilter.ComparisonFilter(getColumnPosition(mmd, table), mmd.getType(), Expression.OP_EQ, Boolean.TRUE);
+            }
+        }
+        else if (expr instanceof InvokeExpression)
+        {
+            InvokeExpression invokeExpr = (InvokeExpression)expr;
+            String method = invokeExpr.getOperation();
+            List<Expression> args = invokeExpr.getArguments();
+            if (("startsWith".equals(method) || "endsWith".equals(method)) && invokeExpr.getLeft() instanceof PrimaryExpression &&
+                args != null && args.size() == 1)
+            {
+                AbstractMemberMetaData mmd = getMemberForPrimary((PrimaryExpression)invokeExpr.getLeft(), cmd, table);
+                Object[] argValue = getValue(args.get(0));
+                if (mmd != null && mmd.getType() == String.class && argValue != null && argValue[0] instanceof String)
+                {
+                    return new RowFilter.StringMatchFilter(getColumnPosition(mmd, table), "startsWith".equals(method), (String)argValue[0]);
+                }
+            }
+            else if ("contains".equals(method) && args != null && args.size() == 1 && args.get(0) instanceof PrimaryExpression)
+            {
+                // {collection}.contains(member)
+                AbstractMemberMetaData mmd = getMemberForPrimary((PrimaryExpression)args.get(0), cmd, table);
+                Object[] collValue = (invokeExpr.getLeft() != null ? getValue(invokeExpr.getLeft()) : null);
+                if (mmd != null && collValue != null && collValue[0] instanceof Collection)
+                {
+                    return new RowFilter.InFilter(getColumnPosition(mmd, table), mmd.getType(), (Collection)collValue[0]);
+                }
+            }
+        }
+
+        return RowFilter.UNKNOWN;
+    }
+
+    protected RowFilter compileComparison(Expression left, Operator op, Expression right, AbstractClassMetaData cmd, Table table)
+    {
+        if (!(left instanceof PrimaryExpression) && right instanceof PrimaryExpression)
+        {
+            // Swap so the member is on the left
+            Expression tmp = left;
+            left = right;
+            right = tmp;
+            op = getSwappedOperator(op);
+        }
+
+        if (left instanceof PrimaryExpression)
+        {
+            AbstractMemberMetaData mmd = getMemberForPrimary((PrimaryExpression)left, cmd, table);
+            Object[] value = getValue(right);
+            if (mmd != null && value != null)
+            {
+                return new RowFilter.ComparisonFilter(getColumnPosition(mmd, table), mmd.getType(), op, value[0]);
+            }
+        }
+        return RowFilter.UNKNOWN;
+    }
+
+    /**
+     * Method to find the rows of the worksheet for the specified class that can match the query filter, using the index of
+     * a member that the filter requires to be equal to a value (member == value), to be in a collection of values
+     * ({collection}.contains(member)), or to be in a range (member &lt; value, member &gt;= value etc). Where the filter has
+     * several such conditions (ANDed together), the one giving the fewest rows is used, with all range conditions on a
+     * member combined. The rows found still need the filter evaluating on them.
+     * @param cmd Metadata for the (candidate) class
+     * @param table Table for the class
+     * @param spreadsheetDoc The spreadsheet document
+     * @return The rows that can match (in worksheet order), or null if no index can be used for the filter
+     */
+    public List<OdfTableRow> getRowsUsingIndexes(AbstractClassMetaData cmd, Table table, OdfSpreadsheetDocument spreadsheetDoc)
+    {
+        if (compilation == null || compilation.getExprFilter() == null)
+        {
+            return null;
+        }
+
+        List<Expression> conditions = new ArrayList<>();
+        addConjunctiveConditions(compilation.getExprFilter(), conditions);
+
+        MemberIndex bestIndex = null;
+        Set<Object> bestKeys = null;
+        KeyRange bestRange = null;
+        int bestNumberOfRows = Integer.MAX_VALUE;
+        Map<MemberIndex, KeyRange> rangeByIndex = new LinkedHashMap<>();
+        for (Expression condition : conditions)
+        {
+            Expression memberExpr = null;
+            Collection values = null;
+            Operator op = null;
+            if (condition instanceof DyadicExpression && isComparisonOperator(condition.getOperator()))
+            {
+                op = condition.getOperator();
+                memberExpr = condition.getLeft();
+                Expression valueExpr = condition.getRight();
+                if (!(memberExpr instanceof PrimaryExpression))
+                {
+                    memberExpr = condition.getRight();
+                    valueExpr = condition.getLeft();
+                    op = getSwappedOperator(op);
+                }
+                Object[] value = getValue(valueExpr);
+                if (value != null)
+                {
+                    values = new ArrayList(1);
+                    values.add(value[0]);
+                }
+            }
+            else if (condition instanceof InvokeExpression && "contains".equals(((InvokeExpression)condition).getOperation()) &&
+                condition.getLeft() != null && ((InvokeExpression)condition).getArguments() != null && ((InvokeExpression)condition).getArguments().size() == 1)
+            {
+                memberExpr = ((InvokeExpression)condition).getArguments().get(0);
+                Object[] collValue = getValue(condition.getLeft());
+                if (collValue != null && collValue[0] instanceof Collection)
+                {
+                    values = (Collection)collValue[0];
+                }
+            }
+            if (!(memberExpr instanceof PrimaryExpression) || values == null)
+            {
+                continue;
+            }
+
+            MemberIndex index = getIndexForMember((PrimaryExpression)memberExpr, cmd, table, spreadsheetDoc);
+            Set<Object> keys = (index != null ? getIndexKeysForValues(index, values) : null);
+            if (keys == null)
+            {
+                continue;
+            }
+            if (op == null || op == Expression.OP_EQ)
+            {
+                int numberOfRows = 0;
+                for (Object key : keys)
+                {
+                    numberOfRows += index.getNumberOfRows(key);
+                }
+                if (numberOfRows < bestNumberOfRows)
+                {
+                    bestIndex = index;
+                    bestKeys = keys;
+                    bestRange = null;
+                    bestNumberOfRows = numberOfRows;
+                }
+            }
+            else
+            {
+                rangeByIndex.computeIfAbsent(index, k -> new KeyRange()).restrict(op, keys.iterator().next());
+            }
+        }
+        for (Map.Entry<MemberIndex, KeyRange> entry : rangeByIndex.entrySet())
+        {
+            KeyRange range = entry.getValue();
+            int numberOfRows = entry.getKey().getNumberOfRowsInRange(range.fromKey, range.fromInclusive, range.toKey, range.toInclusive);
+            if (numberOfRows < bestNumberOfRows)
+            {
+                bestIndex = entry.getKey();
+                bestKeys = null;
+                bestRange = range;
+                bestNumberOfRows = numberOfRows;
+            }
+        }
+        if (bestIndex == null)
+        {
+            return null;
+        }
+
+        if (NucleusLogger.QUERY.isDebugEnabled())
+        {
+            NucleusLogger.QUERY.debug("Using index of member " + bestIndex.getMemberName() + " of " + cmd.getFullClassName() + " to find " + bestNumberOfRows +
+                " row(s) that can match the filter");
+        }
+        return bestRange != null ? bestIndex.getRowsInRange(bestRange.fromKey, bestRange.fromInclusive, bestRange.toKey, bestRange.toInclusive) :
+            bestIndex.getRows(bestKeys);
+    }
+
+    /**
+     * Method to pass the rows of the worksheet for the specified class to the handler in the order required by the query
+     * ordering, using the index of the member being ordered by, so that the rows needn't be sorted. Only possible where the
+     * ordering is by a single indexed member of the candidate, and every row has a value for that member that is in the
+     * index (so there are no null values to order). Where the filter has range conditions on the same member, only the
+     * rows in that range are passed. The rows passed still need the filter evaluating on them.
+     * @param cmd Metadata for the (candidate) class
+     * @param table Table for the class
+     * @param spreadsheetDoc The spreadsheet document
+     * @param handler Handler for the rows, returning false if no further rows are required
+     * @return Whether the rows were passed in order (otherwise no index can be used for the ordering, and no rows were passed)
+     */
+    public boolean forEachRowInIndexOrder(AbstractClassMetaData cmd, Table table, OdfSpreadsheetDocument spreadsheetDoc, Predicate<OdfTableRow> handler)
+    {
+        Expression[] orderExprs = (compilation != null ? compilation.getExprOrdering() : null);
+        if (orderExprs == null || orderExprs.length != 1 || !(orderExprs[0] instanceof OrderExpression) || !(orderExprs[0].getLeft() instanceof PrimaryExpression))
+        {
+            return false;
+        }
+        MemberIndex index = getIndexForMember((PrimaryExpression)orderExprs[0].getLeft(), cmd, table, spreadsheetDoc);
+        if (index == null || index.getNumberOfUnkeyedRows() > 0)
+        {
+            return false;
+        }
+
+        // Restrict to any range of the same member in the filter
+        KeyRange range = new KeyRange();
+        if (compilation.getExprFilter() != null)
+        {
+            List<Expression> conditions = new ArrayList<>();
+            addConjunctiveConditions(compilation.getExprFilter(), conditions);
+            for (Expression condition : conditions)
+            {
+                if (condition instanceof DyadicExpression && isComparisonOperator(condition.getOperator()))
+                {
+                    Operator op = condition.getOperator();
+                    Expression memberExpr = condition.getLeft();
+                    Expression valueExpr = condition.getRight();
+                    if (!(memberExpr instanceof PrimaryExpression))
+                    {
+                        memberExpr = condition.getRight();
+                        valueExpr = condition.getLeft();
+                        op = getSwappedOperator(op);
+                    }
+                    Object[] value = getValue(valueExpr);
+                    if (memberExpr instanceof PrimaryExpression && value != null &&
+                        getIndexForMember((PrimaryExpression)memberExpr, cmd, table, spreadsheetDoc) == index)
+                    {
+                        Set<Object> keys = getIndexKeysForValues(index, Collections.singletonList(value[0]));
+                        if (keys != null)
+                        {
+                            range.restrict(op, keys.iterator().next());
+                        }
+                    }
+                }
+            }
+        }
+
+        if (NucleusLogger.QUERY.isDebugEnabled())
+        {
+            NucleusLogger.QUERY.debug("Using index of member " + index.getMemberName() + " of " + cmd.getFullClassName() + " to provide the rows in the query ordering");
+        }
+        boolean descending = "descending".equalsIgnoreCase(((OrderExpression)orderExprs[0]).getSortOrder());
+        index.forEachRowInKeyOrder(range.fromKey, range.fromInclusive, range.toKey, range.toInclusive, descending, handler);
+        return true;
+    }
+
+    /**
+     * Convenience method to return the index of the member of the candidate referred to by the primary expression.
+     * @param primExpr The primary expression
+     * @param cmd Metadata for the candidate class
+     * @param table Table for the candidate class
+     * @param spreadsheetDoc The spreadsheet document
+     * @return The index, or null if not a member of the candidate that is indexed
+     */
+    protected MemberIndex getIndexForMember(PrimaryExpression primExpr, AbstractClassMetaData cmd, Table table, OdfSpreadsheetDocument spreadsheetDoc)
+    {
+        AbstractMemberMetaData mmd = getMemberForPrimary(primExpr, cmd, table);
+        MemberIndex index = (mmd != null ? ODFUtils.getMemberIndex(ec.getStoreManager(), spreadsheetDoc, cmd, table, mmd.getName()) : null);
+        if (index != null && mmd.getType().isPrimitive() && index.getNumberOfUnkeyedRows() > 0)
+        {
+            // An empty cell is read as the default value of a primitive, yet isn't indexed
+            return null;
+        }
+        return index;
+    }
+
+    private void addConjunctiveConditions(Expression expr, List<Expression> conditions)
+    {
+        if (expr instanceof DyadicExpression && expr.getOperator() == Expression.OP_AND)
+        {
+            addConjunctiveConditions(expr.getLeft(), conditions);
+            addConjunctiveConditions(expr.getRight(), conditions);
+        }
+        else
+        {
+            conditions.add(expr);
+        }
+    }
+
+    private static boolean isComparisonOperator(Operator op)
+    {
+        return op == Expression.OP_EQ || op == Expression.OP_LT || op == Expression.OP_LTEQ || op == Expression.OP_GT || op == Expression.OP_GTEQ;
+    }
+
+    /**
+     * Convenience method to return the operator to use when swapping the sides of a comparison.
+     * @param op The operator
+     * @return The operator with the sides swapped
+     */
+    private static Operator getSwappedOperator(Operator op)
+    {
+        if (op == Expression.OP_LT)
+        {
+            return Expression.OP_GT;
+        }
+        else if (op == Expression.OP_LTEQ)
+        {
+            return Expression.OP_GTEQ;
+        }
+        else if (op == Expression.OP_GT)
+        {
+            return Expression.OP_LT;
+        }
+        else if (op == Expression.OP_GTEQ)
+        {
+            return Expression.OP_LTEQ;
+        }
+        return op;
+    }
+
+    /**
+     * Convenience method to return the keys in a member index for values that the member is compared with.
+     * Null values, and values of a different kind to the member, are not indexed, so give no keys.
+     * @param index The member index
+     * @param values The values
+     * @return The keys, or null if any value cannot be looked up in the index
+     */
+    private Set<Object> getIndexKeysForValues(MemberIndex index, Collection values)
+    {
+        Set<Object> keys = new LinkedHashSet<>();
+        for (Object value : values)
+        {
+            Object key = null;
+            if (index.getKeyType() == String.class ? value instanceof String :
+                (index.getKeyType() == Date.class ? value instanceof Date : (value instanceof Long || value instanceof Integer || value instanceof Short)))
+            {
+                key = RowIndex.getKeyForValue(value);
+            }
+            if (key == null)
+            {
+                return null;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    /**
+     * Range of keys in a member index, restricted by comparisons of the member with values.
+     */
+    static class KeyRange
+    {
+        Object fromKey = null;
+        boolean fromInclusive = true;
+        Object toKey = null;
+        boolean toInclusive = true;
+
+        /**
+         * Method to restrict this range to the keys satisfying "key {op} value".
+         * @param op The operator (==, &lt;, &lt;=, &gt;, &gt;=)
+         * @param key Key of the value
+         */
+        void restrict(Operator op, Object key)
+        {
+            if (op == Expression.OP_EQ || op == Expression.OP_GT || op == Expression.OP_GTEQ)
+            {
+                boolean inclusive = (op != Expression.OP_GT);
+                int cmp = (fromKey != null ? ((Comparable)key).compareTo(fromKey) : 1);
+                if (cmp > 0 || (cmp == 0 && !inclusive))
+                {
+                    fromKey = key;
+                    fromInclusive = inclusive;
+                }
+            }
+            if (op == Expression.OP_EQ || op == Expression.OP_LT || op == Expression.OP_LTEQ)
+            {
+                boolean inclusive = (op != Expression.OP_LT);
+                int cmp = (toKey != null ? ((Comparable)key).compareTo(toKey) : -1);
+                if (cmp < 0 || (cmp == 0 && !inclusive))
+                {
+                    toKey = key;
+                    toInclusive = inclusive;
+                }
+            }
+        }
+    }
+
+    /**
+     * Convenience method to return the member of the candidate referred to by the primary expression, where the member
+     * is of a basic type stored in a single cell (without type converter).
+     * @param primExpr The primary expression
+     * @param cmd Metadata for the candidate class
+     * @param table Table for the candidate class
+     * @return The member, or null if not a (supported) member of the candidate
+     */
+    protected AbstractMemberMetaData getMemberForPrimary(PrimaryExpression primExpr, AbstractClassMetaData cmd, Table table)
+    {
+        if (primExpr.getLeft() != null)
+        {
+            return null;
+        }
+
+        List<String> tuples = primExpr.getTuples();
+        String candidateAlias = compilation.getCandidateAlias();
+        String memberName = null;
+        if (tuples.size() == 1 && !tuples.get(0).equals(candidateAlias))
+        {
+            memberName = tuples.get(0);
+        }
+        else if (tuples.size() == 2 && tuples.get(0).equals(candidateAlias))
+        {
+            memberName = tuples.get(1);
+        }
+        return memberName != null ? getMemberForName(memberName, cmd, table) : null;
+    }
+
+    /**
+     * Convenience method to return the member of the candidate with the specified name, where the member is of a
+     * basic type stored in a single cell (without type converter).
+     * @param memberName Name of the member
+     * @param cmd Metadata for the candidate class
+     * @param table Table for the candidate class
+     * @return The member, or null if not a (supported) member of the candidate
+     */
+    protected AbstractMemberMetaData getMemberForName(String memberName, AbstractClassMetaData cmd, Table table)
+    {
+        AbstractMemberMetaData mmd = cmd.getMetaDataForMember(memberName);
+        if (mmd == null || mmd.getPersistenceModifier() != FieldPersistenceModifier.PERSISTENT ||
+            mmd.getRelationType(ec.getClassLoaderResolver()) != RelationType.NONE || !ODFUtils.isBasicMemberType(mmd.getType()))
+        {
+            return null;
+        }
+
+        MemberColumnMapping mapping = table.getMemberColumnMappingForMember(mmd);
+        if (mapping == null || mapping.getTypeConverter() != null || mapping.getNumberOfColumns() != 1)
+        {
+            return null;
+        }
+        return mmd;
+    }
+
+    protected int getColumnPosition(AbstractMemberMetaData mmd, Table table)
+    {
+        return table.getMemberColumnMappingForMember(mmd).getColumn(0).getPosition();
+    }
+
+    /**
+     * Convenience method to return the value of a literal or parameter expression.
+     * @param expr The expression
+     * @return The value wrapped in an array (since the value can be null), or null if not a literal/parameter with value
+     */
+    protected Object[] getValue(Expression expr)
+    {
+        if (expr instanceof Literal)
+        {
+            return new Object[] {((Literal)expr).getLiteral()};
+        }
+        else if (expr instanceof ParameterExpression)
+        {
+            ParameterExpression paramExpr = (ParameterExpression)expr;
+            if (parameters != null && (parameters.containsKey(paramExpr.getId()) || parameters.containsKey(Integer.valueOf(paramExpr.getPosition()))))
+            {
+                return new Object[] {QueryUtils.getValueForParameterExpression(parameters, paramExpr)};
+            }
+        }
+        return null;
+    }
+}
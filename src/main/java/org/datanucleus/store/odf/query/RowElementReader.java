@@ -0,0 +1,193 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.store.odf.query;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+
+import org.datanucleus.store.odf.DateTimeCodec;
+import org.datanucleus.store.odf.ODFUtils;
+import org.datanucleus.store.odf.OfficeValueTypeDecoder;
+import org.odftoolkit.odfdom.doc.table.OdfTableCell;
+import org.odftoolkit.odfdom.dom.OdfDocumentNamespace;
+import org.odftoolkit.odfdom.dom.attribute.office.OfficeValueTypeAttribute;
+import org.odftoolkit.odfdom.dom.element.table.TableTableCellElementBase;
+import org.odftoolkit.odfdom.dom.element.table.TableTableRowElement;
+import org.w3c.dom.Node;
+
+/**
+ * Reader for the values of the cells of a "table:table-row" element that only reads the DOM (sibling links and
+ * attributes), never using the ODFDOM table/row/cell wrappers (which cache instances, and split repeated cells, on
+ * read) nor DOM node lists (which use a cache shared by the document). So it can be used by several threads at once
+ * on the rows of a document that isn't being modified, each thread with its own reader.
+ * <p>
+ * A value is only decoded where it is certain to be the same as
+ * {@link ODFUtils#getBasicMemberValueForCell(Class, OdfTableCell)} would give: numeric and boolean values from cells of
+ * that value type, date/time values from their attribute, and String values from cells holding a single paragraph of
+ * plain text (without whitespace that could be collapsed). Otherwise {@link #UNDECODED} is returned, and the row should
+ * be read using the ODFDOM wrappers instead, on the thread owning the document.
+ */
+public class RowElementReader
+{
+    /** Value returned when the value of a cell can't be decoded by this reader. */
+    public static final Object UNDECODED = new Object();
+
+    /** Cell elements of the row, by column position. */
+    TableTableCellElementBase[] cellElements = new TableTableCellElementBase[16];
+
+    /** Number of columns with a cell element in the row. */
+    int numberOfColumns = 0;
+
+    /**
+     * Method to read the cells of the specified row element, replacing any row previously read.
+     * @param rowElement The row element
+     */
+    public void read(TableTableRowElement rowElement)
+    {
+        int col = 0;
+        for (Node node = rowElement.getFirstChild(); node != null; node = node.getNextSibling())
+        {
+            if (node instanceof TableTableCellElementBase)
+            {
+                TableTableCellElementBase cellElement = (TableTableCellElementBase)node;
+                Integer repeated = cellElement.getTableNumberColumnsRepeatedAttribute();
+                int num = (repeated != null && repeated.intValue() > 1) ? repeated.intValue() : 1;
+                if (col + num > cellElements.length)
+                {
+                    cellElements = Arrays.copyOf(cellElements, Math.max(col + num, cellElements.length * 2));
+                }
+                for (int i=0;i<num;i++)
+                {
+                    cellElements[col++] = cellElement;
+                }
+            }
+        }
+        numberOfColumns = col;
+    }
+
+    /**
+     * Accessor for the value of the cell of the specified column, as the specified (basic) member type.
+     * @param position Position of the column
+     * @param type The member type
+     * @return The value, or {@link #UNDECODED} if it can't be decoded by this reader
+     */
+    public Object getValue(int position, Class type)
+    {
+        if (position >= numberOfColumns)
+        {
+            return UNDECODED;
+        }
+
+        TableTableCellElementBase cellElement = cellElements[position];
+        if (DateTimeCodec.isTemporalType(type))
+        {
+            if (DateTimeCodec.isTimeType(type))
+            {
+                LocalTime time = DateTimeCodec.decodeTime(cellElement.getOfficeTimeValueAttribute());
+                return time != null ? DateTimeCodec.toTimeType(time, type) : null;
+            }
+            LocalDateTime dateTime = DateTimeCodec.decodeDateTime(cellElement.getOfficeDateValueAttribute());
+            return dateTime != null ? DateTimeCodec.toDateType(dateTime, type) : null;
+        }
+
+        OfficeValueTypeAttribute.Value valueType = OfficeValueTypeDecoder.decode(cellElement.getOfficeValueTypeAttribute());
+        if (type == String.class)
+        {
+            return valueType == OfficeValueTypeAttribute.Value.STRING ? getText(cellElement) : UNDECODED;
+        }
+        else if (type == boolean.class || type == Boolean.class)
+        {
+            return valueType == OfficeValueTypeAttribute.Value.BOOLEAN ? cellElement.getOfficeBooleanValueAttribute() : UNDECODED;
+        }
+        else if (valueType != OfficeValueTypeAttribute.Value.FLOAT)
+        {
+            return UNDECODED;
+        }
+
+        Double value = cellElement.getOfficeValueAttribute();
+        if (value == null)
+        {
+            return UNDECODED;
+        }
+        if (type == byte.class || type == Byte.class)
+        {
+            return Byte.valueOf(value.byteValue());
+        }
+        else if (type == short.class || type == Short.class)
+        {
+            return Short.valueOf(value.shortValue());
+        }
+        else if (type == int.class || type == Integer.class)
+        {
+            return Integer.valueOf(value.intValue());
+        }
+        else if (type == long.class || type == Long.class)
+        {
+            return Long.valueOf(value.longValue());
+        }
+        else if (type == float.class || type == Float.class)
+        {
+            return Float.valueOf(value.floatValue());
+        }
+        return value;
+    }
+
+    /**
+     * Convenience method to return the text of a cell holding a single paragraph of plain text.
+     * @param cellElement The cell element
+     * @return The text, or {@link #UNDECODED} if the cell holds anything else
+     */
+    private static Object getText(TableTableCellElementBase cellElement)
+    {
+        Node paragraph = null;
+        for (Node node = cellElement.getFirstChild(); node != null; node = node.getNextSibling())
+        {
+            if (node.getNodeType() == Node.ELEMENT_NODE)
+            {
+                if (paragraph != null || !"p".equals(node.getLocalName()) || !OdfDocumentNamespace.TEXT.getUri().equals(node.getNamespaceURI()))
+                {
+                    return UNDECODED;
+                }
+                paragraph = node;
+            }
+        }
+        if (paragraph == null)
+        {
+            return UNDECODED;
+        }
+
+        StringBuilder str = new StringBuilder();
+        for (Node node = paragraph.getFirstChild(); node != null; node = node.getNextSibling())
+        {
+            if (node.getNodeType() != Node.TEXT_NODE)
+            {
+                return UNDECODED;
+            }
+            str.append(node.getNodeValue());
+        }
+
+        // Leave text with whitespace that ODF may collapse (runs, leading/trailing, tabs/newlines) to the wrappers
+        String text = str.toString();
+        if (text.startsWith(" ") || text.endsWith(" ") || text.contains("  ") || text.indexOf('\t') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0)
+        {
+            return UNDECODED;
+        }
+        return text;
+    }
+}
@@ -0,0 +1,466 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.store.odf.query;
+
+import java.util.Collection;
+import java.util.Date;
+
+import org.datanucleus.query.expression.Expression;
+import org.datanucleus.query.expression.Expression.Operator;
+import org.datanucleus.store.odf.ODFUtils;
+import org.odftoolkit.odfdom.doc.table.OdfTableRow;
+
+/**
+ * Predicate on a row of a worksheet, compiled from (part of) a query filter by {@link QueryToODFMapper}.
+ * Evaluation of a row returns TRUE if the row matches, FALSE if it doesn't, or null if the match cannot be decided
+ * from the cells (e.g comparison with a null value, or part of the filter that is not supported for the datastore).
+ * Rows giving null must be passed to the in-memory evaluator to decide.
+ * <p>
+ * A filter can also be evaluated on a row via a {@link RowElementReader} (e.g. by {@link ParallelRowScanner} on several
+ * threads), where null also results when the reader can't decode a cell, in which case the row should be evaluated
+ * again via its {@link OdfTableRow}.
+ */
+public abstract class RowFilter
+{
+    /** Filter for a part of the query filter that cannot be evaluated on the row. */
+    public static final RowFilter UNKNOWN = new RowFilter()
+    {
+        @Override
+        public Boolean evaluate(OdfTableRow row)
+        {
+            return null;
+        }
+
+        @Override
+        public Boolean evaluate(RowElementReader reader)
+        {
+            return null;
+        }
+
+        @Override
+        public boolean isComplete()
+        {
+            return false;
+        }
+    };
+
+    /**
+     * Method to evaluate this filter on the specified row.
+     * @param row The row
+     * @return TRUE if the row matches, FALSE if not, or null if undecided
+     */
+    public abstract Boolean evaluate(OdfTableRow row);
+
+    /**
+     * Method to evaluate this filter on the row read by the specified reader.
+     * @param reader Reader for the row
+     * @return TRUE if the row matches, FALSE if not, or null if undecided (or a cell couldn't be decoded by the reader)
+     */
+    public abstract Boolean evaluate(RowElementReader reader);
+
+    /**
+     * Accessor for whether this filter represents all of the (part of the) query filter it was compiled from.
+     * @return Whether complete
+     */
+    public boolean isComplete()
+    {
+        return true;
+    }
+
+    /**
+     * Filter matching when both of its filters match.
+     */
+    public static class AndFilter extends RowFilter
+    {
+        final RowFilter left;
+        final RowFilter right;
+
+        public AndFilter(RowFilter left, RowFilter right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Boolean evaluate(OdfTableRow row)
+        {
+            Boolean leftResult = left.evaluate(row);
+            if (Boolean.FALSE.equals(leftResult))
+            {
+                return Boolean.FALSE;
+            }
+            Boolean rightResult = right.evaluate(row);
+            if (Boolean.FALSE.equals(rightResult))
+            {
+                return Boolean.FALSE;
+            }
+            return (leftResult != null && rightResult != null) ? Boolean.TRUE : null;
+        }
+
+        @Override
+        public Boolean evaluate(RowElementReader reader)
+        {
+            Boolean leftResult = left.evaluate(reader);
+            if (Boolean.FALSE.equals(leftResult))
+            {
+                return Boolean.FALSE;
+            }
+            Boolean rightResult = right.evaluate(reader);
+            if (Boolean.FALSE.equals(rightResult))
+            {
+                return Boolean.FALSE;
+            }
+            return (leftResult != null && rightResult != null) ? Boolean.TRUE : null;
+        }
+
+        @Override
+        public boolean isComplete()
+        {
+            return left.isComplete() && right.isComplete();
+        }
+    }
+
+    /**
+     * Filter matching when either of its filters match.
+     */
+    public static class OrFilter extends RowFilter
+    {
+        final RowFilter left;
+        final RowFilter right;
+
+        public OrFilter(RowFilter left, RowFilter right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Boolean evaluate(OdfTableRow row)
+        {
+            Boolean leftResult = left.evaluate(row);
+            if (Boolean.TRUE.equals(leftResult))
+            {
+                return Boolean.TRUE;
+            }
+            Boolean rightResult = right.evaluate(row);
+            if (Boolean.TRUE.equals(rightResult))
+            {
+                return Boolean.TRUE;
+            }
+            return (leftResult != null && rightResult != null) ? Boolean.FALSE : null;
+        }
+
+        @Override
+        public Boolean evaluate(RowElementReader reader)
+        {
+            Boolean leftResult = left.evaluate(reader);
+            if (Boolean.TRUE.equals(leftResult))
+            {
+                return Boolean.TRUE;
+            }
+            Boolean rightResult = right.evaluate(reader);
+            if (Boolean.TRUE.equals(rightResult))
+            {
+                return Boolean.TRUE;
+            }
+            return (leftResult != null && rightResult != null) ? Boolean.FALSE : null;
+        }
+
+        @Override
+        public boolean isComplete()
+        {
+            return left.isComplete() && right.isComplete();
+        }
+    }
+
+    /**
+     * Filter matching when its filter doesn't match.
+     */
+    public static class NotFilter extends RowFilter
+    {
+        final RowFilter filter;
+
+        public NotFilter(RowFilter filter)
+        {
+            this.filter = filter;
+        }
+
+        @Override
+        public Boolean evaluate(OdfTableRow row)
+        {
+            Boolean result = filter.evaluate(row);
+            return result != null ? Boolean.valueOf(!result.booleanValue()) : null;
+        }
+
+        @Override
+        public Boolean evaluate(RowElementReader reader)
+        {
+            Boolean result = filter.evaluate(reader);
+            return result != null ? Boolean.valueOf(!result.booleanValue()) : null;
+        }
+
+        @Override
+        public boolean isComplete()
+        {
+            return filter.isComplete();
+        }
+    }
+
+    /**
+     * Filter comparing the value of a member in its cell with a value, using one of the operators
+     * ==, !=, &lt;, &lt;=, &gt;, &gt;=.
+     */
+    public static class ComparisonFilter extends RowFilter
+    {
+        final int position;
+        final Class memberType;
+        final Operator op;
+        final Object value;
+
+        /**
+         * Constructor.
+         * @param position Position of the column of the member
+         * @param memberType Type of the member (a basic type)
+         * @param op The operator
+         * @param value The value to compare with
+         */
+        public ComparisonFilter(int position, Class memberType, Operator op, Object value)
+        {
+            this.position = position;
+            this.memberType = memberType;
+            this.op = op;
+            this.value = value;
+        }
+
+        @Override
+        public Boolean evaluate(OdfTableRow row)
+        {
+            Object memberValue = ODFUtils.getBasicMemberValueForCell(memberType, row.getCellByIndex(position));
+            return compareValues(memberValue, op, value);
+        }
+
+        @Override
+        public Boolean evaluate(RowElementReader reader)
+        {
+            Object memberValue = reader.getValue(position, memberType);
+            return memberValue != RowElementReader.UNDECODED ? compareValues(memberValue, op, value) : null;
+        }
+    }
+
+    /**
+     * Filter checking whether the value of a member in its cell is equal to any of a collection of values.
+     */
+    public static class InFilter extends RowFilter
+    {
+        final int position;
+        final Class memberType;
+        final Collection values;
+
+        /**
+         * Constructor.
+         * @param position Position of the column of the member
+         * @param memberType Type of the member (a basic type)
+         * @param values The values to compare with
+         */
+        public InFilter(int position, Class memberType, Collection values)
+        {
+            this.position = position;
+            this.memberType = memberType;
+            this.values = values;
+        }
+
+        @Override
+        public Boolean evaluate(OdfTableRow row)
+        {
+            return evaluateValue(ODFUtils.getBasicMemberValueForCell(memberType, row.getCellByIndex(position)));
+        }
+
+        @Override
+        public Boolean evaluate(RowElementReader reader)
+        {
+            Object memberValue = reader.getValue(position, memberType);
+            return memberValue != RowElementReader.UNDECODED ? evaluateValue(memberValue) : null;
+        }
+
+        private Boolean evaluateValue(Object memberValue)
+        {
+            if (memberValue == null)
+            {
+                return null;
+            }
+            Boolean result = Boolean.FALSE;
+            for (Object value : values)
+            {
+                Boolean matches = compareValues(memberValue, Expression.OP_EQ, value);
+                if (Boolean.TRUE.equals(matches))
+                {
+                    return Boolean.TRUE;
+                }
+                else if (matches == null)
+                {
+                    result = null;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Filter checking whether the (String) value of a member in its cell starts/ends with a String.
+     */
+    public static class StringMatchFilter extends RowFilter
+    {
+        final int position;
+        final boolean startsWith;
+        final String str;
+
+        /**
+         * Constructor.
+         * @param position Position of the column of the member
+         * @param startsWith Whether to check "startsWith" (otherwise "endsWith")
+         * @param str The String to check for
+         */
+        public StringMatchFilter(int position, boolean startsWith, String str)
+        {
+            this.position = position;
+            this.startsWith = startsWith;
+            this.str = str;
+        }
+
+        @Override
+        public Boolean evaluate(OdfTableRow row)
+        {
+            return evaluateValue((String)ODFUtils.getBasicMemberValueForCell(String.class, row.getCellByIndex(position)));
+        }
+
+        @Override
+        public Boolean evaluate(RowElementReader reader)
+        {
+            Object memberValue = reader.getValue(position, String.class);
+            return memberValue != RowElementReader.UNDECODED ? evaluateValue((String)memberValue) : null;
+        }
+
+        private Boolean evaluateValue(String memberValue)
+        {
+            if (memberValue == null)
+            {
+                return null;
+            }
+            return Boolean.valueOf(startsWith ? memberValue.startsWith(str) : memberValue.endsWith(str));
+        }
+    }
+
+    /**
+     * Convenience method to compare two values using the specified operator.
+     * Where the result is not certain to be the same as the in-memory evaluator would give (null values in an ordering
+     * comparison, or values of types that are not handled here) returns null.
+     * @param left The left value
+     * @param op The operator
+     * @param right The right value
+     * @return The result, or null if undecided
+     */
+    public static Boolean compareValues(Object left, Operator op, Object right)
+    {
+        if (left == null || right == null)
+        {
+            if (left == null && right == null)
+            {
+                return op == Expression.OP_EQ ? Boolean.TRUE : (op == Expression.OP_NOTEQ ? Boolean.FALSE : null);
+            }
+            else if (left != null)
+            {
+                return op == Expression.OP_EQ ? Boolean.FALSE : (op == Expression.OP_NOTEQ ? Boolean.TRUE : null);
+            }
+            return null;
+        }
+
+        Integer cmp = null;
+        if (left instanceof Number && right instanceof Number)
+        {
+            cmp = compareNumbers((Number)left, (Number)right);
+        }
+        else if (left instanceof String && right instanceof String)
+        {
+            cmp = Integer.valueOf(((String)left).compareTo((String)right));
+        }
+        else if (left instanceof Date && right instanceof Date)
+        {
+            cmp = Integer.valueOf(Long.compare(((Date)left).getTime(), ((Date)right).getTime()));
+        }
+        else if (left instanceof Boolean && right instanceof Boolean && (op == Expression.OP_EQ || op == Expression.OP_NOTEQ))
+        {
+            cmp = Integer.valueOf(left.equals(right) ? 0 : 1);
+        }
+        if (cmp == null)
+        {
+            return null;
+        }
+
+        int result = cmp.intValue();
+        if (op == Expression.OP_EQ)
+        {
+            return Boolean.valueOf(result == 0);
+        }
+        else if (op == Expression.OP_NOTEQ)
+        {
+            return Boolean.valueOf(result != 0);
+        }
+        else if (op == Expression.OP_LT)
+        {
+            return Boolean.valueOf(result < 0);
+        }
+        else if (op == Expression.OP_LTEQ)
+        {
+            return Boolean.valueOf(result <= 0);
+        }
+        else if (op == Expression.OP_GT)
+        {
+            return Boolean.valueOf(result > 0);
+        }
+        else if (op == Expression.OP_GTEQ)
+        {
+            return Boolean.valueOf(result >= 0);
+        }
+        return null;
+    }
+
+    private static Integer compareNumbers(Number left, Number right)
+    {
+        if (isIntegral(left) && isIntegral(right))
+        {
+            return Integer.valueOf(Long.compare(left.longValue(), right.longValue()));
+        }
+        else if ((isIntegral(left) || left instanceof Float || left instanceof Double) &&
+            (isIntegral(right) || right instanceof Float || right instanceof Double))
+        {
+            double leftValue = left.doubleValue();
+            double rightValue = right.doubleValue();
+            if (Double.isNaN(leftValue) || Double.isNaN(rightValue))
+            {
+                return null;
+            }
+            return Integer.valueOf(leftValue < rightValue ? -1 : (leftValue > rightValue ? 1 : 0));
+        }
+        return null;
+    }
+
+    private static boolean isIntegral(Number number)
+    {
+        return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+    }
+}
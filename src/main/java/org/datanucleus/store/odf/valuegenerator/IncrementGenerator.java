@@ -25,6 +25,7 @@ import java.util.Properties;
 import org.datanucleus.exceptions.NucleusUserException;
 import org.datanucleus.store.StoreManager;
 import org.datanucleus.store.connection.ManagedConnection;
+import org.datanucleus.store.odf.ODFUtils;
 import org.datanucleus.store.valuegenerator.AbstractConnectedGenerator;
 import org.datanucleus.store.valuegenerator.ValueGenerationBlock;
 import org.datanucleus.store.valuegenerator.ValueGenerator;
@@ -136,6 +137,7 @@ public class IncrementGenerator extends AbstractConnectedGenerator<Long>
                 if (row == null)
                 {
                     row = table.appendRow();
+                    ODFUtils.adjustDataRowCount(storeMgr, spreadsheetDoc, worksheetName, 1);
                     OdfTableCell cell = row.getCellByIndex(0);
                     cell.setStringValue(key);
                     cell = row.getCellByIndex(1);
@@ -148,6 +150,7 @@ public class IncrementGenerator extends AbstractConnectedGenerator<Long>
             OdfTableCell valueCell = row.getCellByIndex(1);
             long currentVal = valueCell.getDoubleValue().longValue();
             valueCell.setDoubleValue(Double.valueOf(currentVal+size));
+            ODFUtils.markModified(storeMgr, spreadsheetDoc, worksheetName);
             for (int i=0;i<size;i++)
             {
                 oids.add(currentVal+1);